@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import storage.CatalogGenerator;
+import storage.DatabaseManager;
+import storage.MemoryLibraryStore;
+import storage.Repository;
+
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    // 10 loans per book: 100k loans for 10k books up to 10M loans for 1M books. 5M books (about 16 GB of heap)
+    // only on request: -p books=5000000.
+    @Param({ "10000", "100000", "1000000" })
+    public int books;
+
+    @Param({ "10" })
+    public int loansPerBook;
+
+    MemoryLibraryStore store;
+    Repository repository;
+    // Keys are picked from arrays so that building them is not part of the measured time.
+    private String[] isbns;
+    private String[] subscriberNumbers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Fixed generator settings, whatever the digitallibrary.generator.* properties say.
+        CatalogGenerator generator = new CatalogGenerator(books, books / 20, books * loansPerBook, 3, 1.0, 42L);
+        store = new MemoryLibraryStore();
+        generator.populate(store, DatabaseManager.DEFAULT_BATCH_SIZE, null);
+        repository = new Repository(store);
+
+        isbns = new String[generator.getBookCount()];
+        for (int i = 0; i < isbns.length; i++) {
+            isbns[i] = CatalogGenerator.isbn(i);
+        }
+        subscriberNumbers = new String[generator.getReaderCount()];
+        for (int i = 0; i < subscriberNumbers.length; i++) {
+            subscriberNumbers[i] = CatalogGenerator.subscriberNumber(i);
+        }
+    }
+
+    String randomIsbn() {
+        return isbns[ThreadLocalRandom.current().nextInt(isbns.length)];
+    }
+
+    String randomSubscriberNumber() {
+        return subscriberNumbers[ThreadLocalRandom.current().nextInt(subscriberNumbers.length)];
+    }
+}
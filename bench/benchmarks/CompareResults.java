@@ -0,0 +1,96 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares two JMH JSON result files (ant bench-compare -Dbase=... -Dcurrent=...) and exits with
+// status 1 when a benchmark got slower, or allocates more per operation, by more than the threshold.
+public class CompareResults {
+
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage : CompareResults <base.json> <current.json> [seuil en %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 && !args[2].isEmpty() ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, JsonNode> base = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s %12s%n", "Benchmark", "Base", "Actuel", "Écart", "Alloc B/op");
+        for (Map.Entry<String, JsonNode> e : current.entrySet()) {
+            JsonNode before = base.get(e.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s%n", e.getKey(), "(nouveau)");
+                continue;
+            }
+            JsonNode after = e.getValue();
+            boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+            double oldScore = before.path("primaryMetric").path("score").asDouble();
+            double newScore = after.path("primaryMetric").path("score").asDouble();
+            double delta = percent(oldScore, newScore);
+            double oldAlloc = allocation(before);
+            double newAlloc = allocation(after);
+            double allocDelta = percent(oldAlloc, newAlloc);
+
+            boolean slower = higherIsBetter ? delta < -threshold : delta > threshold;
+            boolean heavier = !Double.isNaN(allocDelta) && allocDelta > threshold;
+            if (slower || heavier) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%% %12s%s%n", e.getKey(), oldScore, newScore, delta,
+                    Double.isNaN(newAlloc) ? "-" : String.format("%.0f", newAlloc),
+                    slower || heavier ? "  <-- régression" : "");
+        }
+        for (String key : base.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-70s %14s%n", key, "(absent)");
+            }
+        }
+
+        System.out.println(regressions == 0 ? "Aucune régression au-delà de " + threshold + " %."
+                : regressions + " régression(s) au-delà de " + threshold + " %.");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText().replace("benchmarks.", ""));
+            key.append(" [").append(run.path("mode").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = run.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> p = params.next();
+                key.append(", ").append(p.getKey()).append('=').append(p.getValue().asText());
+            }
+            results.put(key.append(']').toString(), run);
+        }
+        return results;
+    }
+
+    private static double allocation(JsonNode run) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = run.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> m = metrics.next();
+            if (m.getKey().endsWith(ALLOC_NORM)) {
+                return m.getValue().path("score").asDouble();
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static double percent(double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after)) {
+            return Double.NaN;
+        }
+        return before == 0 ? (after == 0 ? 0 : 100) : (after - before) * 100 / before;
+    }
+}
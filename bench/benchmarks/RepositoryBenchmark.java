@@ -0,0 +1,46 @@
+package benchmarks;
+
+import models.Book;
+import models.Loan;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// In-memory indexes served by Repository to the UI.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Benchmark
+    public Optional<Book> findBookByIsbn(CatalogState s) {
+        return s.repository.findBookByIsbn(s.randomIsbn());
+    }
+
+    @Benchmark
+    public List<Loan> getAllOverdueLoans(CatalogState s) {
+        return s.repository.getAllOverdueLoans();
+    }
+
+    @Benchmark
+    public Map<String, Long> topBorrowedBooks(CatalogState s) {
+        return s.repository.topBorrowedBooks(10);
+    }
+
+    @Benchmark
+    public int getLoansCountThisMonth(CatalogState s) {
+        return s.repository.getLoansCountThisMonth(s.randomSubscriberNumber());
+    }
+}
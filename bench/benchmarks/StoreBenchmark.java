@@ -0,0 +1,41 @@
+package benchmarks;
+
+import models.Book;
+import models.Loan;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The same queries answered by the storage backend (LibraryStore), i.e. what Repository pays on a
+// reload or what the DAO pays without the in-memory indexes.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Benchmark
+    public Optional<Book> findBookByIsbn(CatalogState s) {
+        return s.store.findBookByIsbn(s.randomIsbn());
+    }
+
+    @Benchmark
+    public List<Loan> getAllOverdueLoans(CatalogState s) {
+        return s.store.getAllOverdueLoans();
+    }
+
+    @Benchmark
+    public List<Object[]> getTopBorrowedBooks(CatalogState s) {
+        return s.store.getTopBorrowedBooks(10);
+    }
+}
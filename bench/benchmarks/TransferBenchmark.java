@@ -0,0 +1,95 @@
+package benchmarks;
+
+import models.Book;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import storage.CatalogGenerator;
+import storage.ImportReport;
+import storage.MemoryLibraryStore;
+import storage.Repository;
+
+// One full import or export per measurement; each import starts from an empty store.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int books;
+
+    private Repository source;
+    private Repository target;
+    private File dir;
+    private File xml;
+    private File json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MemoryLibraryStore store = new MemoryLibraryStore();
+        store.importBooks(new CatalogGenerator(books, books / 20, 0, 3, 1.0, 42L).books(), books);
+        source = new Repository(store);
+        dir = Files.createTempDirectory("digitallibrary-bench").toFile();
+        xml = new File(dir, "books.xml");
+        json = new File(dir, "books.json");
+        source.exportBooksToXml(xml);
+        source.exportBooksToJson(json);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTarget() {
+        target = new Repository(new MemoryLibraryStore());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public File exportBooksToJson() throws IOException {
+        File out = new File(dir, "export.json");
+        source.exportBooksToJson(out);
+        return out;
+    }
+
+    @Benchmark
+    public File exportBooksToXml() throws Exception {
+        File out = new File(dir, "export.xml");
+        source.exportBooksToXml(out);
+        return out;
+    }
+
+    @Benchmark
+    public ImportReport<Book> importBooksFromJson() throws IOException {
+        return target.importBooksFromJson(json);
+    }
+
+    @Benchmark
+    public ImportReport<Book> importBooksFromXml() throws Exception {
+        return target.importBooksFromXml(xml);
+    }
+}
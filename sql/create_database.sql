@@ -12,6 +12,9 @@ USE digital_library;
 -- ============================================
 -- Table des livres (books)
 -- ============================================
+DROP TABLE IF EXISTS change_log;
+DROP TABLE IF EXISTS archive_state;
+DROP TABLE IF EXISTS loans_archive;
 DROP TABLE IF EXISTS loans;
 DROP TABLE IF EXISTS books;
 DROP TABLE IF EXISTS readers;
@@ -58,6 +61,50 @@ CREATE INDEX idx_loans_reader ON loans(reader_subscriber_number);
 CREATE INDEX idx_loans_book ON loans(book_isbn);
 CREATE INDEX idx_loans_returned ON loans(returned);
 CREATE INDEX idx_loans_due_date ON loans(due_date);
+CREATE INDEX idx_loans_borrow_date ON loans(borrow_date, id);
+
+-- ============================================
+-- Archive des emprunts rendus (storage.LoanArchiver)
+-- ============================================
+CREATE TABLE loans_archive (
+    id VARCHAR(50) PRIMARY KEY,
+    book_isbn VARCHAR(20) NOT NULL,
+    reader_subscriber_number VARCHAR(50) NOT NULL,
+    borrow_date DATE NOT NULL,
+    due_date DATE NOT NULL,
+    returned BOOLEAN NOT NULL DEFAULT TRUE,
+    return_date DATE NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (book_isbn) REFERENCES books(isbn) ON DELETE CASCADE,
+    FOREIGN KEY (reader_subscriber_number) REFERENCES readers(subscriber_number) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE INDEX idx_loans_archive_reader ON loans_archive(reader_subscriber_number, borrow_date);
+CREATE INDEX idx_loans_archive_book ON loans_archive(book_isbn);
+CREATE INDEX idx_loans_archive_borrow_date ON loans_archive(borrow_date, id);
+
+-- Avancement de l'archivage en cours (une seule ligne)
+CREATE TABLE archive_state (
+    id TINYINT PRIMARY KEY,
+    horizon DATE NOT NULL,
+    cursor_date DATE NULL,
+    cursor_id VARCHAR(50) NULL,
+    archived BIGINT NOT NULL DEFAULT 0,
+    finished BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- ============================================
+-- Journal des modifications (synchronisation incrémentale)
+-- ============================================
+CREATE TABLE change_log (
+    seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+    entity VARCHAR(10) NOT NULL,
+    entity_key VARCHAR(50) NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE INDEX idx_change_log_changed_at ON change_log(changed_at);
 
 -- ============================================
 -- Données de test
@@ -119,6 +166,12 @@ JOIN readers r ON l.reader_subscriber_number = r.subscriber_number
 WHERE l.returned = FALSE AND l.due_date < CURDATE()
 ORDER BY r.subscriber_number, l.due_date;
 
+-- Vue de l'historique complet (emprunts courants et archivés)
+CREATE OR REPLACE VIEW v_loan_history AS
+SELECT id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned, return_date FROM loans
+UNION ALL
+SELECT id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned, return_date FROM loans_archive;
+
 -- Vue des statistiques d'emprunts par livre
 CREATE OR REPLACE VIEW v_book_stats AS
 SELECT 
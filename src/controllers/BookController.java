@@ -8,12 +8,14 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import models.Book;
+import storage.ImportReport;
 import storage.Repository;
 import java.io.File;
-import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
@@ -44,6 +46,12 @@ public class BookController {
     @FXML
     private Button addButton, editButton, deleteButton;
 
+    @FXML
+    private VBox transferPane;
+
+    @FXML
+    private ProgressIndicator busyIndicator;
+
     private Repository repository;
 
     @FXML
@@ -144,12 +152,16 @@ public class BookController {
 
         Book book = createBookFromFields();
 
-        if (repository.addBook(book)) {
-            showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Livre ajouté avec succès !");
-            clearFields();
-        } else {
-            showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'ajout du livre.");
-        }
+        setBusy(true);
+        repository.addBookAsync(book).whenComplete((added, error) -> {
+            setBusy(false);
+            if (Boolean.TRUE.equals(added)) {
+                showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Livre ajouté avec succès !");
+                clearFields();
+            } else {
+                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'ajout du livre.");
+            }
+        });
     }
 
     @FXML
@@ -170,12 +182,16 @@ public class BookController {
         if (result.isPresent() && result.get() == ButtonType.OK) {
             Book updatedBook = createBookFromFields();
 
-            if (repository.updateBook(updatedBook)) {
-                showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Livre modifié avec succès !");
-                clearFields();
-            } else {
-                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la modification du livre.");
-            }
+            setBusy(true);
+            repository.updateBookAsync(updatedBook).whenComplete((updated, error) -> {
+                setBusy(false);
+                if (Boolean.TRUE.equals(updated)) {
+                    showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Livre modifié avec succès !");
+                    clearFields();
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la modification du livre.");
+                }
+            });
         }
     }
 
@@ -198,12 +214,16 @@ public class BookController {
                 "Voulez-vous vraiment supprimer le livre \"" + selectedBook.getTitle() + "\" ?");
 
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            if (repository.removeBook(selectedBook)) {
-                showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Livre supprimé avec succès !");
-                clearFields();
-            } else {
-                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la suppression du livre.");
-            }
+            setBusy(true);
+            repository.removeBookAsync(selectedBook).whenComplete((removed, error) -> {
+                setBusy(false);
+                if (Boolean.TRUE.equals(removed)) {
+                    showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Livre supprimé avec succès !");
+                    clearFields();
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la suppression du livre.");
+                }
+            });
         }
     }
 
@@ -223,14 +243,17 @@ public class BookController {
         if (file == null)
             return;
 
-        try {
-            repository.exportBooksToJson(file);
-            showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
-                    "Les livres ont été exportés vers :\n" + file.getAbsolutePath());
-        } catch (IOException ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
-                    "Erreur lors de l'export : " + ex.getMessage());
-        }
+        setBusy(true);
+        repository.exportBooksToJsonAsync(file).whenComplete((v, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
+                        "Erreur lors de l'export : " + error.getMessage());
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
+                        "Les livres ont été exportés vers :\n" + file.getAbsolutePath());
+            }
+        });
     }
 
     @FXML
@@ -243,14 +266,16 @@ public class BookController {
         if (file == null)
             return;
 
-        try {
-            List<Book> imported = repository.importBooksFromXml(file);
-            showAlert(Alert.AlertType.INFORMATION, "Import réussi", null,
-                    imported.size() + " livre(s) importé(s) depuis :\n" + file.getAbsolutePath());
-        } catch (Exception ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
-                    "Erreur lors de l'import : " + ex.getMessage());
-        }
+        setBusy(true);
+        repository.importBooksFromXmlAsync(file).whenComplete((report, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
+                        "Erreur lors de l'import : " + error.getMessage());
+            } else {
+                showImportReport(report, file);
+            }
+        });
     }
 
     @FXML
@@ -263,14 +288,16 @@ public class BookController {
         if (file == null)
             return;
 
-        try {
-            int count = repository.importBooksFromJson(file);
-            showAlert(Alert.AlertType.INFORMATION, "Import réussi", null,
-                    count + " livre(s) importé(s) depuis :\n" + file.getAbsolutePath());
-        } catch (Exception ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
-                    "Erreur lors de l'import : " + ex.getMessage());
-        }
+        setBusy(true);
+        repository.importBooksFromJsonAsync(file).whenComplete((report, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
+                        "Erreur lors de l'import : " + error.getMessage());
+            } else {
+                showImportReport(report, file);
+            }
+        });
     }
 
     @FXML
@@ -284,13 +311,48 @@ public class BookController {
         if (file == null)
             return;
 
-        try {
-            repository.exportBooksToXml(file);
-            showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
-                    "Les livres ont été exportés vers :\n" + file.getAbsolutePath());
-        } catch (Exception ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
-                    "Erreur lors de l'export : " + ex.getMessage());
+        setBusy(true);
+        repository.exportBooksToXmlAsync(file).whenComplete((v, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
+                        "Erreur lors de l'export : " + error.getMessage());
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
+                        "Les livres ont été exportés vers :\n" + file.getAbsolutePath());
+            }
+        });
+    }
+
+    private void showImportReport(ImportReport<Book> report, File file) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(report.getImportedCount()).append(" livre(s) importé(s) depuis :\n").append(file.getAbsolutePath());
+
+        if (report.getFailureCount() == 0) {
+            showAlert(Alert.AlertType.INFORMATION, "Import réussi", null, sb.toString());
+            return;
+        }
+
+        sb.append("\n\n").append(report.getFailureCount()).append(" ligne(s) rejetée(s) :\n");
+        List<ImportReport.RowFailure> failures = report.getFailures();
+        for (int i = 0; i < Math.min(failures.size(), 10); i++) {
+            sb.append("• ").append(failures.get(i)).append("\n");
+        }
+        if (failures.size() > 10) {
+            sb.append("…");
+        }
+        showAlert(Alert.AlertType.WARNING, "Import partiel", null, sb.toString());
+    }
+
+    private void setBusy(boolean busy) {
+        addButton.setDisable(busy);
+        editButton.setDisable(busy);
+        deleteButton.setDisable(busy);
+        if (transferPane != null) {
+            transferPane.setDisable(busy);
+        }
+        if (busyIndicator != null) {
+            busyIndicator.setVisible(busy);
         }
     }
 
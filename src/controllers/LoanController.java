@@ -8,23 +8,33 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.WeakListChangeListener;
 import models.Book;
 import models.Loan;
 import models.Reader;
 import storage.Repository;
+import storage.ReturnOutcome;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class LoanController {
 
+    private static final int HISTORY_PAGE_SIZE = 200;
+
     @FXML
     private TableView<Loan> loanTable;
 
@@ -48,7 +58,10 @@ public class LoanController {
     private ComboBox<Reader> readerComboBox;
 
     @FXML
-    private Button borrowButton, returnButton;
+    private Button borrowButton, returnButton, refreshButton, historyButton;
+
+    @FXML
+    private ProgressIndicator busyIndicator;
 
     @FXML
     private Label overdueCountLabel;
@@ -66,12 +79,18 @@ public class LoanController {
     private TableColumn<Loan, String> overdueDaysColumn;
 
     private Repository repository;
+    private final ListChangeListener<Book> booksListener = c -> setupComboBoxes();
+    private final ListChangeListener<Loan> loansListener = c -> {
+        refreshOverdueTable();
+        updateOverdueCount();
+    };
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
     @FXML
     public void initialize() {
         repository = Repository.getInstance();
 
+        loanTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         loanIdColumn.setCellValueFactory(new PropertyValueFactory<>("id"));
 
         bookTitleColumn.setCellValueFactory(cellData -> {
@@ -116,16 +135,26 @@ public class LoanController {
         setupComboBoxes();
 
         updateOverdueCount();
+
+        repository.getBooks().addListener(new WeakListChangeListener<>(booksListener));
+        repository.getLoans().addListener(new WeakListChangeListener<>(loansListener));
+        setBusy(false);
     }
 
     private void setupComboBoxes() {
+        Book selected = bookComboBox.getValue();
         ObservableList<Book> availableBooks = FXCollections.observableArrayList();
+        Book reselect = null;
         for (Book book : repository.getBooks()) {
             if (book.getStatus() == Book.Status.AVAILABLE) {
                 availableBooks.add(book);
+                if (selected != null && book.getIsbn().equals(selected.getIsbn())) {
+                    reselect = book;
+                }
             }
         }
         bookComboBox.setItems(availableBooks);
+        bookComboBox.setValue(reselect);
 
         readerComboBox.setItems(repository.getReaders());
     }
@@ -170,7 +199,7 @@ public class LoanController {
 
     private void updateOverdueCount() {
         if (overdueCountLabel != null) {
-            int count = repository.getAllOverdueLoans().size();
+            int count = repository.getOverdueLoanCount();
             overdueCountLabel.setText("Emprunts en retard : " + count);
             if (count > 0) {
                 overdueCountLabel.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
@@ -215,33 +244,46 @@ public class LoanController {
             }
         }
 
-        Loan loan = repository.borrowBook(selectedBook.getIsbn(), selectedReader.getSubscriberNumber());
-
-        if (loan != null) {
-            showAlert(Alert.AlertType.INFORMATION, "Emprunt enregistré", null,
-                    "Le livre \"" + selectedBook.getTitle() + "\" a été emprunté par " +
-                            selectedReader.getFirstName() + " " + selectedReader.getLastName() + ".\n\n" +
-                            "Date de retour prévue : " + loan.getDueDate().format(dateFormatter));
-
-            setupComboBoxes();
-            refreshLoanTable();
-            updateOverdueCount();
-            bookComboBox.setValue(null);
-            readerComboBox.setValue(null);
-        } else {
-            showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'enregistrement de l'emprunt.");
-        }
+        setBusy(true);
+        repository.borrowBookAsync(selectedBook.getIsbn(), selectedReader.getSubscriberNumber())
+                .whenComplete((loan, error) -> {
+                    setBusy(false);
+                    if (error != null) {
+                        showAlert(Alert.AlertType.ERROR, "Erreur", null,
+                                "Erreur lors de l'enregistrement de l'emprunt : " + error.getMessage());
+                    } else if (loan != null) {
+                        showAlert(Alert.AlertType.INFORMATION, "Emprunt enregistré", null,
+                                "Le livre \"" + selectedBook.getTitle() + "\" a été emprunté par " +
+                                        selectedReader.getFirstName() + " " + selectedReader.getLastName() + ".\n\n" +
+                                        "Date de retour prévue : " + loan.getDueDate().format(dateFormatter));
+
+                        setupComboBoxes();
+                        refreshLoanTable();
+                        updateOverdueCount();
+                        bookComboBox.setValue(null);
+                        readerComboBox.setValue(null);
+                    } else {
+                        showAlert(Alert.AlertType.ERROR, "Erreur", null,
+                                "Emprunt refusé : le livre n'est plus disponible.");
+                    }
+                });
     }
 
     @FXML
     public void onReturn() {
-        Loan selectedLoan = loanTable.getSelectionModel().getSelectedItem();
+        List<Loan> selectedLoans = new ArrayList<>(loanTable.getSelectionModel().getSelectedItems());
 
-        if (selectedLoan == null) {
+        if (selectedLoans.isEmpty()) {
             showAlert(Alert.AlertType.WARNING, "Attention", null,
                     "Veuillez sélectionner un emprunt dans la table.");
             return;
         }
+        if (selectedLoans.size() > 1) {
+            returnSelectedLoans(selectedLoans);
+            return;
+        }
+
+        Loan selectedLoan = selectedLoans.get(0);
 
         if (selectedLoan.isReturned()) {
             showAlert(Alert.AlertType.WARNING, "Attention", null,
@@ -262,17 +304,87 @@ public class LoanController {
         Optional<ButtonType> result = showConfirmation("Confirmation de retour", "Retour de livre", message);
 
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            if (repository.returnBook(selectedLoan.getId())) {
-                showAlert(Alert.AlertType.INFORMATION, "Retour enregistré", null,
-                        "Le livre \"" + bookTitle + "\" a été retourné avec succès.");
-
-                setupComboBoxes();
-                refreshLoanTable();
-                refreshOverdueTable();
-                updateOverdueCount();
+            setBusy(true);
+            repository.returnBookAsync(selectedLoan.getId()).whenComplete((returned, error) -> {
+                setBusy(false);
+                if (Boolean.TRUE.equals(returned)) {
+                    showAlert(Alert.AlertType.INFORMATION, "Retour enregistré", null,
+                            "Le livre \"" + bookTitle + "\" a été retourné avec succès.");
+
+                    setupComboBoxes();
+                    refreshLoanTable();
+                    refreshOverdueTable();
+                    updateOverdueCount();
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'enregistrement du retour.");
+                }
+            });
+        }
+    }
+
+    private void returnSelectedLoans(List<Loan> selectedLoans) {
+        Map<String, Loan> pending = new LinkedHashMap<>();
+        for (Loan loan : selectedLoans) {
+            if (!loan.isReturned()) {
+                pending.put(loan.getId(), loan);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            showAlert(Alert.AlertType.WARNING, "Attention", null,
+                    "Les emprunts sélectionnés ont déjà été retournés.");
+            return;
+        }
+
+        Optional<ButtonType> result = showConfirmation("Confirmation de retour", "Retour de livres",
+                "Confirmer le retour de " + pending.size() + " livre(s) ?");
+        if (!result.isPresent() || result.get() != ButtonType.OK) {
+            return;
+        }
+
+        setBusy(true);
+        repository.returnBooksAsync(pending.keySet()).whenComplete((outcomes, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur", null,
+                        "Erreur lors de l'enregistrement des retours : " + error.getMessage());
+                return;
+            }
+
+            int returned = 0;
+            StringBuilder rejected = new StringBuilder();
+            for (Map.Entry<String, ReturnOutcome> e : outcomes.entrySet()) {
+                if (e.getValue() == ReturnOutcome.RETURNED) {
+                    returned++;
+                } else {
+                    rejected.append("• ").append(repository.getBookTitle(pending.get(e.getKey()).getBookIsbn()))
+                            .append(" : ").append(outcomeLabel(e.getValue())).append("\n");
+                }
+            }
+
+            if (rejected.length() == 0) {
+                showAlert(Alert.AlertType.INFORMATION, "Retours enregistrés", null,
+                        returned + " livre(s) retourné(s) avec succès.");
             } else {
-                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'enregistrement du retour.");
+                showAlert(Alert.AlertType.WARNING, "Retours partiels",
+                        returned + " livre(s) retourné(s) sur " + outcomes.size(), rejected.toString());
             }
+
+            setupComboBoxes();
+            refreshLoanTable();
+            refreshOverdueTable();
+            updateOverdueCount();
+        });
+    }
+
+    private static String outcomeLabel(ReturnOutcome outcome) {
+        switch (outcome) {
+            case ALREADY_RETURNED:
+                return "déjà retourné";
+            case NOT_FOUND:
+                return "emprunt introuvable";
+            default:
+                return "erreur lors de l'enregistrement";
         }
     }
 
@@ -336,11 +448,47 @@ public class LoanController {
 
     @FXML
     public void onRefresh() {
-        repository.refresh();
-        setupComboBoxes();
-        refreshLoanTable();
-        refreshOverdueTable();
-        updateOverdueCount();
+        setBusy(true);
+        repository.refreshAsync().whenComplete((v, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur", null,
+                        "Erreur lors du rafraîchissement : " + error.getMessage());
+                return;
+            }
+            setupComboBoxes();
+            refreshLoanTable();
+            refreshOverdueTable();
+            updateOverdueCount();
+        });
+    }
+
+    @FXML
+    public void onLoadHistory() {
+        setBusy(true);
+        repository.loadMoreLoanHistoryAsync(HISTORY_PAGE_SIZE).whenComplete((added, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur", null,
+                        "Erreur lors du chargement de l'historique : " + error.getMessage());
+                return;
+            }
+            refreshLoanTable();
+        });
+    }
+
+    private void setBusy(boolean busy) {
+        borrowButton.setDisable(busy);
+        returnButton.setDisable(busy);
+        if (refreshButton != null) {
+            refreshButton.setDisable(busy);
+        }
+        if (historyButton != null) {
+            historyButton.setDisable(busy || !repository.hasMoreLoanHistory());
+        }
+        if (busyIndicator != null) {
+            busyIndicator.setVisible(busy);
+        }
     }
 
     private void showAlert(Alert.AlertType type, String title, String header, String content) {
@@ -5,9 +5,13 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import storage.ChangeFeedPoller;
+import storage.Repository;
 
 public class MainApp extends Application {
 
+    private ChangeFeedPoller changeFeed;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         Parent root = FXMLLoader.load(getClass().getResource("/view/MainView.fxml"));
@@ -20,6 +24,17 @@ public class MainApp extends Application {
         primaryStage.setMaximized(false);
         primaryStage.setResizable(true);
         primaryStage.show();
+
+        changeFeed = new ChangeFeedPoller(Repository.getInstance());
+        changeFeed.start();
+    }
+
+    @Override
+    public void stop() {
+        if (changeFeed != null) {
+            changeFeed.stop();
+        }
+        Repository.getInstance().saveSnapshot();
     }
 
     public static void main(String[] args) {
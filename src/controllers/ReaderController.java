@@ -7,11 +7,13 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
+import storage.ImportReport;
 import storage.Repository;
 import java.io.File;
-import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 import models.Reader;
@@ -38,6 +40,12 @@ public class ReaderController {
     @FXML
     private Button addReaderButton, editReaderButton, deleteReaderButton;
 
+    @FXML
+    private VBox transferPane;
+
+    @FXML
+    private ProgressIndicator busyIndicator;
+
     private Repository repository;
 
     @FXML
@@ -140,12 +148,16 @@ public class ReaderController {
 
         Reader reader = createReaderFromFields();
 
-        if (repository.addReader(reader)) {
-            showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Lecteur ajouté avec succès !");
-            clearFields();
-        } else {
-            showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'ajout du lecteur.");
-        }
+        setBusy(true);
+        repository.addReaderAsync(reader).whenComplete((added, error) -> {
+            setBusy(false);
+            if (Boolean.TRUE.equals(added)) {
+                showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Lecteur ajouté avec succès !");
+                clearFields();
+            } else {
+                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de l'ajout du lecteur.");
+            }
+        });
     }
 
     @FXML
@@ -166,12 +178,16 @@ public class ReaderController {
         if (result.isPresent() && result.get() == ButtonType.OK) {
             Reader updatedReader = createReaderFromFields();
 
-            if (repository.updateReader(updatedReader)) {
-                showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Lecteur modifié avec succès !");
-                clearFields();
-            } else {
-                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la modification du lecteur.");
-            }
+            setBusy(true);
+            repository.updateReaderAsync(updatedReader).whenComplete((updated, error) -> {
+                setBusy(false);
+                if (Boolean.TRUE.equals(updated)) {
+                    showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Lecteur modifié avec succès !");
+                    clearFields();
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la modification du lecteur.");
+                }
+            });
         }
     }
 
@@ -195,12 +211,16 @@ public class ReaderController {
                         + selectedReader.getLastName() + " ?");
 
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            if (repository.removeReader(selectedReader)) {
-                showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Lecteur supprimé avec succès !");
-                clearFields();
-            } else {
-                showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la suppression du lecteur.");
-            }
+            setBusy(true);
+            repository.removeReaderAsync(selectedReader).whenComplete((removed, error) -> {
+                setBusy(false);
+                if (Boolean.TRUE.equals(removed)) {
+                    showAlert(Alert.AlertType.INFORMATION, "Succès", null, "Lecteur supprimé avec succès !");
+                    clearFields();
+                } else {
+                    showAlert(Alert.AlertType.ERROR, "Erreur", null, "Erreur lors de la suppression du lecteur.");
+                }
+            });
         }
     }
 
@@ -220,14 +240,17 @@ public class ReaderController {
         if (file == null)
             return;
 
-        try {
-            repository.exportReadersToJson(file);
-            showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
-                    "Les lecteurs ont été exportés vers :\n" + file.getAbsolutePath());
-        } catch (IOException ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
-                    "Erreur lors de l'export : " + ex.getMessage());
-        }
+        setBusy(true);
+        repository.exportReadersToJsonAsync(file).whenComplete((v, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
+                        "Erreur lors de l'export : " + error.getMessage());
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
+                        "Les lecteurs ont été exportés vers :\n" + file.getAbsolutePath());
+            }
+        });
     }
 
     @FXML
@@ -240,14 +263,16 @@ public class ReaderController {
         if (file == null)
             return;
 
-        try {
-            List<Reader> imported = repository.importReadersFromXml(file);
-            showAlert(Alert.AlertType.INFORMATION, "Import réussi", null,
-                    imported.size() + " lecteur(s) importé(s) depuis :\n" + file.getAbsolutePath());
-        } catch (Exception ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
-                    "Erreur lors de l'import : " + ex.getMessage());
-        }
+        setBusy(true);
+        repository.importReadersFromXmlAsync(file).whenComplete((report, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
+                        "Erreur lors de l'import : " + error.getMessage());
+            } else {
+                showImportReport(report, file);
+            }
+        });
     }
 
     @FXML
@@ -260,14 +285,16 @@ public class ReaderController {
         if (file == null)
             return;
 
-        try {
-            int count = repository.importReadersFromJson(file);
-            showAlert(Alert.AlertType.INFORMATION, "Import réussi", null,
-                    count + " lecteur(s) importé(s) depuis :\n" + file.getAbsolutePath());
-        } catch (Exception ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
-                    "Erreur lors de l'import : " + ex.getMessage());
-        }
+        setBusy(true);
+        repository.importReadersFromJsonAsync(file).whenComplete((report, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'import", null,
+                        "Erreur lors de l'import : " + error.getMessage());
+            } else {
+                showImportReport(report, file);
+            }
+        });
     }
 
     @FXML
@@ -281,13 +308,48 @@ public class ReaderController {
         if (file == null)
             return;
 
-        try {
-            repository.exportReadersToXml(file);
-            showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
-                    "Les lecteurs ont été exportés vers :\n" + file.getAbsolutePath());
-        } catch (Exception ex) {
-            showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
-                    "Erreur lors de l'export : " + ex.getMessage());
+        setBusy(true);
+        repository.exportReadersToXmlAsync(file).whenComplete((v, error) -> {
+            setBusy(false);
+            if (error != null) {
+                showAlert(Alert.AlertType.ERROR, "Erreur d'export", null,
+                        "Erreur lors de l'export : " + error.getMessage());
+            } else {
+                showAlert(Alert.AlertType.INFORMATION, "Export réussi", null,
+                        "Les lecteurs ont été exportés vers :\n" + file.getAbsolutePath());
+            }
+        });
+    }
+
+    private void showImportReport(ImportReport<Reader> report, File file) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(report.getImportedCount()).append(" lecteur(s) importé(s) depuis :\n").append(file.getAbsolutePath());
+
+        if (report.getFailureCount() == 0) {
+            showAlert(Alert.AlertType.INFORMATION, "Import réussi", null, sb.toString());
+            return;
+        }
+
+        sb.append("\n\n").append(report.getFailureCount()).append(" ligne(s) rejetée(s) :\n");
+        List<ImportReport.RowFailure> failures = report.getFailures();
+        for (int i = 0; i < Math.min(failures.size(), 10); i++) {
+            sb.append("• ").append(failures.get(i)).append("\n");
+        }
+        if (failures.size() > 10) {
+            sb.append("…");
+        }
+        showAlert(Alert.AlertType.WARNING, "Import partiel", null, sb.toString());
+    }
+
+    private void setBusy(boolean busy) {
+        addReaderButton.setDisable(busy);
+        editReaderButton.setDisable(busy);
+        deleteReaderButton.setDisable(busy);
+        if (transferPane != null) {
+            transferPane.setDisable(busy);
+        }
+        if (busyIndicator != null) {
+            busyIndicator.setVisible(busy);
         }
     }
 
@@ -4,6 +4,7 @@ import javafx.fxml.FXML;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Label;
+import storage.LibraryEvents;
 import storage.Repository;
 
 import java.util.Map;
@@ -38,12 +39,14 @@ public class StatisticsController {
 
     @FXML
     public void refreshStatistics() {
-        fillTopBooksChart();
-        fillLoansPerReaderChart();
+        LibraryEvents.Statistics event = LibraryEvents.statistics();
+        int topBooks = fillTopBooksChart();
+        int readers = fillLoansPerReaderChart();
         updateSummaryLabels();
+        event.finish(topBooks, readers, repository.getOverdueLoanCount());
     }
 
-    private void fillTopBooksChart() {
+    private int fillTopBooksChart() {
         Map<String, Long> top = repository.topBorrowedBooks(10);
         XYChart.Series<String, Number> series = new XYChart.Series<>();
         series.setName("Nombre d'emprunts");
@@ -60,9 +63,10 @@ public class StatisticsController {
         if (!series.getData().isEmpty()) {
             topBooksChart.getData().add(series);
         }
+        return series.getData().size();
     }
 
-    private void fillLoansPerReaderChart() {
+    private int fillLoansPerReaderChart() {
         Map<String, Long> perReader = repository.loansCountByReader();
         XYChart.Series<String, Number> series = new XYChart.Series<>();
         series.setName("Nombre d'emprunts");
@@ -76,6 +80,7 @@ public class StatisticsController {
         if (!series.getData().isEmpty()) {
             loansPerReaderChart.getData().add(series);
         }
+        return series.getData().size();
     }
 
     private void updateSummaryLabels() {
@@ -86,10 +91,10 @@ public class StatisticsController {
             totalReadersLabel.setText("Total lecteurs : " + repository.getReaders().size());
         }
         if (totalLoansLabel != null) {
-            totalLoansLabel.setText("Total emprunts : " + repository.getLoans().size());
+            totalLoansLabel.setText("Total emprunts : " + repository.getTotalLoanCount());
         }
         if (overdueLoansLabel != null) {
-            int overdueCount = repository.getAllOverdueLoans().size();
+            int overdueCount = repository.getOverdueLoanCount();
             overdueLoansLabel.setText("Emprunts en retard : " + overdueCount);
             if (overdueCount > 0) {
                 overdueLoansLabel.setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
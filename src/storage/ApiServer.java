@@ -0,0 +1,519 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.sql.SQLTransientException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Headless mode for self-check kiosks and the catalog website: search, borrow, return and overdue loans as a
+// JSON API over the JDK's HTTP server. Requests are served by a bounded worker pool over persistent HTTP/1.1
+// connections. As in the desktop application, the in-memory indexes are only read and updated on one thread
+// (here "api-apply" instead of the FX thread), while store I/O runs on the repository's I/O pool.
+public class ApiServer {
+
+    private static final String HOST = System.getProperty("digitallibrary.api.host", "0.0.0.0");
+    private static final int PORT = Integer.getInteger("digitallibrary.api.port", 8080);
+    private static final int THREADS = Integer.getInteger("digitallibrary.api.threads", 32);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("digitallibrary.api.queueCapacity", 256);
+    private static final int BACKLOG = Integer.getInteger("digitallibrary.api.backlog", 128);
+    private static final long TIMEOUT_SECONDS = Long.getLong("digitallibrary.api.timeoutSeconds", 10L);
+
+    private static final String PREFIX = "/api/";
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final Repository repository;
+    private final ExecutorService applyThread;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ObjectMapper mapper = new ObjectMapper(jsonFactory);
+    private HttpServer server;
+    private ThreadPoolExecutor workers;
+
+    private interface Body {
+        void write(JsonGenerator gen) throws IOException;
+    }
+
+    private static final class Reply {
+        final int status;
+        final Body body;
+        String allow;
+
+        Reply(int status, Body body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    // A loan copied on the apply thread with the title of its book, ready to be written by a worker.
+    private static final class LoanRow {
+        final Loan loan;
+        final String title;
+
+        LoanRow(Loan loan, String title) {
+            this.loan = loan;
+            this.title = title;
+        }
+    }
+
+    private static final class BadRequest extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+        String allow;
+
+        BadRequest(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        Reply reply() {
+            Reply reply = error(status, getMessage());
+            reply.allow = allow;
+            return reply;
+        }
+    }
+
+    public ApiServer(Repository repository, ExecutorService applyThread) {
+        this.repository = repository;
+        this.applyThread = applyThread;
+    }
+
+    public synchronized void start(String host, int port) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        // When every worker is busy and the queue is full, the accepting thread serves the request itself,
+        // so further connections wait in the socket backlog instead of piling up in memory.
+        workers = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "api-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        server = HttpServer.create(new InetSocketAddress(host, port), BACKLOG);
+        server.setExecutor(workers);
+        server.createContext(PREFIX, this::handle);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            workers.shutdownNow();
+            server = null;
+        }
+    }
+
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Only reads are cut short by TIMEOUT_SECONDS. A borrow or a return that was handed to the repository
+    // may still go through, so the client waits for its outcome instead of being told to try again.
+    private void handle(HttpExchange exchange) throws IOException {
+        Reply reply;
+        boolean write = "POST".equals(exchange.getRequestMethod());
+        try {
+            byte[] body = readBody(exchange);
+            CompletableFuture<Reply> pending = route(exchange.getRequestMethod(),
+                    exchange.getRequestURI().getRawPath(), query(exchange.getRequestURI().getRawQuery()), body);
+            reply = write ? pending.get() : pending.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (BadRequest e) {
+            reply = e.reply();
+        } catch (RejectedExecutionException e) {
+            reply = error(503, "Serveur en cours d'arrêt");
+        } catch (TimeoutException e) {
+            reply = error(503, "Aucune réponse après " + TIMEOUT_SECONDS + " s, réessayer plus tard");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            System.err.println("Erreur lors du traitement de " + exchange.getRequestURI() + " : " + cause);
+            if (cause instanceof RejectedExecutionException || cause instanceof SQLTransientException || !write) {
+                // The repository's I/O queue is full, or the store rolled back on a transient error (no free
+                // connection, lock timeout, deadlock): nothing was written.
+                reply = error(503, "Service momentanément indisponible : " + cause.getMessage());
+            } else {
+                reply = error(500, "Issue de l'opération inconnue, vérifier l'état du livre (GET " + PREFIX
+                        + "livres/{isbn}) avant de recommencer : " + cause.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply = error(503, "Serveur en cours d'arrêt");
+        }
+        send(exchange, reply);
+    }
+
+    private CompletableFuture<Reply> route(String method, String path, Map<String, String> query, byte[] body)
+            throws BadRequest {
+        String[] segments = path.length() > PREFIX.length() ? path.substring(PREFIX.length()).split("/")
+                : new String[0];
+        String resource = segments.length > 0 ? segments[0] : "";
+        switch (resource) {
+            case "livres":
+                if (segments.length == 1) {
+                    requireMethod(method, "GET");
+                    return searchBooks(query.getOrDefault("q", ""), limit(query));
+                }
+                if (segments.length == 2) {
+                    requireMethod(method, "GET");
+                    return findBook(decode(segments[1]));
+                }
+                break;
+            case "emprunts":
+                if (segments.length == 1) {
+                    requireMethod(method, "POST");
+                    JsonNode json = parse(body);
+                    return borrow(required(json, "isbn"), required(json, "numeroAbonne"));
+                }
+                if (segments.length == 3 && "retour".equals(segments[2])) {
+                    requireMethod(method, "POST");
+                    return returnLoan(decode(segments[1]));
+                }
+                break;
+            case "retards":
+                if (segments.length == 1) {
+                    requireMethod(method, "GET");
+                    return overdueLoans(query.get("lecteur"), limit(query));
+                }
+                break;
+            default:
+                break;
+        }
+        throw new BadRequest(404, "Ressource inconnue : " + path);
+    }
+
+    // GET /api/livres?q=...&limite=20 : exact ISBN, else books whose title or author words start with those of q.
+    private CompletableFuture<Reply> searchBooks(String q, int limit) {
+        return onApplyThread(() -> copyBooks(repository.searchBooks(q, limit))).thenApply(found -> ok(gen -> {
+            gen.writeStartArray();
+            for (Book b : found) {
+                writeBook(gen, b);
+            }
+            gen.writeEndArray();
+        }));
+    }
+
+    // GET /api/livres/{isbn}
+    private CompletableFuture<Reply> findBook(String isbn) {
+        return onApplyThread(() -> {
+            Optional<Book> book = repository.findBookByIsbn(isbn);
+            if (!book.isPresent()) {
+                return error(404, "Livre inconnu : " + isbn);
+            }
+            Book copy = copy(book.get());
+            boolean borrowable = repository.canBorrowBook(isbn);
+            return ok(gen -> {
+                gen.writeStartObject();
+                writeBookFields(gen, copy);
+                gen.writeBooleanField("empruntable", borrowable);
+                gen.writeEndObject();
+            });
+        });
+    }
+
+    // POST /api/emprunts {"isbn": "...", "numeroAbonne": "..."}
+    private CompletableFuture<Reply> borrow(String isbn, String subscriberNumber) {
+        return onApplyThread(() -> {
+            if (!repository.findBookByIsbn(isbn).isPresent()) {
+                return CompletableFuture.completedFuture(error(404, "Livre inconnu : " + isbn));
+            }
+            if (!repository.findReaderBySubscriber(subscriberNumber).isPresent()) {
+                return CompletableFuture.completedFuture(error(404, "Lecteur inconnu : " + subscriberNumber));
+            }
+            if (!repository.canBorrowBook(isbn)) {
+                return CompletableFuture.completedFuture(error(409, "Livre déjà emprunté : " + isbn));
+            }
+            return repository.borrowBookAsync(isbn, subscriberNumber).thenApply(loan -> {
+                if (loan == null) {
+                    return error(409, "Emprunt refusé : " + isbn);
+                }
+                LoanRow row = new LoanRow(copy(loan), repository.getBookTitle(isbn));
+                return new Reply(201, gen -> writeLoan(gen, row));
+            });
+        }).thenCompose(f -> f);
+    }
+
+    // POST /api/emprunts/{id}/retour
+    private CompletableFuture<Reply> returnLoan(String loanId) {
+        return onApplyThread(() -> repository.returnBooksAsync(Collections.singletonList(loanId)))
+                .thenCompose(f -> f).thenApply(outcomes -> {
+                    switch (outcomes.get(loanId)) {
+                        case NOT_FOUND:
+                            return error(404, "Emprunt inconnu : " + loanId);
+                        case ALREADY_RETURNED:
+                            return error(409, "Emprunt déjà rendu : " + loanId);
+                        case FAILED:
+                            return error(500, "Retour non enregistré, vérifier l'emprunt avant de recommencer : "
+                                    + loanId);
+                        default:
+                            break;
+                    }
+                    return ok(gen -> {
+                        gen.writeStartObject();
+                        gen.writeStringField("id", loanId);
+                        gen.writeBooleanField("rendu", true);
+                        gen.writeEndObject();
+                    });
+                });
+    }
+
+    // GET /api/retards[?lecteur=...] : overdue loans, the most overdue first. The overdue index is already in
+    // due-date order, so only the requested page is copied; a reader's few loans are sorted here.
+    private CompletableFuture<Reply> overdueLoans(String subscriberNumber, int limit) {
+        return onApplyThread(() -> {
+            List<Loan> overdue;
+            int total;
+            if (subscriberNumber != null) {
+                overdue = repository.getOverdueLoansForReader(subscriberNumber);
+                overdue.sort((a, b) -> a.getDueDate().compareTo(b.getDueDate()));
+                total = overdue.size();
+                overdue = overdue.subList(0, Math.min(limit, total));
+            } else {
+                total = repository.getOverdueLoanCount();
+                overdue = repository.getAllOverdueLoans(limit);
+            }
+            List<LoanRow> page = new ArrayList<>(overdue.size());
+            for (Loan l : overdue) {
+                page.add(new LoanRow(copy(l), repository.getBookTitle(l.getBookIsbn())));
+            }
+            LocalDate today = LocalDate.now();
+            return ok(gen -> {
+                gen.writeStartObject();
+                gen.writeNumberField("total", total);
+                gen.writeArrayFieldStart("emprunts");
+                for (LoanRow row : page) {
+                    gen.writeStartObject();
+                    writeLoanFields(gen, row);
+                    gen.writeNumberField("joursDeRetard", ChronoUnit.DAYS.between(row.loan.getDueDate(), today));
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+            });
+        });
+    }
+
+    private <T> CompletableFuture<T> onApplyThread(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, applyThread);
+    }
+
+    // Books and loans are mutated on the apply thread; workers only ever see copies.
+    private static List<Book> copyBooks(List<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book b : books) {
+            copies.add(copy(b));
+        }
+        return copies;
+    }
+
+    private static Book copy(Book b) {
+        return new Book(b.getIsbn(), b.getTitle(), b.getAuthor(), b.getYear(), b.getPublisher(), b.getStatus());
+    }
+
+    private static Loan copy(Loan l) {
+        return new Loan(l.getId(), l.getBookIsbn(), l.getReaderSubscriberNumber(), l.getBorrowDate(),
+                l.getDueDate(), l.isReturned());
+    }
+
+    private static void writeBook(JsonGenerator gen, Book b) throws IOException {
+        gen.writeStartObject();
+        writeBookFields(gen, b);
+        gen.writeEndObject();
+    }
+
+    private static void writeBookFields(JsonGenerator gen, Book b) throws IOException {
+        gen.writeStringField("isbn", b.getIsbn());
+        gen.writeStringField("titre", b.getTitle());
+        gen.writeStringField("auteur", b.getAuthor());
+        gen.writeNumberField("annee", b.getYear());
+        gen.writeStringField("editeur", b.getPublisher());
+        gen.writeStringField("statut", CatalogFormat.statusLabel(b.getStatus()));
+    }
+
+    private static void writeLoan(JsonGenerator gen, LoanRow row) throws IOException {
+        gen.writeStartObject();
+        writeLoanFields(gen, row);
+        gen.writeEndObject();
+    }
+
+    private static void writeLoanFields(JsonGenerator gen, LoanRow row) throws IOException {
+        Loan l = row.loan;
+        gen.writeStringField("id", l.getId());
+        gen.writeStringField("isbn", l.getBookIsbn());
+        gen.writeStringField("titre", row.title);
+        gen.writeStringField("numeroAbonne", l.getReaderSubscriberNumber());
+        gen.writeStringField("dateEmprunt", String.valueOf(l.getBorrowDate()));
+        gen.writeStringField("dateRetourPrevue", String.valueOf(l.getDueDate()));
+        gen.writeBooleanField("rendu", l.isReturned());
+    }
+
+    private static Reply ok(Body body) {
+        return new Reply(200, body);
+    }
+
+    private static Reply error(int status, String message) {
+        return new Reply(status, gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("erreur", message);
+            gen.writeEndObject();
+        });
+    }
+
+    private static void requireMethod(String method, String expected) throws BadRequest {
+        if (!expected.equals(method)) {
+            BadRequest e = new BadRequest(405, "Méthode " + method + " non prise en charge, utiliser " + expected);
+            e.allow = expected;
+            throw e;
+        }
+    }
+
+    private static int limit(Map<String, String> query) throws BadRequest {
+        String value = query.get("limite");
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(value), MAX_LIMIT));
+        } catch (NumberFormatException e) {
+            throw new BadRequest(400, "Paramètre limite invalide : " + value);
+        }
+    }
+
+    private JsonNode parse(byte[] body) throws BadRequest {
+        try {
+            JsonNode json = mapper.readTree(body);
+            if (json == null || !json.isObject()) {
+                throw new BadRequest(400, "Un objet JSON est attendu");
+            }
+            return json;
+        } catch (IOException e) {
+            throw new BadRequest(400, "JSON invalide : " + e.getMessage());
+        }
+    }
+
+    private static String required(JsonNode json, String field) throws BadRequest {
+        JsonNode value = json.get(field);
+        if (value == null || !value.isTextual() || value.asText().trim().isEmpty()) {
+            throw new BadRequest(400, "Champ obligatoire manquant : " + field);
+        }
+        return value.asText().trim();
+    }
+
+    private static Map<String, String> query(String rawQuery) throws BadRequest {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = decode(eq >= 0 ? pair.substring(0, eq) : pair);
+            params.putIfAbsent(name, eq >= 0 ? decode(pair.substring(eq + 1)) : "");
+        }
+        return params;
+    }
+
+    private static String decode(String s) throws BadRequest {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new BadRequest(400, "Encodage invalide : " + s);
+        }
+    }
+
+    // The body is always read to the end so that the connection can serve the next request.
+    private static byte[] readBody(HttpExchange exchange) throws IOException, BadRequest {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        boolean tooLarge = false;
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (body.size() + n > MAX_BODY_BYTES) {
+                    tooLarge = true;
+                } else {
+                    body.write(buffer, 0, n);
+                }
+            }
+        }
+        if (tooLarge) {
+            throw new BadRequest(413, "Requête trop volumineuse (" + MAX_BODY_BYTES + " octets maximum)");
+        }
+        return body.toByteArray();
+    }
+
+    private void send(HttpExchange exchange, Reply reply) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonGenerator gen = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8)) {
+            reply.body.write(gen);
+        }
+        byte[] bytes = buffer.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        if (reply.allow != null) {
+            exchange.getResponseHeaders().set("Allow", reply.allow);
+        }
+        exchange.sendResponseHeaders(reply.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        LibraryStore store = LibraryStore.fromSystemProperties();
+        ExecutorService applyThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "api-apply");
+            t.setDaemon(true);
+            return t;
+        });
+        long started = System.nanoTime();
+        Repository repository = new Repository(store, applyThread);
+        CompletableFuture.runAsync(repository::prepareSearch, applyThread).join();
+        System.out.println("Données chargées en " + (System.nanoTime() - started) / 1000000 + " ms depuis "
+                + store.getLocation());
+        ChangeFeedPoller changeFeed = new ChangeFeedPoller(repository);
+        changeFeed.start();
+
+        ApiServer server = new ApiServer(repository, applyThread);
+        server.start(HOST, PORT);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            changeFeed.stop();
+            applyThread.shutdown();
+            store.close();
+        }, "api-shutdown"));
+        System.out.println("API disponible sur http://" + HOST + ":" + server.getPort() + PREFIX + " (" + THREADS
+                + " fils de traitement)");
+    }
+}
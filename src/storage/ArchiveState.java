@@ -0,0 +1,20 @@
+package storage;
+
+import java.time.LocalDate;
+
+final class ArchiveState {
+
+    final LocalDate horizon;
+    LocalDate cursorDate;
+    String cursorId;
+    long archived;
+    boolean finished;
+
+    ArchiveState(LocalDate horizon, LocalDate cursorDate, String cursorId, long archived, boolean finished) {
+        this.horizon = horizon;
+        this.cursorDate = cursorDate;
+        this.cursorId = cursorId;
+        this.archived = archived;
+        this.finished = finished;
+    }
+}
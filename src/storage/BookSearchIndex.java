@@ -0,0 +1,157 @@
+package storage;
+
+import models.Book;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Words of titles and authors, lowercased once when a book is indexed. A query matches a book when each of its
+// words starts a word of the title or the author ("vic hug" finds "Victor Hugo"). The words a book was indexed
+// under are kept with it, so that removing a book edited in place still finds its old entries. Built on the
+// first search (desks that never search pay nothing), then kept up to date.
+class BookSearchIndex {
+
+    // A Book, or a Set<Book> once several books share the word: most words (numbers, names) belong to one book.
+    private final NavigableMap<String, Object> booksByWord = new TreeMap<>();
+    private final Map<Book, String[]> wordsByBook = new IdentityHashMap<>();
+    private boolean built;
+
+    boolean isBuilt() {
+        return built;
+    }
+
+    void rebuild(Collection<? extends Book> books) {
+        booksByWord.clear();
+        wordsByBook.clear();
+        addAll(books);
+        built = true;
+    }
+
+    void addAll(Collection<? extends Book> books) {
+        for (Book b : books) {
+            add(b);
+        }
+    }
+
+    void add(Book book) {
+        String[] words = words((book.getTitle() == null ? "" : book.getTitle()) + " "
+                + (book.getAuthor() == null ? "" : book.getAuthor()));
+        String[] previous = wordsByBook.put(book, words);
+        if (previous != null) {
+            unindex(book, previous);
+        }
+        for (String word : words) {
+            Object current = booksByWord.putIfAbsent(word, book);
+            if (current instanceof Book && current != book) {
+                Set<Book> books = Collections.newSetFromMap(new IdentityHashMap<>());
+                books.add((Book) current);
+                books.add(book);
+                booksByWord.put(word, books);
+            } else if (current instanceof Set) {
+                asSet(current).add(book);
+            }
+        }
+    }
+
+    void removeAll(Collection<? extends Book> books) {
+        for (Book b : books) {
+            remove(b);
+        }
+    }
+
+    void remove(Book book) {
+        String[] words = wordsByBook.remove(book);
+        if (words != null) {
+            unindex(book, words);
+        }
+    }
+
+    private void unindex(Book book, String[] words) {
+        for (String word : words) {
+            Object current = booksByWord.get(word);
+            if (current == book) {
+                booksByWord.remove(word);
+            } else if (current instanceof Set) {
+                Set<Book> books = asSet(current);
+                books.remove(book);
+                if (books.size() == 1) {
+                    booksByWord.put(word, books.iterator().next());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Book> asSet(Object books) {
+        return (Set<Book>) books;
+    }
+
+    // Candidates come from the longest query word, the most selective one; the other words are checked
+    // against the candidate's own words.
+    List<Book> search(String query, int limit) {
+        String[] terms = words(query);
+        List<Book> result = new ArrayList<>();
+        if (terms.length == 0 || limit <= 0) {
+            return result;
+        }
+        String longest = terms[0];
+        for (String term : terms) {
+            if (term.length() > longest.length()) {
+                longest = term;
+            }
+        }
+        Set<Book> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object books : booksByWord.subMap(longest, true, longest + Character.MAX_VALUE, false).values()) {
+            for (Book b : books instanceof Book ? Collections.singleton((Book) books) : asSet(books)) {
+                if (seen.add(b) && matchesAll(wordsByBook.get(b), terms)) {
+                    result.add(b);
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesAll(String[] words, String[] terms) {
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String[] words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean letter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,49 @@
+package storage;
+
+import models.Book;
+import models.Reader;
+
+import java.util.Map;
+
+final class CatalogFormat {
+
+    static final String ROOT = "bibliotheque";
+    static final String BOOK = "livre";
+    static final String READER = "lecteur";
+
+    static final String[] BOOK_FIELDS = { "isbn", "titre", "auteur", "annee", "editeur", "statut" };
+    static final String[] READER_FIELDS = { "numeroAbonne", "prenom", "nom", "email", "joursEmpruntMax" };
+
+    private static final String BORROWED = "emprunté";
+    private static final String AVAILABLE = "disponible";
+
+    private CatalogFormat() {
+    }
+
+    static Book toBook(Map<String, String> f) {
+        int year = 0;
+        try {
+            year = Integer.parseInt(f.get("annee"));
+        } catch (Exception e) {
+        }
+        return new Book(f.get("isbn"), f.get("titre"), f.get("auteur"), year, f.get("editeur"),
+                parseStatus(f.get("statut")));
+    }
+
+    static Reader toReader(Map<String, String> f) {
+        int maxLoanDays = 14;
+        try {
+            maxLoanDays = Integer.parseInt(f.get("joursEmpruntMax"));
+        } catch (Exception e) {
+        }
+        return new Reader(f.get("numeroAbonne"), f.get("prenom"), f.get("nom"), f.get("email"), maxLoanDays);
+    }
+
+    static Book.Status parseStatus(String label) {
+        return BORROWED.equalsIgnoreCase(label) ? Book.Status.BORROWED : Book.Status.AVAILABLE;
+    }
+
+    static String statusLabel(Book.Status status) {
+        return status == Book.Status.BORROWED ? BORROWED : AVAILABLE;
+    }
+}
@@ -0,0 +1,273 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+// Synthetic catalogs, readers and loan histories for sizing and load tests. Popularity follows a Zipf
+// law: a few books and heavy readers account for most loans, as in real circulation data. The same
+// parameters and seed always produce the same rows, whatever the backend.
+public class CatalogGenerator {
+
+    static final int BOOKS = Integer.getInteger("digitallibrary.generator.books", 10000);
+    private static final int LOANS_PER_BOOK = Integer.getInteger("digitallibrary.generator.loansPerBook", 10);
+    private static final int YEARS = Integer.getInteger("digitallibrary.generator.years", 3);
+    private static final double SKEW = Double.parseDouble(System.getProperty("digitallibrary.generator.skew", "1.0"));
+    private static final int ACTIVE_PERCENT = Integer.getInteger("digitallibrary.generator.activePercent", 2);
+    private static final long SEED = Long.getLong("digitallibrary.generator.seed", 42L);
+
+    private static final int BOOKS_PER_READER = 20;
+    private static final int CHUNK_ROWS = 20000;
+    private static final int[] LOAN_DAYS = { 14, 21, 28 };
+    private static final String[] FIRST_NAMES = { "Alice", "Hugo", "Léa", "Louis", "Chloé", "Gabriel", "Emma",
+            "Jules", "Manon", "Arthur", "Inès", "Raphaël", "Camille", "Nathan", "Sarah", "Lucas", "Zoé", "Adam",
+            "Juliette", "Paul" };
+    private static final String[] LAST_NAMES = { "Martin", "Bernard", "Dubois", "Thomas", "Robert", "Richard",
+            "Petit", "Durand", "Leroy", "Moreau", "Simon", "Laurent", "Lefebvre", "Michel", "Garcia", "David",
+            "Bertrand", "Roux", "Vincent", "Fournier" };
+    static final String[] TITLE_WORDS = { "nuit", "mer", "jardin", "silence", "voyage", "mémoire", "ville",
+            "hiver", "lumière", "secret", "chemin", "rivière", "étoile", "forêt", "ombre", "retour", "saison",
+            "île", "miroir", "vent", "temps", "maison", "lettre", "feu" };
+    private static final String[] PUBLISHERS = { "Gallimard", "Flammarion", "Albin Michel", "Actes Sud", "Grasset",
+            "Le Seuil", "Fayard", "Stock", "Robert Laffont", "Hachette" };
+
+    public interface ProgressListener {
+        void onProgress(String entity, long done, long total);
+    }
+
+    private final int bookCount;
+    private final int readerCount;
+    private final int loanCount;
+    private final int activeCount;
+    private final int years;
+    private final double skew;
+    private final long seed;
+    private final LocalDate today = LocalDate.now();
+    private BitSet borrowedBooks;
+
+    public CatalogGenerator(int books, int loansPerBook) {
+        this(books, Math.max(books / BOOKS_PER_READER, 1), (int) Math.min((long) books * loansPerBook,
+                Integer.MAX_VALUE), YEARS, SKEW, SEED);
+    }
+
+    public CatalogGenerator(int books, int readers, int loans, int years, double skew, long seed) {
+        this.bookCount = Math.max(books, 1);
+        this.readerCount = Math.max(readers, 1);
+        this.loanCount = Math.max(loans, 0);
+        this.activeCount = (int) Math.min((long) loanCount * ACTIVE_PERCENT / 100, bookCount);
+        this.years = Math.max(years, 1);
+        this.skew = skew;
+        this.seed = seed;
+    }
+
+    public static String isbn(int index) {
+        String digits = Integer.toString(index);
+        return "9780000000000".substring(0, 13 - digits.length()) + digits;
+    }
+
+    public static String subscriberNumber(int index) {
+        return "LEC" + index;
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    public int getReaderCount() {
+        return readerCount;
+    }
+
+    public int getLoanCount() {
+        return loanCount;
+    }
+
+    // Ranks are spread over the catalog so that the most borrowed books are not all neighbours.
+    private int bookAt(int rank) {
+        long step = bookCount % 1000003 == 0 ? 1 : 1000003;
+        return (int) ((rank - 1) * step % bookCount);
+    }
+
+    private static int maxLoanDays(int reader) {
+        return LOAN_DAYS[(reader * 31) % LOAN_DAYS.length];
+    }
+
+    // The open loans are on the most popular books, one loan per book.
+    private synchronized BitSet borrowedBooks() {
+        if (borrowedBooks == null) {
+            borrowedBooks = new BitSet(bookCount);
+            for (int i = 0; i < activeCount; i++) {
+                borrowedBooks.set(bookAt(i + 1));
+            }
+        }
+        return borrowedBooks;
+    }
+
+    public Iterator<Book> books() {
+        BitSet borrowed = borrowedBooks();
+        Random random = new Random(seed);
+        return new Rows<Book>(bookCount) {
+            @Override
+            Book make(int i) {
+                StringBuilder title = new StringBuilder();
+                int words = 1 + random.nextInt(3);
+                for (int w = 0; w < words; w++) {
+                    String word = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+                    title.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : " " + word);
+                }
+                title.append(' ').append(i);
+                String author = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                        + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                return new Book(isbn(i), title.toString(), author, today.getYear() - random.nextInt(80),
+                        PUBLISHERS[random.nextInt(PUBLISHERS.length)],
+                        borrowed.get(i) ? Book.Status.BORROWED : Book.Status.AVAILABLE);
+            }
+        };
+    }
+
+    public Iterator<Reader> readers() {
+        return new Rows<Reader>(readerCount) {
+            @Override
+            Reader make(int i) {
+                String first = FIRST_NAMES[i % FIRST_NAMES.length];
+                String last = LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+                return new Reader(subscriberNumber(i), first, last,
+                        first.toLowerCase() + "." + last.toLowerCase() + i + "@exemple.fr", maxLoanDays(i));
+            }
+        };
+    }
+
+    // Returned loans come first, in borrow date order over the last years; the open ones follow.
+    public Iterator<Loan> loans() {
+        Random random = new Random(seed * 31 + 7);
+        ZipfSampler bookRanks = new ZipfSampler(bookCount, skew);
+        ZipfSampler readerRanks = new ZipfSampler(readerCount, Math.max(skew / 2, 0.1));
+        int returnedCount = loanCount - activeCount;
+        long historyDays = years * 365L;
+        LocalDate start = today.minusDays(historyDays);
+        return new Rows<Loan>(loanCount) {
+            @Override
+            Loan make(int i) {
+                int reader = readerRanks.sample(random) - 1;
+                int days = maxLoanDays(reader);
+                String id = "gen" + seed + "-" + i;
+                if (i < returnedCount) {
+                    LocalDate borrowDate = start.plusDays(i * historyDays / returnedCount);
+                    return new Loan(id, isbn(bookAt(bookRanks.sample(random))), subscriberNumber(reader),
+                            borrowDate, borrowDate.plusDays(days), true);
+                }
+                // About a third of the open loans are overdue.
+                LocalDate borrowDate = today.minusDays(random.nextInt(days + days / 2 + 1));
+                return new Loan(id, isbn(bookAt(i - returnedCount + 1)), subscriberNumber(reader), borrowDate,
+                        borrowDate.plusDays(days), false);
+            }
+        };
+    }
+
+    // Rows go in through the regular import methods, in chunks so that import reports stay small.
+    public long populate(LibraryStore store, int batchSize, ProgressListener listener) {
+        long failures = 0;
+        failures += populate("livres", books(), bookCount, batchSize, listener,
+                (rows, size) -> store.importBooks(rows, size));
+        failures += populate("lecteurs", readers(), readerCount, batchSize, listener,
+                (rows, size) -> store.importReaders(rows, size));
+        failures += populate("emprunts", loans(), loanCount, batchSize, listener,
+                (rows, size) -> store.importLoans(rows, size));
+        return failures;
+    }
+
+    private interface Importer<T> {
+        ImportReport<T> importRows(Iterator<T> rows, int batchSize);
+    }
+
+    private static <T> long populate(String entity, Iterator<T> rows, long total, int batchSize,
+            ProgressListener listener, Importer<T> importer) {
+        long done = 0;
+        long failures = 0;
+        while (rows.hasNext()) {
+            ImportReport<T> report = importer.importRows(take(rows, CHUNK_ROWS), batchSize);
+            done += report.getImportedCount() + report.getFailureCount();
+            if (report.getFailureCount() > 0) {
+                failures += report.getFailureCount();
+                System.err.println("Génération des " + entity + " : " + report.getFailures().get(0));
+            }
+            if (listener != null) {
+                listener.onProgress(entity, done, total);
+            }
+        }
+        return failures;
+    }
+
+    private static <T> Iterator<T> take(Iterator<T> rows, int limit) {
+        return new Iterator<T>() {
+            private int left = limit;
+
+            @Override
+            public boolean hasNext() {
+                return left > 0 && rows.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                left--;
+                return rows.next();
+            }
+        };
+    }
+
+    private abstract static class Rows<T> implements Iterator<T> {
+        private final int count;
+        private int next;
+
+        Rows(int count) {
+            this.count = count;
+        }
+
+        abstract T make(int i);
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public T next() {
+            if (next >= count) {
+                throw new NoSuchElementException();
+            }
+            return make(next++);
+        }
+    }
+
+    static void generate(LibraryStore store, int books) {
+        CatalogGenerator generator = new CatalogGenerator(books, LOANS_PER_BOOK);
+        System.out.println("Génération de " + generator.bookCount + " livres, " + generator.readerCount
+                + " lecteurs et " + generator.loanCount + " emprunts dans " + store.getLocation());
+        long started = System.nanoTime();
+        long failures = generator.populate(store, DatabaseManager.DEFAULT_BATCH_SIZE,
+                (entity, done, total) -> {
+                    if (done == total || done % (CHUNK_ROWS * 10) == 0) {
+                        System.out.println(entity + " : " + done + " / " + total);
+                    }
+                });
+        System.out.println("Génération terminée en " + (System.nanoTime() - started) / 1000000000L + " s ("
+                + failures + " ligne(s) refusée(s)).");
+    }
+
+    public static void main(String[] args) {
+        LibraryStore store = LibraryStore.fromSystemProperties();
+        try {
+            generate(store, args.length > 0 ? Integer.parseInt(args[0]) : BOOKS);
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package storage;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ChangeFeedPoller {
+
+    private static final long MIN_INTERVAL_MILLIS = Long.getLong("digitallibrary.sync.pollIntervalMillis", 2000L);
+    private static final long MAX_INTERVAL_MILLIS = Long.getLong("digitallibrary.sync.maxPollIntervalMillis",
+            30000L);
+
+    private final Repository repository;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private ScheduledExecutorService scheduler;
+    private long intervalMillis;
+
+    public ChangeFeedPoller(Repository repository) {
+        this(repository, MIN_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS);
+    }
+
+    public ChangeFeedPoller(Repository repository, long minIntervalMillis, long maxIntervalMillis) {
+        this.repository = repository;
+        this.minIntervalMillis = Math.max(minIntervalMillis, 100L);
+        this.maxIntervalMillis = Math.max(maxIntervalMillis, this.minIntervalMillis);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-feed-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        intervalMillis = minIntervalMillis;
+        schedule(intervalMillis);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private void schedule(long delayMillis) {
+        scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        int result;
+        try {
+            result = repository.pollChanges();
+        } catch (RuntimeException e) {
+            System.err.println("Erreur lors de la synchronisation : " + e.getMessage());
+            result = 0;
+        }
+
+        synchronized (this) {
+            if (scheduler == null) {
+                return;
+            }
+            if (result < 0) {
+                System.err.println("Synchronisation automatique désactivée : journal des modifications indisponible.");
+                stop();
+                return;
+            }
+            intervalMillis = result > 0 ? minIntervalMillis : Math.min(intervalMillis * 2, maxIntervalMillis);
+            schedule(intervalMillis);
+        }
+    }
+}
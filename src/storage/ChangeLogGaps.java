@@ -0,0 +1,78 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Seqs of change_log below the watermark that were not seen yet: a transaction can commit a lower seq after a
+// higher one was read, and a rolled-back one leaves a hole for good. Holes are kept as ranges and forgotten
+// once they are older than the overlap window.
+final class ChangeLogGaps {
+
+    private static final int MAX_RANGES = 1000;
+
+    // start -> { end, discovered at (ms) }
+    private final TreeMap<Long, long[]> ranges = new TreeMap<>();
+    private long watermark = -1;
+
+    long watermark() {
+        return watermark;
+    }
+
+    void reset(long watermark) {
+        ranges.clear();
+        this.watermark = watermark;
+    }
+
+    boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    // Seqs must be given in increasing order.
+    void advance(long seq, long nowMillis) {
+        if (watermark >= 0 && seq > watermark + 1) {
+            add(watermark + 1, seq - 1, nowMillis);
+        }
+        watermark = Math.max(watermark, seq);
+    }
+
+    void add(long from, long to, long nowMillis) {
+        if (from > to) {
+            return;
+        }
+        ranges.put(from, new long[] { to, nowMillis });
+        while (ranges.size() > MAX_RANGES) {
+            ranges.pollFirstEntry();
+        }
+    }
+
+    void seen(long seq) {
+        Map.Entry<Long, long[]> range = ranges.floorEntry(seq);
+        if (range == null || range.getValue()[0] < seq) {
+            return;
+        }
+        ranges.remove(range.getKey());
+        long end = range.getValue()[0];
+        long discovered = range.getValue()[1];
+        if (range.getKey() < seq) {
+            ranges.put(range.getKey(), new long[] { seq - 1, discovered });
+        }
+        if (seq < end) {
+            ranges.put(seq + 1, new long[] { end, discovered });
+        }
+    }
+
+    void expire(long discoveredBefore) {
+        ranges.values().removeIf(range -> range[1] < discoveredBefore);
+    }
+
+    // { from, to } pairs, inclusive.
+    List<long[]> ranges() {
+        List<long[]> result = new ArrayList<>(ranges.size());
+        for (Map.Entry<Long, long[]> range : ranges.entrySet()) {
+            result.add(new long[] { range.getKey(), range.getValue()[0] });
+        }
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.util.Map;
+
+final class ChangeSet {
+
+    static final String BOOK = "BOOK";
+    static final String READER = "READER";
+    static final String LOAN = "LOAN";
+
+    // A key mapped to null means the row no longer exists.
+    final long watermark;
+    final Map<String, Book> books;
+    final Map<String, Reader> readers;
+    final Map<String, Loan> loans;
+
+    ChangeSet(long watermark, Map<String, Book> books, Map<String, Reader> readers, Map<String, Loan> loans) {
+        this.watermark = watermark;
+        this.books = books;
+        this.readers = readers;
+        this.loans = loans;
+    }
+
+    boolean isEmpty() {
+        return books.isEmpty() && readers.isEmpty() && loans.isEmpty();
+    }
+
+    int size() {
+        return books.size() + readers.size() + loans.size();
+    }
+}
@@ -0,0 +1,407 @@
+package storage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+    private volatile SlowQueryLog slowQueryLog;
+
+    public ConnectionPool(ConnectionFactory factory, int maxSize, int minIdle, long maxWaitMillis,
+            long idleTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize doit être >= 1");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Le pool de connexions est fermé");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Aucune connexion disponible après " + maxWaitMillis + " ms ("
+                        + active.get() + " actives sur " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attente d'une connexion interrompue", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(factory.create());
+                total.incrementAndGet();
+            }
+            active.incrementAndGet();
+            borrowCount.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS || isValid(pooled)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        boolean reusable = !closed && resetState(pooled);
+        if (reusable) {
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } else {
+            discard(pooled);
+        }
+        permits.release();
+    }
+
+    private boolean resetState(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.err.println("Erreur lors de la fermeture d'une connexion du pool : " + e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minIdle) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.removeLastOccurrence(pooled)) {
+                discard(pooled);
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+        }
+    }
+
+    // Statements prepared from now on are timed and the slow ones logged; null stops it.
+    void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool[actives=%d, inactives=%d, total=%d/%d, en attente=%d, attente moy.=%.2f ms, "
+                + "attente max=%.2f ms, timeouts=%d]",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), maxSize,
+                getWaitingThreads(), getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount());
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        final Map<String, CachedStatement> statements;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    eldest.getValue().evict();
+                    return true;
+                }
+            };
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new LeaseHandler(this));
+        }
+
+        PreparedStatement prepareCached(Connection logical, String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached == null || cached.physical.isClosed()) {
+                cached = new CachedStatement(physical.prepareStatement(sql));
+                statements.put(sql, cached);
+            } else if (cached.inUse) {
+                return physical.prepareStatement(sql);
+            }
+            cached.inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new StatementHandler(cached, logical));
+        }
+    }
+
+    private static final class CachedStatement {
+        final PreparedStatement physical;
+        // The driver's own default (0, or a fetch size from the URL): what the next user expects to find.
+        private final int defaultFetchSize;
+        boolean inUse;
+        boolean evicted;
+
+        CachedStatement(PreparedStatement physical) throws SQLException {
+            this.physical = physical;
+            this.defaultFetchSize = physical.getFetchSize();
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        void checkIn() {
+            inUse = false;
+            try {
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.setMaxRows(0);
+                physical.setFetchSize(defaultFetchSize);
+                physical.setQueryTimeout(0);
+            } catch (SQLException e) {
+                evicted = true;
+            }
+            if (evicted) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Erreur lors de la fermeture d'une requête en cache : " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection logical;
+        private boolean closed;
+
+        StatementHandler(CachedStatement cached, Connection logical) {
+            this.cached = cached;
+            this.logical = logical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.physical.isClosed();
+                case "getConnection":
+                    return logical;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Requête préparée déjà fermée");
+            }
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connexion déjà rendue au pool");
+            }
+            Object result;
+            if (statementCacheSize > 0 && "prepareStatement".equals(method.getName()) && args.length == 1) {
+                result = pooled.prepareCached((Connection) proxy, (String) args[0]);
+            } else {
+                try {
+                    result = method.invoke(pooled.physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            SlowQueryLog log = slowQueryLog;
+            if (log != null && result instanceof PreparedStatement && "prepareStatement".equals(method.getName())) {
+                return log.wrap((PreparedStatement) result, (String) args[0]);
+            }
+            return result;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package storage;
 
+import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -9,26 +11,72 @@ import java.sql.Statement;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
 import models.Book;
 import models.Loan;
 import models.Reader;
 
-public class DatabaseManager {
+public class DatabaseManager implements LibraryStore {
 
     private static DatabaseManager instance;
 
     private static final String DRIVER = "com.mysql.jdbc.Driver";
-    private static final String URL = "jdbc:mysql://localhost:3306/digital_library?useUnicode=true&characterEncoding=UTF-8";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
-
-    private Connection connection;
+    private static final String URL = System.getProperty("digitallibrary.db.url",
+            "jdbc:mysql://localhost:3306/digital_library?useUnicode=true&characterEncoding=UTF-8"
+                    + "&rewriteBatchedStatements=true");
+    private static final String USER = System.getProperty("digitallibrary.db.user", "root");
+    private static final String PASSWORD = System.getProperty("digitallibrary.db.password", "");
+
+    private static final int POOL_MAX_SIZE = Integer.getInteger("digitallibrary.db.pool.maxSize", 8);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("digitallibrary.db.pool.minIdle", 1);
+    private static final long POOL_MAX_WAIT_MILLIS = Long.getLong("digitallibrary.db.pool.maxWaitMillis", 5000L);
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("digitallibrary.db.pool.idleTimeoutMillis",
+            300000L);
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger(
+            "digitallibrary.db.pool.statementCacheSize", 64);
+
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("digitallibrary.import.batchSize", 1000);
+    private static final int IN_LIST_CHUNK = 500;
+    private static final int SYNC_MAX_CHANGES = Integer.getInteger("digitallibrary.sync.maxChanges", 5000);
+    private static final int SYNC_OVERLAP_SECONDS = Integer.getInteger("digitallibrary.sync.overlapSeconds", 30);
+    private static final int SYNC_RETENTION_HOURS = Integer.getInteger("digitallibrary.sync.retentionHours", 24);
+    private static final int CHANGE_LOG_PRUNE_BATCH = 10000;
+    private static final int EXPORT_FETCH_SIZE = Integer.getInteger("digitallibrary.export.fetchSize",
+            URL.startsWith("jdbc:mysql:") && !URL.contains("useCursorFetch=true") ? Integer.MIN_VALUE : 1000);
+
+    private static final String BOOK_COLUMNS = "isbn, title, author, year, publisher, status";
+    private static final String READER_COLUMNS = "subscriber_number, first_name, last_name, email, max_loan_days";
+    private static final String LOAN_COLUMNS = "id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned";
+
+    private static final String SELECT_BOOKS = "SELECT " + BOOK_COLUMNS + " FROM books";
+    private static final String SELECT_READERS = "SELECT " + READER_COLUMNS + " FROM readers";
+    private static final String SELECT_LOANS = "SELECT " + LOAN_COLUMNS + " FROM loans";
+    private static final String SELECT_ARCHIVED_LOANS = "SELECT " + LOAN_COLUMNS + " FROM loans_archive";
+    private static final String INSERT_CHANGE = "INSERT INTO change_log (entity, entity_key) VALUES (?, ?)";
+
+    private final ConnectionPool pool;
+    private final ChangeLogGaps changeLogGaps = new ChangeLogGaps();
+    private boolean changeLogEnabled;
+    private boolean archiveEnabled;
 
     private DatabaseManager() {
+        this(createDefaultPool());
+    }
+
+    DatabaseManager(ConnectionPool pool) {
+        this.pool = pool;
         connect();
     }
 
@@ -39,79 +87,242 @@ public class DatabaseManager {
         return instance;
     }
 
+    private static ConnectionPool createDefaultPool() {
+        if (URL.startsWith("jdbc:mysql:")) {
+            try {
+                Class.forName(DRIVER);
+            } catch (ClassNotFoundException e) {
+                System.err.println("Driver MySQL non trouvé : " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        ConnectionPool pool = new ConnectionPool(() -> DriverManager.getConnection(URL, USER, PASSWORD),
+                POOL_MAX_SIZE, POOL_MIN_IDLE, POOL_MAX_WAIT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS,
+                POOL_STATEMENT_CACHE_SIZE);
+        pool.setSlowQueryLog(SlowQueryLog.create(pool::getConnection));
+        return pool;
+    }
+
     private void connect() {
-        try {
-            Class.forName(DRIVER);
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
+        try (Connection conn = getConnection()) {
             System.out.println("Connexion à la base de données réussie !");
-        } catch (ClassNotFoundException e) {
-            System.err.println("Driver MySQL non trouvé : " + e.getMessage());
-            e.printStackTrace();
+            changeLogEnabled = hasTable(conn, "change_log");
+            if (!changeLogEnabled) {
+                System.err.println("Table change_log absente : chaque rafraîchissement rechargera toutes les données"
+                        + " (voir sql/create_database.sql).");
+            } else {
+                int pruned = pruneChangeLog();
+                if (pruned > 0) {
+                    System.out.println("Journal des modifications : " + pruned
+                            + " ligne(s) ancienne(s) supprimée(s).");
+                }
+            }
+            archiveEnabled = hasTable(conn, "loans_archive") && hasTable(conn, "archive_state");
         } catch (SQLException e) {
             System.err.println("Erreur de connexion à la base de données : " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    public Connection getConnection() {
-        try {
-            if (connection == null || connection.isClosed()) {
-                connect();
-            }
-        } catch (SQLException e) {
-            connect();
+    private static boolean hasTable(Connection conn, String table) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(conn.getCatalog(), null, table, new String[] { "TABLE" })) {
+            return rs.next();
         }
-        return connection;
+    }
+
+    public Connection getConnection() throws SQLException {
+        return pool.getConnection();
+    }
+
+    @Override
+    public String getLocation() {
+        return URL;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
     }
 
     public void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("Connexion fermée.");
+        pool.close();
+        System.out.println("Connexion fermée.");
+    }
+
+    @Override
+    public void close() {
+        closeConnection();
+    }
+
+    static final RowMapper<Book> BOOK_MAPPER = rs -> new Book(
+            rs.getString(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getInt(4),
+            rs.getString(5),
+            Book.Status.valueOf(rs.getString(6)));
+
+    static final RowMapper<Reader> READER_MAPPER = rs -> new Reader(
+            rs.getString(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getString(4),
+            rs.getInt(5));
+
+    static final RowMapper<Loan> LOAN_MAPPER = rs -> new Loan(
+            rs.getString(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getDate(4).toLocalDate(),
+            rs.getDate(5).toLocalDate(),
+            rs.getBoolean(6));
+
+    static final RowMapper<Object[]> LABEL_COUNT_MAPPER = rs -> new Object[] { rs.getString(1), rs.getLong(2) };
+
+    private <T> List<T> queryList(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        List<T> result = new ArrayList<>();
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapper.map(rs));
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("Erreur lors de la fermeture de la connexion : " + e.getMessage());
         }
+        return result;
     }
 
-    public List<Book> getAllBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT isbn, title, author, year, publisher, status FROM books";
-
-        try (Statement stmt = getConnection().createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Book book = new Book(
-                        rs.getString("isbn"),
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        rs.getInt("year"),
-                        rs.getString("publisher"),
-                        Book.Status.valueOf(rs.getString("status")));
-                books.add(book);
+    private <T> void stream(String sql, RowMapper<T> mapper, RowConsumer<T> consumer)
+            throws SQLException, IOException {
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(EXPORT_FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(mapper.map(rs));
+                }
             }
+        }
+    }
+
+    private <T> Optional<T> queryOne(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? Optional.of(mapper.map(rs)) : Optional.empty();
+            }
+        }
+    }
+
+    private int update(String sql, Object... params) throws SQLException {
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            bind(pstmt, params);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+
+    private int updateLogged(String entity, String key, String cascadedLoanColumn, String sql, Object... params)
+            throws SQLException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (cascadedLoanColumn != null) {
+                    logCascadedLoans(conn, cascadedLoanColumn, key);
+                }
+                int rows;
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    bind(pstmt, params);
+                    rows = pstmt.executeUpdate();
+                }
+                if (rows > 0) {
+                    logChange(conn, entity, key);
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void logChange(Connection conn, String entity, String key) throws SQLException {
+        logChanges(conn, entity, Collections.singletonList(key));
+    }
+
+    private void logChanges(Connection conn, String entity, Collection<String> keys) throws SQLException {
+        if (!changeLogEnabled || keys.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_CHANGE)) {
+            for (String key : keys) {
+                bind(pstmt, entity, key);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // ON DELETE CASCADE removes loans without going through the DAO, so they are logged up front.
+    private void logCascadedLoans(Connection conn, String loanColumn, String key) throws SQLException {
+        if (!changeLogEnabled) {
+            return;
+        }
+        String sql = "INSERT INTO change_log (entity, entity_key) SELECT '" + ChangeSet.LOAN + "', id FROM loans WHERE "
+                + loanColumn + " = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            bind(pstmt, key);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void bind(PreparedStatement pstmt, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            Object p = params[i];
+            if (p instanceof LocalDate) {
+                pstmt.setDate(i + 1, Date.valueOf((LocalDate) p));
+            } else if (p instanceof Enum) {
+                pstmt.setString(i + 1, ((Enum<?>) p).name());
+            } else {
+                pstmt.setObject(i + 1, p);
+            }
+        }
+    }
+
+    public List<Book> getAllBooks() {
+        try {
+            return queryList(SELECT_BOOKS, BOOK_MAPPER);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des livres : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des livres : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return books;
     }
 
-    public boolean addBook(Book book) {
-        String sql = "INSERT INTO books (isbn, title, author, year, publisher, status) VALUES (?, ?, ?, ?, ?, ?)";
+    public void streamBooks(RowConsumer<Book> consumer) throws SQLException, IOException {
+        stream(SELECT_BOOKS, BOOK_MAPPER, consumer);
+    }
 
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, book.getIsbn());
-            pstmt.setString(2, book.getTitle());
-            pstmt.setString(3, book.getAuthor());
-            pstmt.setInt(4, book.getYear());
-            pstmt.setString(5, book.getPublisher());
-            pstmt.setString(6, book.getStatus().name());
+    public boolean addBook(Book book) {
+        String sql = "INSERT INTO books (" + BOOK_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
 
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.BOOK, book.getIsbn(), null, sql, book.getIsbn(), book.getTitle(),
+                    book.getAuthor(), book.getYear(), book.getPublisher(), book.getStatus()) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de l'ajout du livre : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de l'ajout du livre : " + e.getMessage());
             return false;
         }
     }
@@ -119,104 +330,65 @@ public class DatabaseManager {
     public boolean updateBook(Book book) {
         String sql = "UPDATE books SET title = ?, author = ?, year = ?, publisher = ?, status = ? WHERE isbn = ?";
 
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, book.getTitle());
-            pstmt.setString(2, book.getAuthor());
-            pstmt.setInt(3, book.getYear());
-            pstmt.setString(4, book.getPublisher());
-            pstmt.setString(5, book.getStatus().name());
-            pstmt.setString(6, book.getIsbn());
-
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.BOOK, book.getIsbn(), null, sql, book.getTitle(), book.getAuthor(),
+                    book.getYear(), book.getPublisher(), book.getStatus(), book.getIsbn()) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la mise à jour du livre : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la mise à jour du livre : " + e.getMessage());
             return false;
         }
     }
 
     public boolean deleteBook(String isbn) {
-        String sql = "DELETE FROM books WHERE isbn = ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, isbn);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.BOOK, isbn, "book_isbn", "DELETE FROM books WHERE isbn = ?", isbn) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la suppression du livre : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la suppression du livre : " + e.getMessage());
             return false;
         }
     }
 
     public Optional<Book> findBookByIsbn(String isbn) {
-        String sql = "SELECT isbn, title, author, year, publisher, status FROM books WHERE isbn = ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, isbn);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                Book book = new Book(
-                        rs.getString("isbn"),
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        rs.getInt("year"),
-                        rs.getString("publisher"),
-                        Book.Status.valueOf(rs.getString("status")));
-                return Optional.of(book);
-            }
+        try {
+            return queryOne(SELECT_BOOKS + " WHERE isbn = ?", BOOK_MAPPER, isbn);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la recherche du livre : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la recherche du livre : " + e.getMessage());
+            return Optional.empty();
         }
-        return Optional.empty();
     }
 
     public boolean updateBookStatus(String isbn, Book.Status status) {
-        String sql = "UPDATE books SET status = ? WHERE isbn = ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, status.name());
-            pstmt.setString(2, isbn);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.BOOK, isbn, null, "UPDATE books SET status = ? WHERE isbn = ?", status,
+                    isbn) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la mise à jour du statut : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la mise à jour du statut : " + e.getMessage());
             return false;
         }
     }
 
     public List<Reader> getAllReaders() {
-        List<Reader> readers = new ArrayList<>();
-        String sql = "SELECT subscriber_number, first_name, last_name, email, max_loan_days FROM readers";
-
-        try (Statement stmt = getConnection().createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Reader reader = new Reader(
-                        rs.getString("subscriber_number"),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getString("email"),
-                        rs.getInt("max_loan_days"));
-                readers.add(reader);
-            }
+        try {
+            return queryList(SELECT_READERS, READER_MAPPER);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des lecteurs : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des lecteurs : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return readers;
     }
 
-    public boolean addReader(Reader reader) {
-        String sql = "INSERT INTO readers (subscriber_number, first_name, last_name, email, max_loan_days) VALUES (?, ?, ?, ?, ?)";
+    public void streamReaders(RowConsumer<Reader> consumer) throws SQLException, IOException {
+        stream(SELECT_READERS, READER_MAPPER, consumer);
+    }
 
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, reader.getSubscriberNumber());
-            pstmt.setString(2, reader.getFirstName());
-            pstmt.setString(3, reader.getLastName());
-            pstmt.setString(4, reader.getEmail());
-            pstmt.setInt(5, reader.getMaxLoanDays());
+    public boolean addReader(Reader reader) {
+        String sql = "INSERT INTO readers (" + READER_COLUMNS + ") VALUES (?, ?, ?, ?, ?)";
 
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.READER, reader.getSubscriberNumber(), null, sql,
+                    reader.getSubscriberNumber(), reader.getFirstName(), reader.getLastName(), reader.getEmail(),
+                    reader.getMaxLoanDays()) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de l'ajout du lecteur : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de l'ajout du lecteur : " + e.getMessage());
             return false;
         }
     }
@@ -224,280 +396,668 @@ public class DatabaseManager {
     public boolean updateReader(Reader reader) {
         String sql = "UPDATE readers SET first_name = ?, last_name = ?, email = ?, max_loan_days = ? WHERE subscriber_number = ?";
 
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, reader.getFirstName());
-            pstmt.setString(2, reader.getLastName());
-            pstmt.setString(3, reader.getEmail());
-            pstmt.setInt(4, reader.getMaxLoanDays());
-            pstmt.setString(5, reader.getSubscriberNumber());
-
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.READER, reader.getSubscriberNumber(), null, sql, reader.getFirstName(),
+                    reader.getLastName(), reader.getEmail(), reader.getMaxLoanDays(),
+                    reader.getSubscriberNumber()) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la mise à jour du lecteur : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la mise à jour du lecteur : " + e.getMessage());
             return false;
         }
     }
 
     public boolean deleteReader(String subscriberNumber) {
-        String sql = "DELETE FROM readers WHERE subscriber_number = ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, subscriberNumber);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return updateLogged(ChangeSet.READER, subscriberNumber, "reader_subscriber_number",
+                    "DELETE FROM readers WHERE subscriber_number = ?", subscriberNumber) > 0;
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la suppression du lecteur : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la suppression du lecteur : " + e.getMessage());
             return false;
         }
     }
 
     public Optional<Reader> findReaderBySubscriberNumber(String subscriberNumber) {
-        String sql = "SELECT subscriber_number, first_name, last_name, email, max_loan_days FROM readers WHERE subscriber_number = ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, subscriberNumber);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                Reader reader = new Reader(
-                        rs.getString("subscriber_number"),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getString("email"),
-                        rs.getInt("max_loan_days"));
-                return Optional.of(reader);
-            }
+        try {
+            return queryOne(SELECT_READERS + " WHERE subscriber_number = ?", READER_MAPPER, subscriberNumber);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la recherche du lecteur : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la recherche du lecteur : " + e.getMessage());
+            return Optional.empty();
         }
-        return Optional.empty();
     }
 
     public List<Loan> getAllLoans() {
-        List<Loan> loans = new ArrayList<>();
-        String sql = "SELECT id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned FROM loans";
-
-        try (Statement stmt = getConnection().createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Loan loan = new Loan(
-                        rs.getString("id"),
-                        rs.getString("book_isbn"),
-                        rs.getString("reader_subscriber_number"),
-                        rs.getDate("borrow_date").toLocalDate(),
-                        rs.getDate("due_date").toLocalDate(),
-                        rs.getBoolean("returned"));
-                loans.add(loan);
+        try {
+            return queryList(SELECT_LOANS, LOAN_MAPPER);
+        } catch (SQLException e) {
+            StoreMetrics.reportError("Erreur lors de la récupération des emprunts : " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    public List<Loan> getActiveOrRecentLoans(LocalDate borrowedSince) {
+        try {
+            return queryList(SELECT_LOANS + " WHERE returned = FALSE OR borrow_date >= ?", LOAN_MAPPER, borrowedSince);
+        } catch (SQLException e) {
+            StoreMetrics.reportError("Erreur lors de la récupération des emprunts : " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    public List<Loan> getReturnedLoansBefore(LocalDate borrowDate, String afterId, int limit) throws SQLException {
+        String keyset = " WHERE (borrow_date < ? OR (borrow_date = ? AND id < ?))";
+        String order = " ORDER BY borrow_date DESC, id DESC LIMIT ?";
+        String live = SELECT_LOANS + keyset + " AND returned = TRUE" + order;
+        if (!archiveCovers(borrowDate)) {
+            return queryList(live, LOAN_MAPPER, borrowDate, borrowDate, afterId, limit);
+        }
+        String sql = "(" + live + ") UNION ALL (" + SELECT_ARCHIVED_LOANS + keyset + order + ")" + order;
+        return queryList(sql, LOAN_MAPPER, borrowDate, borrowDate, afterId, limit,
+                borrowDate, borrowDate, afterId, limit, limit);
+    }
+
+    public List<Loan> getLoanHistoryForReader(String subscriberNumber, int offset, int limit) throws SQLException {
+        String where = " WHERE reader_subscriber_number = ?";
+        String order = " ORDER BY borrow_date DESC, id DESC";
+        if (archivedFrom() == null) {
+            return queryList(SELECT_LOANS + where + order + " LIMIT ? OFFSET ?", LOAN_MAPPER,
+                    subscriberNumber, limit, offset);
+        }
+        String sql = "(" + SELECT_LOANS + where + order + " LIMIT ?) UNION ALL ("
+                + SELECT_ARCHIVED_LOANS + where + order + " LIMIT ?)" + order + " LIMIT ? OFFSET ?";
+        return queryList(sql, LOAN_MAPPER, subscriberNumber, offset + limit, subscriberNumber, offset + limit,
+                limit, offset);
+    }
+
+    public Map<String, Long> getLoanCountsByBook() throws SQLException {
+        return loanCountsBy("book_isbn");
+    }
+
+    public Map<String, Long> getLoanCountsByReaderNumber() throws SQLException {
+        return loanCountsBy("reader_subscriber_number");
+    }
+
+    private Map<String, Long> loanCountsBy(String column) throws SQLException {
+        return countsBy(loanCountsSql(column));
+    }
+
+    // (k, c) rows: loans per value of column, archived loans included.
+    private String loanCountsSql(String column) throws SQLException {
+        if (archivedFrom() == null) {
+            return "SELECT " + column + " AS k, COUNT(*) AS c FROM loans GROUP BY " + column;
+        }
+        return "SELECT k, SUM(c) AS c FROM ("
+                + "SELECT " + column + " AS k, COUNT(*) AS c FROM loans GROUP BY " + column
+                + " UNION ALL SELECT " + column + ", COUNT(*) FROM loans_archive GROUP BY " + column
+                + ") t GROUP BY k";
+    }
+
+    // Archived loans all have borrow_date >= archivedFrom(), so older ranges never need the archive.
+    private boolean archiveCovers(LocalDate before) throws SQLException {
+        LocalDate from = archivedFrom();
+        return from != null && !from.isAfter(before);
+    }
+
+    // Earliest borrow_date in loans_archive, null while the archive is empty. Read again on every use since
+    // LoanArchiver usually runs in another process; idx_loans_archive_borrow_date makes it a single index probe.
+    private LocalDate archivedFrom() throws SQLException {
+        if (!archiveEnabled) {
+            return null;
+        }
+        return queryOne("SELECT MIN(borrow_date) FROM loans_archive", rs -> toLocalDate(rs.getDate(1))).orElse(null);
+    }
+
+    boolean isArchiveEnabled() {
+        return archiveEnabled;
+    }
+
+    ArchiveState getArchiveState() throws SQLException {
+        return queryOne("SELECT horizon, cursor_date, cursor_id, archived, finished FROM archive_state WHERE id = 1",
+                rs -> new ArchiveState(toLocalDate(rs.getDate(1)), toLocalDate(rs.getDate(2)), rs.getString(3),
+                        rs.getLong(4), rs.getBoolean(5))).orElse(null);
+    }
+
+    ArchiveState startArchive(LocalDate horizon) throws SQLException {
+        update("REPLACE INTO archive_state (id, horizon, cursor_date, cursor_id, archived, finished)"
+                + " VALUES (1, ?, NULL, NULL, 0, FALSE)", horizon);
+        return new ArchiveState(horizon, null, null, 0, false);
+    }
+
+    void finishArchive(ArchiveState state) throws SQLException {
+        update("UPDATE archive_state SET finished = TRUE WHERE id = 1");
+        state.finished = true;
+    }
+
+    long countArchivableLoans(ArchiveState state) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM loans" + archivableWhere(state, params);
+        return queryOne(sql, rs -> rs.getLong(1), params.toArray()).orElse(0L);
+    }
+
+    private static String archivableWhere(ArchiveState state, List<Object> params) {
+        params.add(state.horizon);
+        if (state.cursorDate == null) {
+            return " WHERE returned = TRUE AND borrow_date < ?";
+        }
+        params.add(state.cursorDate);
+        params.add(state.cursorDate);
+        params.add(state.cursorId);
+        return " WHERE returned = TRUE AND borrow_date < ? AND (borrow_date > ? OR (borrow_date = ? AND id > ?))";
+    }
+
+    // Moves one batch of returned loans to loans_archive and records the cursor in the same transaction,
+    // so an interrupted run resumes exactly after the last committed batch. Loans are not written to the
+    // change log: they still exist, only their table changed.
+    int archiveLoanBatch(ArchiveState state, int batchSize) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String selectSql = "SELECT id, borrow_date FROM loans" + archivableWhere(state, params)
+                + " ORDER BY borrow_date, id LIMIT ? FOR UPDATE";
+        params.add(batchSize);
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<String> ids = new ArrayList<>();
+                LocalDate lastDate = null;
+                try (PreparedStatement select = conn.prepareStatement(selectSql)) {
+                    bind(select, params.toArray());
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getString(1));
+                            lastDate = rs.getDate(2).toLocalDate();
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.commit();
+                    return 0;
+                }
+
+                String in = " WHERE id IN (" + placeholders(ids.size()) + ")";
+                String lastId = ids.get(ids.size() - 1);
+                try (PreparedStatement copy = conn.prepareStatement("INSERT INTO loans_archive (" + LOAN_COLUMNS
+                                + ", return_date) SELECT " + LOAN_COLUMNS + ", return_date FROM loans" + in);
+                        PreparedStatement delete = conn.prepareStatement("DELETE FROM loans" + in);
+                        PreparedStatement progress = conn.prepareStatement("UPDATE archive_state"
+                                + " SET cursor_date = ?, cursor_id = ?, archived = archived + ? WHERE id = 1")) {
+                    bind(copy, ids.toArray());
+                    copy.executeUpdate();
+                    bind(delete, ids.toArray());
+                    delete.executeUpdate();
+                    bind(progress, lastDate, lastId, ids.size());
+                    progress.executeUpdate();
+                }
+                conn.commit();
+
+                state.cursorDate = lastDate;
+                state.cursorId = lastId;
+                state.archived += ids.size();
+                return ids.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
+        }
+    }
+
+    private Map<String, Long> countsBy(String sql) throws SQLException {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : queryList(sql, LABEL_COUNT_MAPPER)) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        return counts;
+    }
+
+    public boolean isChangeLogEnabled() {
+        return changeLogEnabled;
+    }
+
+    public long getChangeWatermark() {
+        if (!changeLogEnabled) {
+            return -1;
+        }
+        try {
+            return queryOne("SELECT COALESCE(MAX(seq), 0) FROM change_log", rs -> rs.getLong(1)).orElse(0L);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des emprunts : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la lecture du journal des modifications : " + e.getMessage());
+            return -1;
         }
-        return loans;
     }
 
-    public Loan createLoan(String bookIsbn, String readerSubscriberNumber) {
-        Optional<Book> bookOpt = findBookByIsbn(bookIsbn);
-        if (!bookOpt.isPresent() || bookOpt.get().getStatus() == Book.Status.BORROWED) {
+    // Only rows past the watermark count toward SYNC_MAX_CHANGES. Seqs skipped below it are tracked in
+    // changeLogGaps and read again while they are younger than SYNC_OVERLAP_SECONDS, for transactions that
+    // commit a lower seq after a higher one was seen. Returns null when a full reload is needed instead.
+    public ChangeSet fetchChangesSince(long since) throws SQLException {
+        if (!changeLogEnabled || since < 0) {
             return null;
         }
+        Set<String> bookKeys = new LinkedHashSet<>();
+        Set<String> readerKeys = new LinkedHashSet<>();
+        Set<String> loanKeys = new LinkedHashSet<>();
+        Map<String, Set<String>> keys = new HashMap<>();
+        keys.put(ChangeSet.BOOK, bookKeys);
+        keys.put(ChangeSet.READER, readerKeys);
+        keys.put(ChangeSet.LOAN, loanKeys);
+        long now = System.currentTimeMillis();
+        long watermark;
+
+        try (Connection conn = getConnection()) {
+            synchronized (changeLogGaps) {
+                if (changeLogGaps.watermark() != since && !resetChangeLogGaps(conn, since, now)) {
+                    return null;
+                }
+                changeLogGaps.expire(now - SYNC_OVERLAP_SECONDS * 1000L);
+                List<long[]> ranges = changeLogGaps.ranges();
+                for (int from = 0; from < ranges.size(); from += IN_LIST_CHUNK) {
+                    List<long[]> chunk = ranges.subList(from, Math.min(from + IN_LIST_CHUNK, ranges.size()));
+                    StringBuilder sql = new StringBuilder("SELECT seq, entity, entity_key FROM change_log WHERE");
+                    List<Object> params = new ArrayList<>();
+                    for (long[] range : chunk) {
+                        sql.append(params.isEmpty() ? " " : " OR ").append("seq BETWEEN ? AND ?");
+                        params.add(range[0]);
+                        params.add(range[1]);
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                        bind(pstmt, params.toArray());
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                changeLogGaps.seen(rs.getLong(1));
+                                addChangedKey(keys, rs.getString(2), rs.getString(3));
+                            }
+                        }
+                    }
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT seq, entity, entity_key FROM change_log WHERE seq > ? ORDER BY seq")) {
+                    bind(pstmt, since);
+                    pstmt.setMaxRows(SYNC_MAX_CHANGES + 1);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        int count = 0;
+                        while (rs.next()) {
+                            if (++count > SYNC_MAX_CHANGES) {
+                                changeLogGaps.reset(-1);
+                                return null;
+                            }
+                            changeLogGaps.advance(rs.getLong(1), now);
+                            addChangedKey(keys, rs.getString(2), rs.getString(3));
+                        }
+                    }
+                }
+                watermark = changeLogGaps.watermark();
+            }
+            return new ChangeSet(watermark,
+                    fetchByKeys(conn, SELECT_BOOKS, "isbn", bookKeys, BOOK_MAPPER, Book::getIsbn),
+                    fetchByKeys(conn, SELECT_READERS, "subscriber_number", readerKeys, READER_MAPPER,
+                            Reader::getSubscriberNumber),
+                    fetchByKeys(conn, SELECT_LOANS, "id", loanKeys, LOAN_MAPPER, Loan::getId));
+        }
+    }
+
+    // Rebuilds the holes below a watermark this process did not reach itself (first poll, snapshot from disk)
+    // from the seqs logged within the overlap window. False when rows past the watermark were already pruned.
+    private boolean resetChangeLogGaps(Connection conn, long since, long now) throws SQLException {
+        changeLogGaps.reset(-1);
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT MIN(seq) FROM change_log");
+                ResultSet rs = pstmt.executeQuery()) {
+            long oldest = rs.next() ? rs.getLong(1) : 0;
+            if (oldest > since + 1) {
+                return false;
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT seq FROM change_log"
+                + " WHERE seq <= ? AND changed_at >= NOW() - INTERVAL ? SECOND ORDER BY seq")) {
+            bind(pstmt, since, SYNC_OVERLAP_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    changeLogGaps.advance(rs.getLong(1), now);
+                }
+            }
+        }
+        if (changeLogGaps.watermark() < 0) {
+            changeLogGaps.reset(since);
+        } else if (changeLogGaps.watermark() < since) {
+            changeLogGaps.add(changeLogGaps.watermark() + 1, since, now);
+            changeLogGaps.advance(since, now);
+        }
+        return true;
+    }
+
+    private static void addChangedKey(Map<String, Set<String>> keys, String entity, String key) {
+        Set<String> entityKeys = keys.get(entity);
+        if (entityKeys != null) {
+            entityKeys.add(key);
+        }
+    }
+
+    // Deletes rows older than SYNC_RETENTION_HOURS, never the newest one: a client whose watermark is older than
+    // the oldest row left then reloads everything instead of missing the pruned changes.
+    public int pruneChangeLog() throws SQLException {
+        if (!changeLogEnabled) {
+            return 0;
+        }
+        long newest = getChangeWatermark();
+        long retentionSeconds = Math.max(SYNC_RETENTION_HOURS * 3600L, 2L * SYNC_OVERLAP_SECONDS);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = update("DELETE FROM change_log WHERE changed_at < NOW() - INTERVAL ? SECOND AND seq < ?"
+                    + " ORDER BY seq LIMIT " + CHANGE_LOG_PRUNE_BATCH, retentionSeconds, newest);
+            total += deleted;
+        } while (deleted == CHANGE_LOG_PRUNE_BATCH);
+        return total;
+    }
+
+    private <T> Map<String, T> fetchByKeys(Connection conn, String select, String keyColumn, Collection<String> keys,
+            RowMapper<T> mapper, Function<T, String> keyOf) throws SQLException {
+        Map<String, T> rows = new LinkedHashMap<>();
+        for (String key : keys) {
+            rows.put(key, null);
+        }
+        List<String> ids = new ArrayList<>(keys);
+        for (int from = 0; from < ids.size(); from += IN_LIST_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(from + IN_LIST_CHUNK, ids.size()));
+            String sql = select + " WHERE " + keyColumn + " IN (" + placeholders(chunk.size()) + ")";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                bind(pstmt, chunk.toArray());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        T row = mapper.map(rs);
+                        rows.put(keyOf.apply(row), row);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
 
+    public Loan createLoan(String bookIsbn, String readerSubscriberNumber) throws SQLException {
         Optional<Reader> readerOpt = findReaderBySubscriberNumber(readerSubscriberNumber);
         if (!readerOpt.isPresent()) {
             return null;
         }
+        return createLoan(bookIsbn, readerSubscriberNumber, readerOpt.get().getMaxLoanDays());
+    }
 
-        Reader reader = readerOpt.get();
+    public Loan createLoan(String bookIsbn, String readerSubscriberNumber, int maxLoanDays) throws SQLException {
         String loanId = UUID.randomUUID().toString();
         LocalDate borrowDate = LocalDate.now();
-        LocalDate dueDate = borrowDate.plusDays(reader.getMaxLoanDays());
-
-        String sql = "INSERT INTO loans (id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned) VALUES (?, ?, ?, ?, ?, ?)";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, loanId);
-            pstmt.setString(2, bookIsbn);
-            pstmt.setString(3, readerSubscriberNumber);
-            pstmt.setDate(4, Date.valueOf(borrowDate));
-            pstmt.setDate(5, Date.valueOf(dueDate));
-            pstmt.setBoolean(6, false);
-
-            if (pstmt.executeUpdate() > 0) {
-                updateBookStatus(bookIsbn, Book.Status.BORROWED);
+        LocalDate dueDate = borrowDate.plusDays(maxLoanDays);
+
+        String checkoutSql = "UPDATE books SET status = 'BORROWED' WHERE isbn = ? AND status = 'AVAILABLE'";
+        String insertSql = "INSERT INTO loans (" + LOAN_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement checkout = conn.prepareStatement(checkoutSql);
+                    PreparedStatement insert = conn.prepareStatement(insertSql)) {
+                bind(checkout, bookIsbn);
+                if (checkout.executeUpdate() == 0) {
+                    conn.rollback();
+                    return null;
+                }
+                bind(insert, loanId, bookIsbn, readerSubscriberNumber, borrowDate, dueDate, false);
+                insert.executeUpdate();
+                logChange(conn, ChangeSet.LOAN, loanId);
+                logChange(conn, ChangeSet.BOOK, bookIsbn);
+                conn.commit();
                 return new Loan(loanId, bookIsbn, readerSubscriberNumber, borrowDate, dueDate, false);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
-        } catch (SQLException e) {
-            System.err.println("Erreur lors de la création de l'emprunt : " + e.getMessage());
         }
-        return null;
     }
 
     public boolean returnBook(String loanId) {
-        String selectSql = "SELECT book_isbn FROM loans WHERE id = ? AND returned = FALSE";
-        String bookIsbn = null;
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(selectSql)) {
-            pstmt.setString(1, loanId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                bookIsbn = rs.getString("book_isbn");
-            } else {
-                return false;
+        return returnBooks(Collections.singletonList(loanId)).get(loanId) == ReturnOutcome.RETURNED;
+    }
+
+    public Map<String, ReturnOutcome> returnBooks(Collection<String> loanIds) {
+        Map<String, ReturnOutcome> outcomes = new LinkedHashMap<>();
+        for (String id : loanIds) {
+            outcomes.put(id, ReturnOutcome.NOT_FOUND);
+        }
+        if (outcomes.isEmpty()) {
+            return outcomes;
+        }
+
+        String updateLoanSql = "UPDATE loans SET returned = TRUE, return_date = ? WHERE id = ?";
+        String updateBookSql = "UPDATE books SET status = 'AVAILABLE' WHERE isbn = ?";
+        LocalDate today = LocalDate.now();
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<String, String> openLoans = lockLoansForReturn(conn, outcomes);
+                if (!openLoans.isEmpty()) {
+                    try (PreparedStatement updateLoan = conn.prepareStatement(updateLoanSql);
+                            PreparedStatement updateBook = conn.prepareStatement(updateBookSql)) {
+                        for (Map.Entry<String, String> e : openLoans.entrySet()) {
+                            bind(updateLoan, today, e.getKey());
+                            updateLoan.addBatch();
+                            bind(updateBook, e.getValue());
+                            updateBook.addBatch();
+                        }
+                        updateLoan.executeBatch();
+                        updateBook.executeBatch();
+                    }
+                    logChanges(conn, ChangeSet.LOAN, openLoans.keySet());
+                    logChanges(conn, ChangeSet.BOOK, openLoans.values());
+                }
+                conn.commit();
+                for (String id : openLoans.keySet()) {
+                    outcomes.put(id, ReturnOutcome.RETURNED);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la recherche de l'emprunt : " + e.getMessage());
-            return false;
+            StoreMetrics.reportError("Erreur lors du retour des livres : " + e.getMessage());
+            for (Map.Entry<String, ReturnOutcome> entry : outcomes.entrySet()) {
+                if (entry.getValue() != ReturnOutcome.ALREADY_RETURNED) {
+                    entry.setValue(ReturnOutcome.FAILED);
+                }
+            }
         }
+        return outcomes;
+    }
 
-        String updateSql = "UPDATE loans SET returned = TRUE, return_date = ? WHERE id = ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(updateSql)) {
-            pstmt.setDate(1, Date.valueOf(LocalDate.now()));
-            pstmt.setString(2, loanId);
-
-            if (pstmt.executeUpdate() > 0) {
-                updateBookStatus(bookIsbn, Book.Status.AVAILABLE);
-                return true;
+    private Map<String, String> lockLoansForReturn(Connection conn, Map<String, ReturnOutcome> outcomes)
+            throws SQLException {
+        Map<String, String> openLoans = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>(outcomes.keySet());
+        for (int from = 0; from < ids.size(); from += IN_LIST_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(from + IN_LIST_CHUNK, ids.size()));
+            String sql = "SELECT id, book_isbn, returned FROM loans WHERE id IN ("
+                    + placeholders(chunk.size()) + ") FOR UPDATE";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                bind(pstmt, chunk.toArray());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String id = rs.getString(1);
+                        if (rs.getBoolean(3)) {
+                            outcomes.put(id, ReturnOutcome.ALREADY_RETURNED);
+                        } else {
+                            openLoans.put(id, rs.getString(2));
+                        }
+                    }
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("Erreur lors du retour du livre : " + e.getMessage());
         }
-        return false;
+        return openLoans;
     }
 
     public List<Loan> getOverdueLoansForReader(String subscriberNumber) {
-        List<Loan> overdueLoans = new ArrayList<>();
-        String sql = "SELECT id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned " +
-                "FROM loans WHERE reader_subscriber_number = ? AND returned = FALSE AND due_date < CURDATE()";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, subscriberNumber);
-            ResultSet rs = pstmt.executeQuery();
-
-            while (rs.next()) {
-                Loan loan = new Loan(
-                        rs.getString("id"),
-                        rs.getString("book_isbn"),
-                        rs.getString("reader_subscriber_number"),
-                        rs.getDate("borrow_date").toLocalDate(),
-                        rs.getDate("due_date").toLocalDate(),
-                        rs.getBoolean("returned"));
-                overdueLoans.add(loan);
-            }
+        String sql = SELECT_LOANS + " WHERE reader_subscriber_number = ? AND returned = FALSE AND due_date < CURDATE()";
+
+        try {
+            return queryList(sql, LOAN_MAPPER, subscriberNumber);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des emprunts en retard : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des emprunts en retard : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return overdueLoans;
     }
 
     public List<Loan> getAllOverdueLoans() {
-        List<Loan> overdueLoans = new ArrayList<>();
-        String sql = "SELECT id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned " +
-                "FROM loans WHERE returned = FALSE AND due_date < CURDATE()";
-
-        try (Statement stmt = getConnection().createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Loan loan = new Loan(
-                        rs.getString("id"),
-                        rs.getString("book_isbn"),
-                        rs.getString("reader_subscriber_number"),
-                        rs.getDate("borrow_date").toLocalDate(),
-                        rs.getDate("due_date").toLocalDate(),
-                        rs.getBoolean("returned"));
-                overdueLoans.add(loan);
-            }
+        try {
+            return queryList(SELECT_LOANS + " WHERE returned = FALSE AND due_date < CURDATE()", LOAN_MAPPER);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des emprunts en retard : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des emprunts en retard : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return overdueLoans;
     }
 
     public List<Loan> getActiveLoansForReader(String subscriberNumber) {
-        List<Loan> activeLoans = new ArrayList<>();
-        String sql = "SELECT id, book_isbn, reader_subscriber_number, borrow_date, due_date, returned " +
-                "FROM loans WHERE reader_subscriber_number = ? AND returned = FALSE";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, subscriberNumber);
-            ResultSet rs = pstmt.executeQuery();
-
-            while (rs.next()) {
-                Loan loan = new Loan(
-                        rs.getString("id"),
-                        rs.getString("book_isbn"),
-                        rs.getString("reader_subscriber_number"),
-                        rs.getDate("borrow_date").toLocalDate(),
-                        rs.getDate("due_date").toLocalDate(),
-                        rs.getBoolean("returned"));
-                activeLoans.add(loan);
-            }
+        String sql = SELECT_LOANS + " WHERE reader_subscriber_number = ? AND returned = FALSE";
+
+        try {
+            return queryList(sql, LOAN_MAPPER, subscriberNumber);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des emprunts actifs : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des emprunts actifs : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return activeLoans;
     }
 
     public List<Object[]> getTopBorrowedBooks(int limit) {
-        List<Object[]> stats = new ArrayList<>();
-        String sql = "SELECT b.title, COUNT(l.id) as loan_count " +
-                "FROM books b LEFT JOIN loans l ON b.isbn = l.book_isbn " +
-                "GROUP BY b.isbn, b.title " +
-                "ORDER BY loan_count DESC LIMIT ?";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setInt(1, limit);
-            ResultSet rs = pstmt.executeQuery();
-
-            while (rs.next()) {
-                stats.add(new Object[] { rs.getString("title"), rs.getLong("loan_count") });
-            }
+        try {
+            String sql = "SELECT b.title, COALESCE(c.c, 0) as loan_count " +
+                    "FROM books b LEFT JOIN (" + loanCountsSql("book_isbn") + ") c ON b.isbn = c.k " +
+                    "ORDER BY loan_count DESC LIMIT ?";
+            return queryList(sql, LABEL_COUNT_MAPPER, limit);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des statistiques : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des statistiques : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return stats;
     }
 
     public List<Object[]> getLoansCountByReader() {
-        List<Object[]> stats = new ArrayList<>();
-        String sql = "SELECT CONCAT(r.first_name, ' ', r.last_name) as reader_name, COUNT(l.id) as loan_count " +
-                "FROM readers r LEFT JOIN loans l ON r.subscriber_number = l.reader_subscriber_number " +
-                "GROUP BY r.subscriber_number, r.first_name, r.last_name " +
-                "ORDER BY loan_count DESC";
-
-        try (Statement stmt = getConnection().createStatement();
-                ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                stats.add(new Object[] { rs.getString("reader_name"), rs.getLong("loan_count") });
-            }
+        try {
+            String sql = "SELECT CONCAT(r.first_name, ' ', r.last_name) as reader_name, " +
+                    "COALESCE(c.c, 0) as loan_count " +
+                    "FROM readers r LEFT JOIN (" + loanCountsSql("reader_subscriber_number") + ") c " +
+                    "ON r.subscriber_number = c.k " +
+                    "ORDER BY loan_count DESC";
+            return queryList(sql, LABEL_COUNT_MAPPER);
         } catch (SQLException e) {
-            System.err.println("Erreur lors de la récupération des statistiques : " + e.getMessage());
+            StoreMetrics.reportError("Erreur lors de la récupération des statistiques : " + e.getMessage());
+            return new ArrayList<>();
         }
-        return stats;
     }
 
     public int importBooks(List<Book> books) {
-        int count = 0;
-        for (Book book : books) {
-            if (!findBookByIsbn(book.getIsbn()).isPresent()) {
-                if (addBook(book)) {
-                    count++;
+        return importBooks(books.iterator(), DEFAULT_BATCH_SIZE).getImportedCount();
+    }
+
+    public int importReaders(List<Reader> readers) {
+        return importReaders(readers.iterator(), DEFAULT_BATCH_SIZE).getImportedCount();
+    }
+
+    public ImportReport<Book> importBooks(Iterator<Book> books, int batchSize) {
+        String sql = "INSERT INTO books (" + BOOK_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+        return batchInsert(sql, ChangeSet.BOOK, books, batchSize, Book::getIsbn,
+                b -> new Object[] { b.getIsbn(), b.getTitle(), b.getAuthor(), b.getYear(), b.getPublisher(),
+                        b.getStatus() });
+    }
+
+    public ImportReport<Reader> importReaders(Iterator<Reader> readers, int batchSize) {
+        String sql = "INSERT INTO readers (" + READER_COLUMNS + ") VALUES (?, ?, ?, ?, ?)";
+        return batchInsert(sql, ChangeSet.READER, readers, batchSize, Reader::getSubscriberNumber,
+                r -> new Object[] { r.getSubscriberNumber(), r.getFirstName(), r.getLastName(), r.getEmail(),
+                        r.getMaxLoanDays() });
+    }
+
+    public ImportReport<Loan> importLoans(Iterator<Loan> loans, int batchSize) {
+        String sql = "INSERT INTO loans (" + LOAN_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+        return batchInsert(sql, ChangeSet.LOAN, loans, batchSize, Loan::getId,
+                l -> new Object[] { l.getId(), l.getBookIsbn(), l.getReaderSubscriberNumber(), l.getBorrowDate(),
+                        l.getDueDate(), l.isReturned() });
+    }
+
+    private <T> ImportReport<T> batchInsert(String sql, String entity, Iterator<T> rows, int batchSize,
+            Function<T, String> key, Function<T, Object[]> params) {
+        ImportReport<T> report = new ImportReport<>();
+        List<T> chunk = new ArrayList<>(batchSize);
+        int firstRow = 1;
+
+        while (true) {
+            boolean more;
+            try {
+                more = rows.hasNext();
+                if (more) {
+                    chunk.add(rows.next());
                 }
+            } catch (RuntimeException e) {
+                insertChunk(sql, entity, chunk, firstRow, key, params, report);
+                report.addFailure(firstRow + chunk.size(), null, "Import interrompu : " + e.getMessage());
+                return report;
+            }
+            if (chunk.size() == batchSize || (!more && !chunk.isEmpty())) {
+                insertChunk(sql, entity, chunk, firstRow, key, params, report);
+                firstRow += chunk.size();
+                chunk.clear();
+            }
+            if (!more) {
+                return report;
             }
         }
-        return count;
     }
 
-    public int importReaders(List<Reader> readers) {
-        int count = 0;
-        for (Reader reader : readers) {
-            if (!findReaderBySubscriberNumber(reader.getSubscriberNumber()).isPresent()) {
-                if (addReader(reader)) {
-                    count++;
+    private <T> void insertChunk(String sql, String entity, List<T> chunk, int firstRow, Function<T, String> key,
+            Function<T, Object[]> params, ImportReport<T> report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (T row : chunk) {
+                    bind(pstmt, params.apply(row));
+                    pstmt.addBatch();
+                }
+                try {
+                    pstmt.executeBatch();
+                    List<String> keys = new ArrayList<>(chunk.size());
+                    for (T row : chunk) {
+                        keys.add(key.apply(row));
+                    }
+                    logChanges(conn, entity, keys);
+                    conn.commit();
+                    for (T row : chunk) {
+                        report.addImported(row);
+                    }
+                    return;
+                } catch (BatchUpdateException e) {
+                    conn.rollback();
+                    pstmt.clearBatch();
+                }
+
+                List<T> inserted = new ArrayList<>();
+                List<String> keys = new ArrayList<>();
+                for (int i = 0; i < chunk.size(); i++) {
+                    T row = chunk.get(i);
+                    try {
+                        bind(pstmt, params.apply(row));
+                        pstmt.executeUpdate();
+                        inserted.add(row);
+                        keys.add(key.apply(row));
+                    } catch (SQLException e) {
+                        report.addFailure(firstRow + i, key.apply(row), e.getMessage());
+                    }
                 }
+                logChanges(conn, entity, keys);
+                conn.commit();
+                for (T row : inserted) {
+                    report.addImported(row);
+                }
+            }
+        } catch (SQLException e) {
+            StoreMetrics.reportError("Erreur lors de l'import par lots : " + e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                report.addFailure(firstRow + i, key.apply(chunk.get(i)), e.getMessage());
             }
         }
-        return count;
     }
 }
@@ -0,0 +1,946 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+// Append-only log of records. A record is [length][entries][CRC32] and is written with a single call, so
+// every operation (a loan touches a book and a loan) is applied entirely or not at all after a crash.
+// An entry is [length][type][fields]. Books and readers are only indexed by key -> entry offset and read
+// back from the file; loans are kept in memory. Compaction rewrites the live entries to a new file.
+public class FileLibraryStore implements LibraryStore {
+
+    private static final boolean SYNC_WRITES = Boolean.parseBoolean(
+            System.getProperty("digitallibrary.store.syncWrites", "true"));
+    private static final long COMPACT_INTERVAL_SECONDS = Long.getLong(
+            "digitallibrary.store.compactIntervalSeconds", 600L);
+    private static final long COMPACT_MIN_BYTES = 4L * 1024 * 1024;
+    private static final int COMPACT_ENTRIES_PER_RECORD = 1000;
+
+    private static final byte PUT_BOOK = 1;
+    private static final byte DELETE_BOOK = 2;
+    private static final byte PUT_READER = 3;
+    private static final byte DELETE_READER = 4;
+    private static final byte PUT_LOAN = 5;
+
+    private static final Comparator<Loan> NEWEST_FIRST = Comparator.comparing(Loan::getBorrowDate)
+            .thenComparing(Loan::getId).reversed();
+
+    private interface EntryVisitor {
+        void visit(long offset, ByteBuffer entry) throws IOException;
+    }
+
+    private final Path logFile;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ScheduledExecutorService compactor;
+    private FileChannel channel;
+    private long end;
+    private long deadEntries;
+
+    private final Map<String, Long> bookOffsets = new HashMap<>();
+    private final Map<String, Long> readerOffsets = new HashMap<>();
+    private final Map<String, Long> loanOffsets = new HashMap<>();
+    private final Set<String> borrowedIsbns = new HashSet<>();
+    private final Map<String, Loan> loans = new LinkedHashMap<>();
+
+    private FileLibraryStore(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        logFile = dir.resolve("library.log");
+        lockChannel = FileChannel.open(dir.resolve("library.lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("magasin déjà ouvert par une autre instance");
+        }
+        channel = openLog();
+        long valid = scan(channel, channel.size(), this::applyEntry);
+        if (valid < channel.size()) {
+            System.err.println("Journal " + logFile + " tronqué après " + valid + " octets (écriture interrompue).");
+            channel.truncate(valid);
+        }
+        end = valid;
+
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "file-store-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+        if (COMPACT_INTERVAL_SECONDS > 0) {
+            compactor.scheduleWithFixedDelay(this::compactIfWorthwhile, COMPACT_INTERVAL_SECONDS,
+                    COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    public static FileLibraryStore open(Path dir) throws IOException {
+        long start = System.nanoTime();
+        FileLibraryStore store = new FileLibraryStore(dir);
+        System.out.println("Magasin local ouvert (" + store.bookOffsets.size() + " livres, "
+                + store.readerOffsets.size() + " lecteurs, " + store.loans.size() + " emprunts) en "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+        return store;
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public String getLocation() {
+        return logFile.toAbsolutePath().toUri().toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        compactor.shutdownNow();
+        try {
+            channel.close();
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de la fermeture du magasin local : " + e.getMessage());
+        }
+    }
+
+    // ---- log format ----
+
+    private static long scan(FileChannel ch, long limit, EntryVisitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch.position(0)),
+                64 * 1024));
+        long pos = 0;
+        CRC32 crc = new CRC32();
+        while (pos + 8 <= limit) {
+            byte[] body;
+            int checksum;
+            try {
+                int length = in.readInt();
+                if (length < 0 || pos + 8 + length > limit) {
+                    break;
+                }
+                body = new byte[length];
+                in.readFully(body);
+                checksum = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer entries = ByteBuffer.wrap(body);
+            while (entries.hasRemaining()) {
+                long offset = pos + 4 + entries.position();
+                int entryLength = entries.getInt();
+                ByteBuffer entry = (ByteBuffer) entries.slice().limit(entryLength);
+                visitor.visit(offset, entry);
+                entries.position(entries.position() + entryLength);
+            }
+            pos += 8 + body.length;
+        }
+        return pos;
+    }
+
+    // Writes one record at pos and stores the offset of each entry in offsets; returns the new end.
+    private static long writeRecord(FileChannel ch, long pos, List<byte[]> entries, long[] offsets)
+            throws IOException {
+        int length = 0;
+        for (byte[] e : entries) {
+            length += 4 + e.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(length + 8);
+        buf.putInt(length);
+        for (int i = 0; i < entries.size(); i++) {
+            offsets[i] = pos + buf.position();
+            buf.putInt(entries.get(i).length);
+            buf.put(entries.get(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 4, length);
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+        return pos;
+    }
+
+    private void append(List<byte[]> entries) throws IOException {
+        long[] offsets = new long[entries.size()];
+        long newEnd = writeRecord(channel, end, entries, offsets);
+        if (SYNC_WRITES) {
+            channel.force(false);
+        }
+        end = newEnd;
+        for (int i = 0; i < entries.size(); i++) {
+            applyEntry(offsets[i], ByteBuffer.wrap(entries.get(i)));
+        }
+    }
+
+    private ByteBuffer readEntry(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        ByteBuffer entry = ByteBuffer.allocate(length.getInt(0));
+        readFully(entry, offset + 4);
+        entry.flip();
+        return entry;
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos + buf.position());
+            if (n < 0) {
+                throw new EOFException("entrée tronquée à l'offset " + pos);
+            }
+        }
+    }
+
+    private void applyEntry(long offset, ByteBuffer entry) {
+        byte type = entry.get();
+        switch (type) {
+            case PUT_BOOK: {
+                Book b = decodeBook(entry);
+                replace(bookOffsets, b.getIsbn(), offset);
+                if (b.getStatus() == Book.Status.BORROWED) {
+                    borrowedIsbns.add(b.getIsbn());
+                } else {
+                    borrowedIsbns.remove(b.getIsbn());
+                }
+                break;
+            }
+            case DELETE_BOOK: {
+                String isbn = SnapshotStore.readString(entry);
+                if (bookOffsets.remove(isbn) != null) {
+                    deadEntries++;
+                }
+                deadEntries++;
+                borrowedIsbns.remove(isbn);
+                removeLoans(l -> l.getBookIsbn().equals(isbn));
+                break;
+            }
+            case PUT_READER: {
+                replace(readerOffsets, SnapshotStore.readString(entry), offset);
+                break;
+            }
+            case DELETE_READER: {
+                String subscriberNumber = SnapshotStore.readString(entry);
+                if (readerOffsets.remove(subscriberNumber) != null) {
+                    deadEntries++;
+                }
+                deadEntries++;
+                removeLoans(l -> l.getReaderSubscriberNumber().equals(subscriberNumber));
+                break;
+            }
+            case PUT_LOAN: {
+                Loan l = decodeLoan(entry);
+                replace(loanOffsets, l.getId(), offset);
+                loans.put(l.getId(), l);
+                break;
+            }
+            default:
+                throw new IllegalStateException("type d'entrée inconnu : " + type);
+        }
+    }
+
+    private void replace(Map<String, Long> offsets, String key, long offset) {
+        if (offsets.put(key, offset) != null) {
+            deadEntries++;
+        }
+    }
+
+    // Same effect as the ON DELETE CASCADE of the loans table.
+    private void removeLoans(Predicate<Loan> matches) {
+        Iterator<Loan> it = loans.values().iterator();
+        while (it.hasNext()) {
+            Loan l = it.next();
+            if (matches.test(l)) {
+                it.remove();
+                loanOffsets.remove(l.getId());
+                deadEntries++;
+            }
+        }
+    }
+
+    private static byte[] encode(byte type, String key, EntryWriter fields) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            SnapshotStore.writeString(out, key);
+            if (fields != null) {
+                fields.write(out);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encodeBook(Book b) {
+        return encode(PUT_BOOK, b.getIsbn(), out -> {
+            SnapshotStore.writeString(out, b.getTitle());
+            SnapshotStore.writeString(out, b.getAuthor());
+            out.writeInt(b.getYear());
+            SnapshotStore.writeString(out, b.getPublisher());
+            out.writeByte(b.getStatus() == null ? 0 : b.getStatus().ordinal());
+        });
+    }
+
+    private static Book decodeBook(ByteBuffer e) {
+        return new Book(SnapshotStore.readString(e), SnapshotStore.readString(e), SnapshotStore.readString(e),
+                e.getInt(), SnapshotStore.readString(e), Book.Status.values()[e.get()]);
+    }
+
+    private static byte[] encodeReader(Reader r) {
+        return encode(PUT_READER, r.getSubscriberNumber(), out -> {
+            SnapshotStore.writeString(out, r.getFirstName());
+            SnapshotStore.writeString(out, r.getLastName());
+            SnapshotStore.writeString(out, r.getEmail());
+            out.writeInt(r.getMaxLoanDays());
+        });
+    }
+
+    private static Reader decodeReader(ByteBuffer e) {
+        return new Reader(SnapshotStore.readString(e), SnapshotStore.readString(e), SnapshotStore.readString(e),
+                SnapshotStore.readString(e), e.getInt());
+    }
+
+    private static byte[] encodeLoan(Loan l, LocalDate returnDate) {
+        return encode(PUT_LOAN, l.getId(), out -> {
+            SnapshotStore.writeString(out, l.getBookIsbn());
+            SnapshotStore.writeString(out, l.getReaderSubscriberNumber());
+            out.writeLong(l.getBorrowDate().toEpochDay());
+            out.writeLong(l.getDueDate().toEpochDay());
+            out.writeBoolean(l.isReturned());
+            out.writeLong(returnDate == null ? Long.MIN_VALUE : returnDate.toEpochDay());
+        });
+    }
+
+    private static Loan decodeLoan(ByteBuffer e) {
+        return new Loan(SnapshotStore.readString(e), SnapshotStore.readString(e), SnapshotStore.readString(e),
+                LocalDate.ofEpochDay(e.getLong()), LocalDate.ofEpochDay(e.getLong()), e.get() != 0);
+    }
+
+    private static Loan copy(Loan l) {
+        return new Loan(l.getId(), l.getBookIsbn(), l.getReaderSubscriberNumber(), l.getBorrowDate(),
+                l.getDueDate(), l.isReturned());
+    }
+
+    // ---- compaction ----
+
+    private synchronized void compactIfWorthwhile() {
+        long live = bookOffsets.size() + readerOffsets.size() + loanOffsets.size();
+        if (end < COMPACT_MIN_BYTES || deadEntries <= live) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors du compactage du magasin local : " + e.getMessage());
+        }
+    }
+
+    // Blocks other operations while it runs: it is a sequential copy of the live entries only.
+    public synchronized void compact() throws IOException {
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        Map<String, Long> newBooks = new HashMap<>(bookOffsets.size() * 2);
+        Map<String, Long> newReaders = new HashMap<>(readerOffsets.size() * 2);
+        Map<String, Long> newLoans = new HashMap<>(loanOffsets.size() * 2);
+        long newEnd;
+
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<byte[]> pending = new ArrayList<>(COMPACT_ENTRIES_PER_RECORD);
+            List<Map<String, Long>> targets = new ArrayList<>(COMPACT_ENTRIES_PER_RECORD);
+            List<String> keys = new ArrayList<>(COMPACT_ENTRIES_PER_RECORD);
+            long[] position = { 0 };
+            scan(channel, end, (offset, entry) -> {
+                byte type = entry.get(0);
+                Map<String, Long> live;
+                Map<String, Long> target;
+                if (type == PUT_BOOK) {
+                    live = bookOffsets;
+                    target = newBooks;
+                } else if (type == PUT_READER) {
+                    live = readerOffsets;
+                    target = newReaders;
+                } else if (type == PUT_LOAN) {
+                    live = loanOffsets;
+                    target = newLoans;
+                } else {
+                    return;
+                }
+                ByteBuffer key = entry.duplicate();
+                key.position(1);
+                String k = SnapshotStore.readString(key);
+                Long current = live.get(k);
+                if (current == null || current != offset) {
+                    return;
+                }
+                byte[] bytes = new byte[entry.remaining()];
+                entry.duplicate().get(bytes);
+                pending.add(bytes);
+                targets.add(target);
+                keys.add(k);
+                if (pending.size() == COMPACT_ENTRIES_PER_RECORD) {
+                    position[0] = flush(out, position[0], pending, targets, keys);
+                }
+            });
+            newEnd = flush(out, position[0], pending, targets, keys);
+            out.force(true);
+        }
+
+        channel.close();
+        try {
+            try {
+                Files.move(tmp, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            channel = openLog();
+        }
+
+        bookOffsets.clear();
+        bookOffsets.putAll(newBooks);
+        readerOffsets.clear();
+        readerOffsets.putAll(newReaders);
+        loanOffsets.clear();
+        loanOffsets.putAll(newLoans);
+        end = newEnd;
+        deadEntries = 0;
+    }
+
+    private static long flush(FileChannel out, long pos, List<byte[]> pending, List<Map<String, Long>> targets,
+            List<String> keys) throws IOException {
+        if (pending.isEmpty()) {
+            return pos;
+        }
+        long[] offsets = new long[pending.size()];
+        long newPos = writeRecord(out, pos, pending, offsets);
+        for (int i = 0; i < offsets.length; i++) {
+            targets.get(i).put(keys.get(i), offsets[i]);
+        }
+        pending.clear();
+        targets.clear();
+        keys.clear();
+        return newPos;
+    }
+
+    // ---- books ----
+
+    private <T> List<T> scanLive(byte type, Map<String, Long> offsets, Function<ByteBuffer, T> decoder)
+            throws IOException {
+        List<T> result = new ArrayList<>(offsets.size());
+        scan(channel, end, (offset, entry) -> {
+            if (entry.get(0) == type && isLive(offsets, offset, entry)) {
+                entry.position(1);
+                result.add(decoder.apply(entry));
+            }
+        });
+        return result;
+    }
+
+    private static boolean isLive(Map<String, Long> offsets, long offset, ByteBuffer entry) {
+        ByteBuffer key = entry.duplicate();
+        key.position(1);
+        Long current = offsets.get(SnapshotStore.readString(key));
+        return current != null && current == offset;
+    }
+
+    private Book readBook(String isbn) throws IOException {
+        Long offset = bookOffsets.get(isbn);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer entry = readEntry(offset);
+        entry.get();
+        return decodeBook(entry);
+    }
+
+    private Reader readReader(String subscriberNumber) throws IOException {
+        Long offset = readerOffsets.get(subscriberNumber);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer entry = readEntry(offset);
+        entry.get();
+        return decodeReader(entry);
+    }
+
+    @Override
+    public synchronized List<Book> getAllBooks() {
+        try {
+            return scanLive(PUT_BOOK, bookOffsets, FileLibraryStore::decodeBook);
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de la récupération des livres : " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized void streamBooks(RowConsumer<Book> consumer) throws IOException {
+        for (Book b : scanLive(PUT_BOOK, bookOffsets, FileLibraryStore::decodeBook)) {
+            consumer.accept(b);
+        }
+    }
+
+    @Override
+    public synchronized boolean addBook(Book book) {
+        if (bookOffsets.containsKey(book.getIsbn())) {
+            StoreMetrics.reportError("Erreur lors de l'ajout du livre : ISBN " + book.getIsbn() + " déjà utilisé");
+            return false;
+        }
+        return write("Erreur lors de l'ajout du livre : ", encodeBook(book));
+    }
+
+    @Override
+    public synchronized boolean updateBook(Book book) {
+        return bookOffsets.containsKey(book.getIsbn())
+                && write("Erreur lors de la mise à jour du livre : ", encodeBook(book));
+    }
+
+    @Override
+    public synchronized boolean deleteBook(String isbn) {
+        return bookOffsets.containsKey(isbn)
+                && write("Erreur lors de la suppression du livre : ", encode(DELETE_BOOK, isbn, null));
+    }
+
+    @Override
+    public synchronized Optional<Book> findBookByIsbn(String isbn) {
+        try {
+            return Optional.ofNullable(readBook(isbn));
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de la recherche du livre : " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public synchronized boolean updateBookStatus(String isbn, Book.Status status) {
+        Optional<Book> book = findBookByIsbn(isbn);
+        if (!book.isPresent()) {
+            return false;
+        }
+        book.get().setStatus(status);
+        return write("Erreur lors de la mise à jour du statut : ", encodeBook(book.get()));
+    }
+
+    private boolean write(String errorPrefix, byte[]... entries) {
+        try {
+            append(Arrays.asList(entries));
+            return true;
+        } catch (IOException e) {
+            StoreMetrics.reportError(errorPrefix + e.getMessage());
+            return false;
+        }
+    }
+
+    // ---- readers ----
+
+    @Override
+    public synchronized List<Reader> getAllReaders() {
+        try {
+            return scanLive(PUT_READER, readerOffsets, FileLibraryStore::decodeReader);
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de la récupération des lecteurs : " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized void streamReaders(RowConsumer<Reader> consumer) throws IOException {
+        for (Reader r : scanLive(PUT_READER, readerOffsets, FileLibraryStore::decodeReader)) {
+            consumer.accept(r);
+        }
+    }
+
+    @Override
+    public synchronized boolean addReader(Reader reader) {
+        if (readerOffsets.containsKey(reader.getSubscriberNumber())) {
+            StoreMetrics.reportError("Erreur lors de l'ajout du lecteur : numéro " + reader.getSubscriberNumber()
+                    + " déjà utilisé");
+            return false;
+        }
+        return write("Erreur lors de l'ajout du lecteur : ", encodeReader(reader));
+    }
+
+    @Override
+    public synchronized boolean updateReader(Reader reader) {
+        return readerOffsets.containsKey(reader.getSubscriberNumber())
+                && write("Erreur lors de la mise à jour du lecteur : ", encodeReader(reader));
+    }
+
+    @Override
+    public synchronized boolean deleteReader(String subscriberNumber) {
+        return readerOffsets.containsKey(subscriberNumber)
+                && write("Erreur lors de la suppression du lecteur : ", encode(DELETE_READER, subscriberNumber, null));
+    }
+
+    @Override
+    public synchronized Optional<Reader> findReaderBySubscriberNumber(String subscriberNumber) {
+        try {
+            return Optional.ofNullable(readReader(subscriberNumber));
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de la recherche du lecteur : " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // ---- loans ----
+
+    private List<Loan> loansWhere(Predicate<Loan> matches) {
+        List<Loan> result = new ArrayList<>();
+        for (Loan l : loans.values()) {
+            if (matches.test(l)) {
+                result.add(copy(l));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Loan> getAllLoans() {
+        return loansWhere(l -> true);
+    }
+
+    @Override
+    public synchronized List<Loan> getActiveOrRecentLoans(LocalDate borrowedSince) {
+        return loansWhere(l -> !l.isReturned() || !l.getBorrowDate().isBefore(borrowedSince));
+    }
+
+    @Override
+    public synchronized List<Loan> getReturnedLoansBefore(LocalDate borrowDate, String afterId, int limit) {
+        List<Loan> page = loansWhere(l -> l.isReturned() && (l.getBorrowDate().isBefore(borrowDate)
+                || l.getBorrowDate().equals(borrowDate) && l.getId().compareTo(afterId) < 0));
+        page.sort(NEWEST_FIRST);
+        return new ArrayList<>(page.subList(0, Math.min(limit, page.size())));
+    }
+
+    @Override
+    public synchronized List<Loan> getLoanHistoryForReader(String subscriberNumber, int offset, int limit) {
+        List<Loan> history = loansWhere(l -> l.getReaderSubscriberNumber().equals(subscriberNumber));
+        history.sort(NEWEST_FIRST);
+        int from = Math.min(offset, history.size());
+        return new ArrayList<>(history.subList(from, Math.min(from + limit, history.size())));
+    }
+
+    @Override
+    public synchronized Map<String, Long> getLoanCountsByBook() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Loan l : loans.values()) {
+            counts.merge(l.getBookIsbn(), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getLoanCountsByReaderNumber() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Loan l : loans.values()) {
+            counts.merge(l.getReaderSubscriberNumber(), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    // There are no other writers to follow: refreshes reload from the in-memory indexes and the file.
+    @Override
+    public boolean isChangeLogEnabled() {
+        return false;
+    }
+
+    @Override
+    public long getChangeWatermark() {
+        return -1;
+    }
+
+    @Override
+    public ChangeSet fetchChangesSince(long since) {
+        return null;
+    }
+
+    @Override
+    public synchronized Loan createLoan(String bookIsbn, String readerSubscriberNumber) throws IOException {
+        Optional<Reader> reader = findReaderBySubscriberNumber(readerSubscriberNumber);
+        if (!reader.isPresent()) {
+            return null;
+        }
+        return createLoan(bookIsbn, readerSubscriberNumber, reader.get().getMaxLoanDays());
+    }
+
+    @Override
+    public synchronized Loan createLoan(String bookIsbn, String readerSubscriberNumber, int maxLoanDays)
+            throws IOException {
+        if (borrowedIsbns.contains(bookIsbn) || !readerOffsets.containsKey(readerSubscriberNumber)) {
+            return null;
+        }
+        Book book = readBook(bookIsbn);
+        if (book == null) {
+            return null;
+        }
+        book.setStatus(Book.Status.BORROWED);
+        LocalDate borrowDate = LocalDate.now();
+        Loan loan = new Loan(UUID.randomUUID().toString(), bookIsbn, readerSubscriberNumber, borrowDate,
+                borrowDate.plusDays(maxLoanDays), false);
+        List<byte[]> entries = new ArrayList<>(2);
+        entries.add(encodeBook(book));
+        entries.add(encodeLoan(loan, null));
+        append(entries);
+        return copy(loan);
+    }
+
+    @Override
+    public boolean returnBook(String loanId) {
+        return returnBooks(Collections.singletonList(loanId)).get(loanId) == ReturnOutcome.RETURNED;
+    }
+
+    @Override
+    public synchronized Map<String, ReturnOutcome> returnBooks(Collection<String> loanIds) {
+        Map<String, ReturnOutcome> outcomes = new LinkedHashMap<>();
+        for (String id : loanIds) {
+            outcomes.put(id, ReturnOutcome.NOT_FOUND);
+        }
+        LocalDate today = LocalDate.now();
+        List<byte[]> entries = new ArrayList<>();
+        List<String> returned = new ArrayList<>();
+        try {
+            for (String id : outcomes.keySet()) {
+                Loan loan = loans.get(id);
+                if (loan == null) {
+                    continue;
+                }
+                if (loan.isReturned()) {
+                    outcomes.put(id, ReturnOutcome.ALREADY_RETURNED);
+                    continue;
+                }
+                Loan closed = copy(loan);
+                closed.setReturned(true);
+                entries.add(encodeLoan(closed, today));
+                Book book = readBook(loan.getBookIsbn());
+                if (book != null) {
+                    book.setStatus(Book.Status.AVAILABLE);
+                    entries.add(encodeBook(book));
+                }
+                returned.add(id);
+            }
+            if (!entries.isEmpty()) {
+                append(entries);
+            }
+            for (String id : returned) {
+                outcomes.put(id, ReturnOutcome.RETURNED);
+            }
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors du retour des livres : " + e.getMessage());
+            for (Map.Entry<String, ReturnOutcome> entry : outcomes.entrySet()) {
+                if (entry.getValue() != ReturnOutcome.ALREADY_RETURNED) {
+                    entry.setValue(ReturnOutcome.FAILED);
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    @Override
+    public synchronized List<Loan> getOverdueLoansForReader(String subscriberNumber) {
+        LocalDate today = LocalDate.now();
+        return loansWhere(l -> !l.isReturned() && l.getDueDate().isBefore(today)
+                && l.getReaderSubscriberNumber().equals(subscriberNumber));
+    }
+
+    @Override
+    public synchronized List<Loan> getAllOverdueLoans() {
+        LocalDate today = LocalDate.now();
+        return loansWhere(l -> !l.isReturned() && l.getDueDate().isBefore(today));
+    }
+
+    @Override
+    public synchronized List<Loan> getActiveLoansForReader(String subscriberNumber) {
+        return loansWhere(l -> !l.isReturned() && l.getReaderSubscriberNumber().equals(subscriberNumber));
+    }
+
+    @Override
+    public synchronized List<Object[]> getTopBorrowedBooks(int limit) {
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(getLoanCountsByBook().entrySet());
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<Object[]> result = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Long> e : ranked) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                Book b = readBook(e.getKey());
+                if (b != null) {
+                    result.add(new Object[] { b.getTitle(), e.getValue() });
+                }
+            }
+            Map<String, Long> counted = getLoanCountsByBook();
+            for (String isbn : bookOffsets.keySet()) {
+                if (result.size() == limit) {
+                    break;
+                }
+                if (!counted.containsKey(isbn)) {
+                    result.add(new Object[] { readBook(isbn).getTitle(), 0L });
+                }
+            }
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de la récupération des statistiques : " + e.getMessage());
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Object[]> getLoansCountByReader() {
+        Map<String, Long> counts = getLoanCountsByReaderNumber();
+        List<Object[]> result = new ArrayList<>();
+        for (Reader r : getAllReaders()) {
+            result.add(new Object[] { r.getFirstName() + " " + r.getLastName(),
+                    counts.getOrDefault(r.getSubscriberNumber(), 0L) });
+        }
+        result.sort(Comparator.comparing((Object[] row) -> (Long) row[1]).reversed());
+        return result;
+    }
+
+    // ---- imports ----
+
+    @Override
+    public int importBooks(List<Book> books) {
+        return importBooks(books.iterator(), DatabaseManager.DEFAULT_BATCH_SIZE).getImportedCount();
+    }
+
+    @Override
+    public int importReaders(List<Reader> readers) {
+        return importReaders(readers.iterator(), DatabaseManager.DEFAULT_BATCH_SIZE).getImportedCount();
+    }
+
+    @Override
+    public synchronized ImportReport<Book> importBooks(Iterator<Book> books, int batchSize) {
+        return batchInsert(books, batchSize, Book::getIsbn, bookOffsets, b -> null, FileLibraryStore::encodeBook);
+    }
+
+    @Override
+    public synchronized ImportReport<Reader> importReaders(Iterator<Reader> readers, int batchSize) {
+        return batchInsert(readers, batchSize, Reader::getSubscriberNumber, readerOffsets, r -> null,
+                FileLibraryStore::encodeReader);
+    }
+
+    // The foreign keys of the loans table, checked by hand.
+    @Override
+    public synchronized ImportReport<Loan> importLoans(Iterator<Loan> loans, int batchSize) {
+        return batchInsert(loans, batchSize, Loan::getId, loanOffsets,
+                l -> !bookOffsets.containsKey(l.getBookIsbn()) ? "livre inconnu"
+                        : !readerOffsets.containsKey(l.getReaderSubscriberNumber()) ? "lecteur inconnu" : null,
+                l -> encodeLoan(l, null));
+    }
+
+    // Each batch is one record, like one transaction per batch in the MySQL store.
+    private <T> ImportReport<T> batchInsert(Iterator<T> rows, int batchSize, Function<T, String> key,
+            Map<String, Long> existing, Function<T, String> invalid, Function<T, byte[]> encoder) {
+        ImportReport<T> report = new ImportReport<>();
+        List<T> chunk = new ArrayList<>(batchSize);
+        List<byte[]> entries = new ArrayList<>(batchSize);
+        List<Integer> chunkRows = new ArrayList<>(batchSize);
+        Set<String> chunkKeys = new HashSet<>();
+        int row = 0;
+
+        while (true) {
+            boolean more;
+            try {
+                more = rows.hasNext();
+                if (more) {
+                    T next = rows.next();
+                    row++;
+                    String k = key.apply(next);
+                    String error;
+                    if (k == null || k.isEmpty()) {
+                        report.addFailure(row, k, "clé manquante");
+                    } else if (existing.containsKey(k) || chunkKeys.contains(k)) {
+                        report.addFailure(row, k, "clé déjà utilisée");
+                    } else if ((error = invalid.apply(next)) != null) {
+                        report.addFailure(row, k, error);
+                    } else {
+                        chunkKeys.add(k);
+                        chunk.add(next);
+                        chunkRows.add(row);
+                        entries.add(encoder.apply(next));
+                    }
+                }
+            } catch (RuntimeException e) {
+                flushChunk(chunk, entries, chunkRows, chunkKeys, key, report);
+                report.addFailure(row + 1, null, "Import interrompu : " + e.getMessage());
+                return report;
+            }
+            if (chunk.size() == batchSize || (!more && !chunk.isEmpty())) {
+                flushChunk(chunk, entries, chunkRows, chunkKeys, key, report);
+            }
+            if (!more) {
+                return report;
+            }
+        }
+    }
+
+    private <T> void flushChunk(List<T> chunk, List<byte[]> entries, List<Integer> chunkRows,
+            Set<String> chunkKeys, Function<T, String> key, ImportReport<T> report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            append(entries);
+            for (T row : chunk) {
+                report.addImported(row);
+            }
+        } catch (IOException e) {
+            StoreMetrics.reportError("Erreur lors de l'import par lots : " + e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                report.addFailure(chunkRows.get(i), key.apply(chunk.get(i)), e.getMessage());
+            }
+        }
+        chunk.clear();
+        entries.clear();
+        chunkRows.clear();
+        chunkKeys.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ImportReport<T> {
+
+    public static class RowFailure {
+        private final int row;
+        private final String key;
+        private final String message;
+
+        public RowFailure(int row, String key, String message) {
+            this.row = row;
+            this.key = key;
+            this.message = message;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Ligne " + row + " (" + key + ") : " + message;
+        }
+    }
+
+    private final List<T> imported = new ArrayList<>();
+    private final List<RowFailure> failures = new ArrayList<>();
+
+    void addImported(T row) {
+        imported.add(row);
+    }
+
+    void addFailure(int row, String key, String message) {
+        failures.add(new RowFailure(row, key, message));
+    }
+
+    public List<T> getImported() {
+        return Collections.unmodifiableList(imported);
+    }
+
+    public int getImportedCount() {
+        return imported.size();
+    }
+
+    public List<RowFailure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+}
@@ -0,0 +1,149 @@
+package storage;
+
+import models.Book;
+import models.Reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+class JsonCatalogReader<T> implements Iterator<T>, Closeable {
+
+    private interface FieldBinder<T> {
+        void bind(T target, String field, JsonParser p) throws IOException;
+    }
+
+    private final JsonParser parser;
+    private final Supplier<T> newRecord;
+    private final FieldBinder<T> binder;
+    private boolean started;
+    private T next;
+
+    private JsonCatalogReader(JsonParser parser, Supplier<T> newRecord, FieldBinder<T> binder) {
+        this.parser = parser;
+        this.newRecord = newRecord;
+        this.binder = binder;
+    }
+
+    static JsonCatalogReader<Book> books(JsonFactory factory, File file) throws IOException {
+        return new JsonCatalogReader<>(factory.createParser(file),
+                () -> new Book(null, null, null, 0, null, Book.Status.AVAILABLE),
+                JsonCatalogReader::bindBook);
+    }
+
+    static JsonCatalogReader<Reader> readers(JsonFactory factory, File file) throws IOException {
+        return new JsonCatalogReader<>(factory.createParser(file),
+                () -> new Reader(null, null, null, null, 14),
+                JsonCatalogReader::bindReader);
+    }
+
+    private static void bindBook(Book b, String field, JsonParser p) throws IOException {
+        switch (field) {
+            case "isbn":
+                b.setIsbn(p.getValueAsString());
+                break;
+            case "titre":
+                b.setTitle(p.getValueAsString());
+                break;
+            case "auteur":
+                b.setAuthor(p.getValueAsString());
+                break;
+            case "annee":
+                b.setYear(p.getValueAsInt(0));
+                break;
+            case "editeur":
+                b.setPublisher(p.getValueAsString());
+                break;
+            case "statut":
+                b.setStatus(CatalogFormat.parseStatus(p.getValueAsString()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void bindReader(Reader r, String field, JsonParser p) throws IOException {
+        switch (field) {
+            case "numeroAbonne":
+                r.setSubscriberNumber(p.getValueAsString());
+                break;
+            case "prenom":
+                r.setFirstName(p.getValueAsString());
+                break;
+            case "nom":
+                r.setLastName(p.getValueAsString());
+                break;
+            case "email":
+                r.setEmail(p.getValueAsString());
+                break;
+            case "joursEmpruntMax":
+                r.setMaxLoanDays(p.getValueAsInt(14));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readRecord();
+            } catch (IOException e) {
+                throw new UncheckedIOException("JSON invalide : " + e.getMessage(), e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = next;
+        next = null;
+        return record;
+    }
+
+    private T readRecord() throws IOException {
+        if (!started) {
+            started = true;
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("un tableau JSON est attendu");
+            }
+        }
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("un objet JSON est attendu (ligne " + parser.getCurrentLocation().getLineNr() + ")");
+        }
+
+        T record = newRecord.get();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+            } else if (value != JsonToken.VALUE_NULL) {
+                binder.bind(record, field, parser);
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
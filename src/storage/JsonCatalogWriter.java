@@ -0,0 +1,53 @@
+package storage;
+
+import models.Book;
+import models.Reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+class JsonCatalogWriter implements Closeable {
+
+    private final JsonGenerator gen;
+
+    JsonCatalogWriter(JsonFactory factory, File file) throws IOException {
+        gen = factory.createGenerator(file, JsonEncoding.UTF8);
+        gen.useDefaultPrettyPrinter();
+        gen.writeStartArray();
+    }
+
+    void writeBook(Book b) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("isbn", b.getIsbn());
+        gen.writeStringField("titre", b.getTitle());
+        gen.writeStringField("auteur", b.getAuthor());
+        gen.writeNumberField("annee", b.getYear());
+        gen.writeStringField("editeur", b.getPublisher());
+        gen.writeStringField("statut", CatalogFormat.statusLabel(b.getStatus()));
+        gen.writeEndObject();
+    }
+
+    void writeReader(Reader r) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("numeroAbonne", r.getSubscriberNumber());
+        gen.writeStringField("prenom", r.getFirstName());
+        gen.writeStringField("nom", r.getLastName());
+        gen.writeStringField("email", r.getEmail());
+        gen.writeNumberField("joursEmpruntMax", r.getMaxLoanDays());
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            gen.writeEndArray();
+        } finally {
+            gen.close();
+        }
+    }
+}
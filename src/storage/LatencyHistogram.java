@@ -0,0 +1,110 @@
+package storage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear buckets in the spirit of HdrHistogram: 32 buckets per power of two, so any recorded
+// duration is known within about 3 %, from one nanosecond to over an hour, in a fixed 10 KB array.
+// Recording is a single atomic increment; readers take snapshots and may diff two of them.
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final long MAX_VALUE = (1L << 42) - 1;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, Math.min(nanos, MAX_VALUE))));
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private static int indexOf(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    private static long lowestValueAt(int index) {
+        if (index < 2 * HALF) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        return (long) (index % HALF + HALF) << shift;
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long c : counts) {
+                sum += c;
+            }
+            total = sum;
+        }
+
+        long getCount() {
+            return total;
+        }
+
+        Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < diff.length; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(diff);
+        }
+
+        // Upper bound of the bucket holding the given percentile, in nanoseconds.
+        long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return lowestValueAt(i + 1) - 1;
+                }
+            }
+            return MAX_VALUE;
+        }
+
+        long max() {
+            return percentile(100);
+        }
+
+        // Approximated from bucket midpoints.
+        double mean() {
+            if (total == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    sum += counts[i] * (lowestValueAt(i) + lowestValueAt(i + 1) - 1) / 2.0;
+                }
+            }
+            return sum / total;
+        }
+    }
+}
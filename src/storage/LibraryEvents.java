@@ -0,0 +1,201 @@
+package storage;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.File;
+
+// Java Flight Recorder events for library operations, so that a recording shows borrows, imports or
+// refreshes next to GC pauses and JDBC activity. An event spans the whole operation: from the call on the
+// FX thread, through the store, to the in-memory update. When no recording is running, an operation only
+// pays for one small allocation and the isEnabled check; fields are filled in only if the event is kept.
+public final class LibraryEvents {
+
+    private LibraryEvents() {
+    }
+
+    @Category({ "Digital Library" })
+    @StackTrace(false)
+    abstract static class Operation extends Event {
+        @Label("Action")
+        @Description("Action du contrôleur à l'origine de l'opération")
+        String action;
+
+        final void start() {
+            if (isEnabled()) {
+                action = OperationContext.capture();
+            }
+            begin();
+        }
+    }
+
+    @Name("digitallibrary.Borrow")
+    @Label("Emprunt")
+    public static final class Borrow extends Operation {
+        @Label("ISBN")
+        String isbn;
+
+        @Label("Lecteur")
+        String subscriberNumber;
+
+        @Label("Accepté")
+        boolean borrowed;
+
+        void finish(String isbn, String subscriberNumber, boolean borrowed) {
+            if (shouldCommit()) {
+                this.isbn = isbn;
+                this.subscriberNumber = subscriberNumber;
+                this.borrowed = borrowed;
+                commit();
+            }
+        }
+    }
+
+    @Name("digitallibrary.Return")
+    @Label("Retour")
+    public static final class Return extends Operation {
+        @Label("Emprunts demandés")
+        int requested;
+
+        @Label("Emprunts rendus")
+        int returned;
+
+        void finish(int requested, int returned) {
+            if (shouldCommit()) {
+                this.requested = requested;
+                this.returned = returned;
+                commit();
+            }
+        }
+    }
+
+    @Name("digitallibrary.Import")
+    @Label("Import")
+    public static final class Import extends Operation {
+        @Label("Entité")
+        String entity;
+
+        @Label("Fichier")
+        String file;
+
+        @Label("Lignes importées")
+        int imported;
+
+        @Label("Lignes refusées")
+        int failures;
+
+        void finish(String entity, File file, ImportReport<?> report) {
+            if (shouldCommit()) {
+                this.entity = entity;
+                this.file = file.getPath();
+                this.imported = report.getImportedCount();
+                this.failures = report.getFailureCount();
+                commit();
+            }
+        }
+    }
+
+    @Name("digitallibrary.Export")
+    @Label("Export")
+    public static final class Export extends Operation {
+        @Label("Entité")
+        String entity;
+
+        @Label("Fichier")
+        String file;
+
+        @Label("Lignes exportées")
+        long rows;
+
+        void finish(String entity, File file, long rows) {
+            if (shouldCommit()) {
+                this.entity = entity;
+                this.file = file.getPath();
+                this.rows = rows;
+                commit();
+            }
+        }
+    }
+
+    @Name("digitallibrary.Refresh")
+    @Label("Rafraîchissement")
+    @Description("Synchronisation de la mémoire avec le stockage, complète ou à partir du journal des modifications")
+    public static final class Refresh extends Operation {
+        @Label("Rechargement complet")
+        boolean full;
+
+        @Label("Livres")
+        int books;
+
+        @Label("Lecteurs")
+        int readers;
+
+        @Label("Emprunts")
+        int loans;
+
+        void finish(boolean full, int books, int readers, int loans) {
+            if (shouldCommit()) {
+                this.full = full;
+                this.books = books;
+                this.readers = readers;
+                this.loans = loans;
+                commit();
+            }
+        }
+    }
+
+    @Name("digitallibrary.Statistics")
+    @Label("Calcul des statistiques")
+    public static final class Statistics extends Operation {
+        @Label("Livres du classement")
+        int topBooks;
+
+        @Label("Lecteurs")
+        int readers;
+
+        @Label("Emprunts en retard")
+        int overdueLoans;
+
+        public void finish(int topBooks, int readers, int overdueLoans) {
+            if (shouldCommit()) {
+                this.topBooks = topBooks;
+                this.readers = readers;
+                this.overdueLoans = overdueLoans;
+                commit();
+            }
+        }
+    }
+
+    private static <E extends Operation> E started(E event) {
+        event.start();
+        return event;
+    }
+
+    static Borrow borrow() {
+        return started(new Borrow());
+    }
+
+    static Return returns() {
+        return started(new Return());
+    }
+
+    static Import importing() {
+        return started(new Import());
+    }
+
+    static Export exporting() {
+        return started(new Export());
+    }
+
+    static Refresh refresh() {
+        return started(new Refresh());
+    }
+
+    public static Statistics statistics() {
+        return started(new Statistics());
+    }
+}
@@ -0,0 +1,119 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface LibraryStore {
+
+    static LibraryStore fromSystemProperties() {
+        String kind = System.getProperty("digitallibrary.store", "mysql");
+        if ("file".equalsIgnoreCase(kind)) {
+            String path = System.getProperty("digitallibrary.store.path",
+                    System.getProperty("user.home") + File.separator + ".digitallibrary" + File.separator + "store");
+            try {
+                return StoreMetrics.wrap(FileLibraryStore.open(Paths.get(path)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossible d'ouvrir le magasin local " + path + " : "
+                        + e.getMessage(), e);
+            }
+        }
+        if ("memory".equalsIgnoreCase(kind)) {
+            return StoreMetrics.wrap(new MemoryLibraryStore());
+        }
+        if (!"mysql".equalsIgnoreCase(kind)) {
+            System.err.println("Stockage inconnu : " + kind + ", utilisation de MySQL.");
+        }
+        return StoreMetrics.wrap(DatabaseManager.getInstance());
+    }
+
+    String getLocation();
+
+    void close();
+
+    List<Book> getAllBooks();
+
+    void streamBooks(RowConsumer<Book> consumer) throws SQLException, IOException;
+
+    boolean addBook(Book book);
+
+    boolean updateBook(Book book);
+
+    boolean deleteBook(String isbn);
+
+    Optional<Book> findBookByIsbn(String isbn);
+
+    boolean updateBookStatus(String isbn, Book.Status status);
+
+    List<Reader> getAllReaders();
+
+    void streamReaders(RowConsumer<Reader> consumer) throws SQLException, IOException;
+
+    boolean addReader(Reader reader);
+
+    boolean updateReader(Reader reader);
+
+    boolean deleteReader(String subscriberNumber);
+
+    Optional<Reader> findReaderBySubscriberNumber(String subscriberNumber);
+
+    List<Loan> getAllLoans();
+
+    List<Loan> getActiveOrRecentLoans(LocalDate borrowedSince);
+
+    List<Loan> getReturnedLoansBefore(LocalDate borrowDate, String afterId, int limit) throws SQLException;
+
+    List<Loan> getLoanHistoryForReader(String subscriberNumber, int offset, int limit) throws SQLException;
+
+    Map<String, Long> getLoanCountsByBook() throws SQLException;
+
+    Map<String, Long> getLoanCountsByReaderNumber() throws SQLException;
+
+    boolean isChangeLogEnabled();
+
+    long getChangeWatermark();
+
+    ChangeSet fetchChangesSince(long since) throws SQLException;
+
+    // Null when the loan is refused (unknown book or reader, book already out); a store failure throws.
+    Loan createLoan(String bookIsbn, String readerSubscriberNumber) throws SQLException, IOException;
+
+    Loan createLoan(String bookIsbn, String readerSubscriberNumber, int maxLoanDays) throws SQLException, IOException;
+
+    boolean returnBook(String loanId);
+
+    Map<String, ReturnOutcome> returnBooks(Collection<String> loanIds);
+
+    List<Loan> getOverdueLoansForReader(String subscriberNumber);
+
+    List<Loan> getAllOverdueLoans();
+
+    List<Loan> getActiveLoansForReader(String subscriberNumber);
+
+    List<Object[]> getTopBorrowedBooks(int limit);
+
+    List<Object[]> getLoansCountByReader();
+
+    int importBooks(List<Book> books);
+
+    int importReaders(List<Reader> readers);
+
+    ImportReport<Book> importBooks(Iterator<Book> books, int batchSize);
+
+    ImportReport<Reader> importReaders(Iterator<Reader> readers, int batchSize);
+
+    // Loans are stored as given (dates, returned flag); book statuses are left untouched.
+    ImportReport<Loan> importLoans(Iterator<Loan> loans, int batchSize);
+}
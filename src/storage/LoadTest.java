@@ -0,0 +1,315 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Replays concurrent circulation traffic (borrows, returns, searches) against a Repository, as several
+// desks would, and reports throughput and p50/p99 latencies. Store I/O runs on the repository's I/O pool;
+// in-memory updates and reads go through one thread that plays the part of the FX thread.
+public class LoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("digitallibrary.load.clients", 8);
+    private static final int WARMUP_SECONDS = Integer.getInteger("digitallibrary.load.warmupSeconds", 10);
+    private static final int DURATION_SECONDS = Integer.getInteger("digitallibrary.load.durationSeconds", 60);
+    private static final int BORROW_PERCENT = Integer.getInteger("digitallibrary.load.borrowPercent", 20);
+    private static final int RETURN_PERCENT = Integer.getInteger("digitallibrary.load.returnPercent", 20);
+    private static final long THINK_MILLIS = Long.getLong("digitallibrary.load.thinkMillis", 0L);
+    private static final String GENERATE = System.getProperty("digitallibrary.load.generate");
+
+    private static final int TIMEOUT_SECONDS = 30;
+    private static final int BORROW_ATTEMPTS = 10;
+    private static final int SEARCH_LIMIT = 20;
+
+    public enum Operation {
+        BORROW("emprunt"),
+        RETURN("retour"),
+        SEARCH("recherche");
+
+        final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Repository repository;
+    private final ExecutorService applyThread;
+    private final String[] isbns;
+    private final String[] subscriberNumbers;
+    private final ZipfSampler bookRanks;
+    private final ConcurrentLinkedQueue<String> openLoans = new ConcurrentLinkedQueue<>();
+
+    public LoadTest(Repository repository, ExecutorService applyThread) throws Exception {
+        this.repository = repository;
+        this.applyThread = applyThread;
+        List<String> open = new ArrayList<>();
+        List<String[]> keys = applyThread.submit(() -> {
+            List<Book> books = repository.getBooks();
+            List<Reader> readers = repository.getReaders();
+            String[] bookKeys = new String[books.size()];
+            for (int i = 0; i < bookKeys.length; i++) {
+                bookKeys[i] = books.get(i).getIsbn();
+            }
+            String[] readerKeys = new String[readers.size()];
+            for (int i = 0; i < readerKeys.length; i++) {
+                readerKeys[i] = readers.get(i).getSubscriberNumber();
+            }
+            for (Loan l : repository.getLoans()) {
+                if (!l.isReturned()) {
+                    open.add(l.getId());
+                }
+            }
+            return Arrays.asList(bookKeys, readerKeys);
+        }).get();
+        isbns = keys.get(0);
+        subscriberNumbers = keys.get(1);
+        if (isbns.length == 0 || subscriberNumbers.length == 0) {
+            throw new IllegalStateException("Aucun livre ou aucun lecteur dans le stockage : lancer CatalogGenerator.");
+        }
+        Collections.shuffle(open);
+        openLoans.addAll(open);
+        bookRanks = new ZipfSampler(isbns.length, 1.0);
+    }
+
+    public Map<Operation, Stats> run(int clients, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Map<Operation, Stats>> perClient = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Map<Operation, Stats> stats = newStats();
+            perClient.add(stats);
+            Thread t = new Thread(() -> runClient(measureFrom, stopAt, stats), "load-client-" + (c + 1));
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        Map<Operation, Stats> total = newStats();
+        for (Map<Operation, Stats> stats : perClient) {
+            for (Operation op : Operation.values()) {
+                total.get(op).addAll(stats.get(op));
+            }
+        }
+        return total;
+    }
+
+    private static Map<Operation, Stats> newStats() {
+        Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+        for (Operation op : Operation.values()) {
+            stats.put(op, new Stats());
+        }
+        return stats;
+    }
+
+    private void runClient(long measureFrom, long stopAt, Map<Operation, Stats> stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < stopAt) {
+            int dice = random.nextInt(100);
+            Operation op = dice < BORROW_PERCENT ? Operation.BORROW
+                    : dice < BORROW_PERCENT + RETURN_PERCENT ? Operation.RETURN : Operation.SEARCH;
+            long start = System.nanoTime();
+            Boolean done;
+            String error = null;
+            try {
+                done = execute(op, random).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                done = null;
+                error = String.valueOf(e.getCause());
+            } catch (TimeoutException e) {
+                done = null;
+                error = "aucune réponse après " + TIMEOUT_SECONDS + " s";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (start >= measureFrom) {
+                stats.get(op).record(elapsed, done, error);
+            }
+            if (THINK_MILLIS > 0) {
+                try {
+                    Thread.sleep(THINK_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Completes with true when the operation went through and false when it was refused (book already
+    // out, no open loan left).
+    private CompletableFuture<Boolean> execute(Operation op, ThreadLocalRandom random) {
+        switch (op) {
+            case BORROW: {
+                String subscriberNumber = subscriberNumbers[random.nextInt(subscriberNumbers.length)];
+                String[] candidates = new String[BORROW_ATTEMPTS];
+                for (int i = 0; i < candidates.length; i++) {
+                    candidates[i] = isbns[bookRanks.sample(random) - 1];
+                }
+                // Like a desk: look the book up, then borrow the first copy found on the shelf.
+                return CompletableFuture.supplyAsync(() -> {
+                    for (String isbn : candidates) {
+                        if (repository.canBorrowBook(isbn)) {
+                            return repository.borrowBookAsync(isbn, subscriberNumber);
+                        }
+                    }
+                    return CompletableFuture.<Loan>completedFuture(null);
+                }, applyThread).thenCompose(f -> f).thenApply(loan -> {
+                    if (loan == null) {
+                        return false;
+                    }
+                    openLoans.add(loan.getId());
+                    return true;
+                });
+            }
+            case RETURN: {
+                String loanId = openLoans.poll();
+                if (loanId == null) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return CompletableFuture.supplyAsync(() -> repository.returnBookAsync(loanId), applyThread)
+                        .thenCompose(f -> f);
+            }
+            default: {
+                String query = random.nextInt(4) == 0 ? isbns[bookRanks.sample(random) - 1]
+                        : CatalogGenerator.TITLE_WORDS[random.nextInt(CatalogGenerator.TITLE_WORDS.length)];
+                return CompletableFuture.supplyAsync(
+                        () -> !repository.searchBooks(query, SEARCH_LIMIT).isEmpty(), applyThread);
+            }
+        }
+    }
+
+    public static final class Stats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long refused;
+        private long errors;
+        private String firstError;
+        private boolean sorted;
+
+        void record(long nanos, Boolean done, String error) {
+            if (done == null) {
+                errors++;
+                if (firstError == null) {
+                    firstError = error;
+                }
+                return;
+            }
+            if (!done) {
+                refused++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            sorted = false;
+        }
+
+        void addAll(Stats other) {
+            if (count + other.count > latencies.length) {
+                latencies = Arrays.copyOf(latencies, count + other.count);
+            }
+            System.arraycopy(other.latencies, 0, latencies, count, other.count);
+            count += other.count;
+            refused += other.refused;
+            errors += other.errors;
+            if (firstError == null) {
+                firstError = other.firstError;
+            }
+            sorted = false;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getRefused() {
+            return refused;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public String getFirstError() {
+            return firstError;
+        }
+
+        public double percentileMillis(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(latencies, 0, count);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+            return latencies[Math.max(0, Math.min(rank, count - 1))] / 1e6;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LibraryStore store = LibraryStore.fromSystemProperties();
+        boolean generate = GENERATE != null ? Boolean.parseBoolean(GENERATE)
+                : "memory".equalsIgnoreCase(System.getProperty("digitallibrary.store"));
+        ExecutorService applyThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "load-apply");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            if (generate) {
+                CatalogGenerator.generate(store, CatalogGenerator.BOOKS);
+            }
+            long started = System.nanoTime();
+            Repository repository = new Repository(store, applyThread);
+            System.out.println("Données chargées en " + (System.nanoTime() - started) / 1000000 + " ms depuis "
+                    + store.getLocation());
+
+            System.out.println(CLIENTS + " client(s), " + WARMUP_SECONDS + " s de chauffe, " + DURATION_SECONDS
+                    + " s de mesure (emprunts " + BORROW_PERCENT + " %, retours " + RETURN_PERCENT
+                    + " %, recherches " + (100 - BORROW_PERCENT - RETURN_PERCENT) + " %)");
+            Map<Operation, Stats> stats = new LoadTest(repository, applyThread).run(CLIENTS, WARMUP_SECONDS,
+                    DURATION_SECONDS);
+
+            System.out.printf("%-10s %10s %12s %10s %10s %10s %8s %8s%n", "Opération", "Nombre", "Débit (op/s)",
+                    "p50 (ms)", "p99 (ms)", "max (ms)", "Refus", "Erreurs");
+            long total = 0;
+            for (Operation op : Operation.values()) {
+                Stats s = stats.get(op);
+                total += s.getCount();
+                System.out.printf("%-10s %10d %12.1f %10.2f %10.2f %10.2f %8d %8d%n", op.label, s.getCount(),
+                        (double) s.getCount() / DURATION_SECONDS, s.percentileMillis(50), s.percentileMillis(99),
+                        s.percentileMillis(100), s.getRefused(), s.getErrors());
+                if (s.getFirstError() != null) {
+                    System.err.println("Première erreur (" + op.label + ") : " + s.getFirstError());
+                }
+            }
+            System.out.printf("Débit total : %.1f op/s%n", (double) total / DURATION_SECONDS);
+        } finally {
+            applyThread.shutdownNow();
+            store.close();
+        }
+    }
+}
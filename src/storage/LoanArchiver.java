@@ -0,0 +1,100 @@
+package storage;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+public class LoanArchiver {
+
+    private static final int HORIZON_DAYS = Integer.getInteger("digitallibrary.archive.horizonDays", 365);
+    private static final int BATCH_SIZE = Integer.getInteger("digitallibrary.archive.batchSize", 500);
+    private static final long PAUSE_MILLIS = Long.getLong("digitallibrary.archive.pauseMillis", 100L);
+
+    public interface ProgressListener {
+        void onProgress(long archived, long remaining);
+    }
+
+    private final DatabaseManager dbManager;
+    private final int batchSize;
+    private final long pauseMillis;
+    private volatile boolean cancelled;
+
+    public LoanArchiver(DatabaseManager dbManager) {
+        this(dbManager, BATCH_SIZE, PAUSE_MILLIS);
+    }
+
+    public LoanArchiver(DatabaseManager dbManager, int batchSize, long pauseMillis) {
+        this.dbManager = dbManager;
+        this.batchSize = Math.max(batchSize, 1);
+        this.pauseMillis = Math.max(pauseMillis, 0L);
+    }
+
+    public long archive(ProgressListener listener) throws SQLException {
+        return archive(LocalDate.now().minusDays(HORIZON_DAYS), listener);
+    }
+
+    // An unfinished run is resumed with its own horizon; the given one only applies to a new run.
+    public long archive(LocalDate horizon, ProgressListener listener) throws SQLException {
+        if (!dbManager.isArchiveEnabled()) {
+            throw new SQLException("Tables loans_archive et archive_state absentes (voir sql/create_database.sql).");
+        }
+        cancelled = false;
+
+        ArchiveState state = dbManager.getArchiveState();
+        if (state == null || state.finished) {
+            state = dbManager.startArchive(horizon);
+        }
+        long remaining = dbManager.countArchivableLoans(state);
+        report(listener, state.archived, remaining);
+
+        while (!cancelled) {
+            int moved = dbManager.archiveLoanBatch(state, batchSize);
+            if (moved == 0) {
+                dbManager.finishArchive(state);
+                break;
+            }
+            remaining = Math.max(remaining - moved, 0);
+            report(listener, state.archived, remaining);
+            pause();
+        }
+        return state.archived;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void pause() {
+        if (pauseMillis == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        }
+    }
+
+    private static void report(ProgressListener listener, long archived, long remaining) {
+        if (listener != null) {
+            listener.onProgress(archived, remaining);
+        }
+    }
+
+    public static void main(String[] args) {
+        int horizonDays = args.length > 0 ? Integer.parseInt(args[0]) : HORIZON_DAYS;
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        try {
+            long total = new LoanArchiver(dbManager).archive(LocalDate.now().minusDays(horizonDays),
+                    (archived, remaining) -> System.out.println("Emprunts archivés : " + archived
+                            + " (restants : " + remaining + ")"));
+            System.out.println("Archivage terminé : " + total + " emprunt(s) archivé(s).");
+            System.out.println("Journal des modifications : " + dbManager.pruneChangeLog()
+                    + " ligne(s) ancienne(s) supprimée(s).");
+        } catch (SQLException e) {
+            System.err.println("Erreur lors de l'archivage des emprunts : " + e.getMessage());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+}
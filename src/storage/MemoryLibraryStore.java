@@ -0,0 +1,367 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Volatile store for benchmarks, load tests and demos: nothing survives the process. Every read returns
+// copies so callers can mutate what they get, as they can with rows read from MySQL.
+public class MemoryLibraryStore implements LibraryStore {
+
+    private static final Comparator<Loan> NEWEST_FIRST = Comparator.comparing(Loan::getBorrowDate)
+            .thenComparing(Loan::getId).reversed();
+
+    private final Map<String, Book> books = new LinkedHashMap<>();
+    private final Map<String, Reader> readers = new LinkedHashMap<>();
+    private final Map<String, Loan> loans = new LinkedHashMap<>();
+
+    private static Book copy(Book b) {
+        return new Book(b.getIsbn(), b.getTitle(), b.getAuthor(), b.getYear(), b.getPublisher(), b.getStatus());
+    }
+
+    private static Reader copy(Reader r) {
+        return new Reader(r.getSubscriberNumber(), r.getFirstName(), r.getLastName(), r.getEmail(),
+                r.getMaxLoanDays());
+    }
+
+    private static Loan copy(Loan l) {
+        return new Loan(l.getId(), l.getBookIsbn(), l.getReaderSubscriberNumber(), l.getBorrowDate(),
+                l.getDueDate(), l.isReturned());
+    }
+
+    @Override
+    public String getLocation() {
+        return "memory:" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // ---- books ----
+
+    @Override
+    public synchronized List<Book> getAllBooks() {
+        List<Book> result = new ArrayList<>(books.size());
+        for (Book b : books.values()) {
+            result.add(copy(b));
+        }
+        return result;
+    }
+
+    @Override
+    public void streamBooks(RowConsumer<Book> consumer) throws IOException {
+        for (Book b : getAllBooks()) {
+            consumer.accept(b);
+        }
+    }
+
+    @Override
+    public synchronized boolean addBook(Book book) {
+        return books.putIfAbsent(book.getIsbn(), copy(book)) == null;
+    }
+
+    @Override
+    public synchronized boolean updateBook(Book book) {
+        return books.replace(book.getIsbn(), copy(book)) != null;
+    }
+
+    @Override
+    public synchronized boolean deleteBook(String isbn) {
+        if (books.remove(isbn) == null) {
+            return false;
+        }
+        loans.values().removeIf(l -> l.getBookIsbn().equals(isbn));
+        return true;
+    }
+
+    @Override
+    public synchronized Optional<Book> findBookByIsbn(String isbn) {
+        Book b = books.get(isbn);
+        return b == null ? Optional.empty() : Optional.of(copy(b));
+    }
+
+    @Override
+    public synchronized boolean updateBookStatus(String isbn, Book.Status status) {
+        Book b = books.get(isbn);
+        if (b == null) {
+            return false;
+        }
+        b.setStatus(status);
+        return true;
+    }
+
+    // ---- readers ----
+
+    @Override
+    public synchronized List<Reader> getAllReaders() {
+        List<Reader> result = new ArrayList<>(readers.size());
+        for (Reader r : readers.values()) {
+            result.add(copy(r));
+        }
+        return result;
+    }
+
+    @Override
+    public void streamReaders(RowConsumer<Reader> consumer) throws IOException {
+        for (Reader r : getAllReaders()) {
+            consumer.accept(r);
+        }
+    }
+
+    @Override
+    public synchronized boolean addReader(Reader reader) {
+        return readers.putIfAbsent(reader.getSubscriberNumber(), copy(reader)) == null;
+    }
+
+    @Override
+    public synchronized boolean updateReader(Reader reader) {
+        return readers.replace(reader.getSubscriberNumber(), copy(reader)) != null;
+    }
+
+    @Override
+    public synchronized boolean deleteReader(String subscriberNumber) {
+        if (readers.remove(subscriberNumber) == null) {
+            return false;
+        }
+        loans.values().removeIf(l -> l.getReaderSubscriberNumber().equals(subscriberNumber));
+        return true;
+    }
+
+    @Override
+    public synchronized Optional<Reader> findReaderBySubscriberNumber(String subscriberNumber) {
+        Reader r = readers.get(subscriberNumber);
+        return r == null ? Optional.empty() : Optional.of(copy(r));
+    }
+
+    // ---- loans ----
+
+    private List<Loan> loansWhere(Predicate<Loan> matches) {
+        List<Loan> result = new ArrayList<>();
+        for (Loan l : loans.values()) {
+            if (matches.test(l)) {
+                result.add(copy(l));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Loan> getAllLoans() {
+        return loansWhere(l -> true);
+    }
+
+    @Override
+    public synchronized List<Loan> getActiveOrRecentLoans(LocalDate borrowedSince) {
+        return loansWhere(l -> !l.isReturned() || !l.getBorrowDate().isBefore(borrowedSince));
+    }
+
+    @Override
+    public synchronized List<Loan> getReturnedLoansBefore(LocalDate borrowDate, String afterId, int limit) {
+        List<Loan> page = loansWhere(l -> l.isReturned() && (l.getBorrowDate().isBefore(borrowDate)
+                || l.getBorrowDate().equals(borrowDate) && l.getId().compareTo(afterId) < 0));
+        page.sort(NEWEST_FIRST);
+        return new ArrayList<>(page.subList(0, Math.min(limit, page.size())));
+    }
+
+    @Override
+    public synchronized List<Loan> getLoanHistoryForReader(String subscriberNumber, int offset, int limit) {
+        List<Loan> history = loansWhere(l -> l.getReaderSubscriberNumber().equals(subscriberNumber));
+        history.sort(NEWEST_FIRST);
+        int from = Math.min(offset, history.size());
+        return new ArrayList<>(history.subList(from, Math.min(from + limit, history.size())));
+    }
+
+    @Override
+    public synchronized Map<String, Long> getLoanCountsByBook() {
+        return countLoansBy(Loan::getBookIsbn);
+    }
+
+    @Override
+    public synchronized Map<String, Long> getLoanCountsByReaderNumber() {
+        return countLoansBy(Loan::getReaderSubscriberNumber);
+    }
+
+    private Map<String, Long> countLoansBy(Function<Loan, String> key) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Loan l : loans.values()) {
+            counts.merge(key.apply(l), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean isChangeLogEnabled() {
+        return false;
+    }
+
+    @Override
+    public long getChangeWatermark() {
+        return -1;
+    }
+
+    @Override
+    public ChangeSet fetchChangesSince(long since) {
+        return null;
+    }
+
+    @Override
+    public synchronized Loan createLoan(String bookIsbn, String readerSubscriberNumber) {
+        Reader r = readers.get(readerSubscriberNumber);
+        return r == null ? null : createLoan(bookIsbn, readerSubscriberNumber, r.getMaxLoanDays());
+    }
+
+    @Override
+    public synchronized Loan createLoan(String bookIsbn, String readerSubscriberNumber, int maxLoanDays) {
+        Book b = books.get(bookIsbn);
+        if (b == null || b.getStatus() != Book.Status.AVAILABLE || !readers.containsKey(readerSubscriberNumber)) {
+            return null;
+        }
+        b.setStatus(Book.Status.BORROWED);
+        LocalDate borrowDate = LocalDate.now();
+        Loan loan = new Loan(UUID.randomUUID().toString(), bookIsbn, readerSubscriberNumber, borrowDate,
+                borrowDate.plusDays(maxLoanDays), false);
+        loans.put(loan.getId(), loan);
+        return copy(loan);
+    }
+
+    @Override
+    public boolean returnBook(String loanId) {
+        return returnBooks(Collections.singletonList(loanId)).get(loanId) == ReturnOutcome.RETURNED;
+    }
+
+    @Override
+    public synchronized Map<String, ReturnOutcome> returnBooks(Collection<String> loanIds) {
+        Map<String, ReturnOutcome> outcomes = new LinkedHashMap<>();
+        for (String id : loanIds) {
+            Loan loan = loans.get(id);
+            if (loan == null) {
+                outcomes.put(id, ReturnOutcome.NOT_FOUND);
+            } else if (loan.isReturned()) {
+                outcomes.put(id, ReturnOutcome.ALREADY_RETURNED);
+            } else {
+                loan.setReturned(true);
+                Book b = books.get(loan.getBookIsbn());
+                if (b != null) {
+                    b.setStatus(Book.Status.AVAILABLE);
+                }
+                outcomes.put(id, ReturnOutcome.RETURNED);
+            }
+        }
+        return outcomes;
+    }
+
+    @Override
+    public synchronized List<Loan> getOverdueLoansForReader(String subscriberNumber) {
+        LocalDate today = LocalDate.now();
+        return loansWhere(l -> !l.isReturned() && l.getDueDate().isBefore(today)
+                && l.getReaderSubscriberNumber().equals(subscriberNumber));
+    }
+
+    @Override
+    public synchronized List<Loan> getAllOverdueLoans() {
+        LocalDate today = LocalDate.now();
+        return loansWhere(l -> !l.isReturned() && l.getDueDate().isBefore(today));
+    }
+
+    @Override
+    public synchronized List<Loan> getActiveLoansForReader(String subscriberNumber) {
+        return loansWhere(l -> !l.isReturned() && l.getReaderSubscriberNumber().equals(subscriberNumber));
+    }
+
+    @Override
+    public synchronized List<Object[]> getTopBorrowedBooks(int limit) {
+        Map<String, Long> counts = getLoanCountsByBook();
+        List<Object[]> rows = new ArrayList<>(books.size());
+        for (Book b : books.values()) {
+            rows.add(new Object[] { b.getTitle(), counts.getOrDefault(b.getIsbn(), 0L) });
+        }
+        rows.sort(Comparator.comparing((Object[] row) -> (Long) row[1]).reversed());
+        return new ArrayList<>(rows.subList(0, Math.min(limit, rows.size())));
+    }
+
+    @Override
+    public synchronized List<Object[]> getLoansCountByReader() {
+        Map<String, Long> counts = getLoanCountsByReaderNumber();
+        List<Object[]> rows = new ArrayList<>(readers.size());
+        for (Reader r : readers.values()) {
+            rows.add(new Object[] { r.getFirstName() + " " + r.getLastName(),
+                    counts.getOrDefault(r.getSubscriberNumber(), 0L) });
+        }
+        rows.sort(Comparator.comparing((Object[] row) -> (Long) row[1]).reversed());
+        return rows;
+    }
+
+    // ---- imports ----
+
+    @Override
+    public int importBooks(List<Book> newBooks) {
+        return importBooks(newBooks.iterator(), DatabaseManager.DEFAULT_BATCH_SIZE).getImportedCount();
+    }
+
+    @Override
+    public int importReaders(List<Reader> newReaders) {
+        return importReaders(newReaders.iterator(), DatabaseManager.DEFAULT_BATCH_SIZE).getImportedCount();
+    }
+
+    @Override
+    public synchronized ImportReport<Book> importBooks(Iterator<Book> rows, int batchSize) {
+        return insertAll(rows, Book::getIsbn, books, b -> null, MemoryLibraryStore::copy);
+    }
+
+    @Override
+    public synchronized ImportReport<Reader> importReaders(Iterator<Reader> rows, int batchSize) {
+        return insertAll(rows, Reader::getSubscriberNumber, readers, r -> null, MemoryLibraryStore::copy);
+    }
+
+    @Override
+    public synchronized ImportReport<Loan> importLoans(Iterator<Loan> rows, int batchSize) {
+        return insertAll(rows, Loan::getId, loans,
+                l -> !books.containsKey(l.getBookIsbn()) ? "livre inconnu"
+                        : !readers.containsKey(l.getReaderSubscriberNumber()) ? "lecteur inconnu" : null,
+                MemoryLibraryStore::copy);
+    }
+
+    private static <T> ImportReport<T> insertAll(Iterator<T> rows, Function<T, String> key, Map<String, T> target,
+            Function<T, String> invalid, Function<T, T> copier) {
+        ImportReport<T> report = new ImportReport<>();
+        int row = 0;
+        try {
+            while (rows.hasNext()) {
+                T next = rows.next();
+                row++;
+                String k = key.apply(next);
+                String error;
+                if (k == null || k.isEmpty()) {
+                    report.addFailure(row, k, "clé manquante");
+                } else if (target.containsKey(k)) {
+                    report.addFailure(row, k, "clé déjà utilisée");
+                } else if ((error = invalid.apply(next)) != null) {
+                    report.addFailure(row, k, error);
+                } else {
+                    target.put(k, copier.apply(next));
+                    report.addImported(next);
+                }
+            }
+        } catch (RuntimeException e) {
+            report.addFailure(row + 1, null, "Import interrompu : " + e.getMessage());
+        }
+        return report;
+    }
+}
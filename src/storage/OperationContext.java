@@ -0,0 +1,65 @@
+package storage;
+
+import java.util.concurrent.Callable;
+
+// Which controller action a database call serves, e.g. "LoanController.onRefresh", so that the slow-query
+// log and the flight recorder events can name it. The action is read from the caller's stack and carried over to the I/O threads.
+final class OperationContext {
+
+    private static final String CONTROLLERS = "controllers.";
+    private static final ThreadLocal<String> ACTION = new ThreadLocal<>();
+
+    private OperationContext() {
+    }
+
+    static String current() {
+        String action = capture();
+        return action != null ? action : Thread.currentThread().getName();
+    }
+
+    // Null when the call does not come from a controller.
+    static String capture() {
+        String action = ACTION.get();
+        if (action != null) {
+            return action;
+        }
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            if (frame.getClassName().startsWith(CONTROLLERS)) {
+                String type = frame.getClassName().substring(CONTROLLERS.length());
+                int inner = type.indexOf('$');
+                String method = frame.getMethodName();
+                // lambda$onBorrow$3 -> onBorrow
+                if (method.startsWith("lambda$")) {
+                    int end = method.indexOf('$', 7);
+                    method = end > 7 ? method.substring(7, end) : method;
+                }
+                return (inner >= 0 ? type.substring(0, inner) : type) + "." + method;
+            }
+        }
+        return null;
+    }
+
+    // Runs the task with the action of the thread that submits it.
+    static <T> Callable<T> propagate(Callable<T> task) {
+        if (!SlowQueryLog.ENABLED) {
+            return task;
+        }
+        String action = capture();
+        if (action == null) {
+            return task;
+        }
+        return () -> {
+            String previous = ACTION.get();
+            ACTION.set(action);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) {
+                    ACTION.remove();
+                } else {
+                    ACTION.set(previous);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package storage;
+
+import models.Loan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+class OverdueIndex {
+
+    private final NavigableMap<LocalDate, Map<String, Loan>> activeByDueDate = new TreeMap<>();
+    private LocalDate today;
+    private int overdueCount;
+
+    OverdueIndex(LocalDate today) {
+        this.today = today;
+    }
+
+    synchronized void clear(LocalDate today) {
+        activeByDueDate.clear();
+        this.today = today;
+        overdueCount = 0;
+    }
+
+    synchronized void add(Loan loan) {
+        if (loan.isReturned()) {
+            return;
+        }
+        Map<String, Loan> sameDay = activeByDueDate.computeIfAbsent(loan.getDueDate(), d -> new LinkedHashMap<>());
+        if (sameDay.put(loan.getId(), loan) == null && loan.getDueDate().isBefore(today)) {
+            overdueCount++;
+        }
+    }
+
+    synchronized void remove(Loan loan) {
+        Map<String, Loan> sameDay = activeByDueDate.get(loan.getDueDate());
+        if (sameDay == null || sameDay.remove(loan.getId()) == null) {
+            return;
+        }
+        if (sameDay.isEmpty()) {
+            activeByDueDate.remove(loan.getDueDate());
+        }
+        if (loan.getDueDate().isBefore(today)) {
+            overdueCount--;
+        }
+    }
+
+    synchronized void advanceTo(LocalDate newToday) {
+        if (!newToday.isAfter(today)) {
+            return;
+        }
+        for (Map<String, Loan> sameDay : activeByDueDate.subMap(today, true, newToday, false).values()) {
+            overdueCount += sameDay.size();
+        }
+        today = newToday;
+    }
+
+    synchronized List<Loan> getOverdue(LocalDate now) {
+        return getOverdue(now, Integer.MAX_VALUE);
+    }
+
+    // The first loans in due-date order, the most overdue first.
+    synchronized List<Loan> getOverdue(LocalDate now, int limit) {
+        advanceTo(now);
+        List<Loan> overdue = new ArrayList<>(Math.min(overdueCount, limit));
+        for (Map<String, Loan> sameDay : activeByDueDate.headMap(today, false).values()) {
+            for (Loan l : sameDay.values()) {
+                if (overdue.size() == limit) {
+                    return overdue;
+                }
+                overdue.add(l);
+            }
+        }
+        return overdue;
+    }
+
+    synchronized int getOverdueCount(LocalDate now) {
+        advanceTo(now);
+        return overdueCount;
+    }
+}
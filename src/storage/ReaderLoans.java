@@ -0,0 +1,94 @@
+package storage;
+
+import models.Loan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class ReaderLoans {
+
+    private static final Comparator<LocalDate> DATE_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final Map<String, Loan> active = new LinkedHashMap<>();
+    private final List<Loan> history = new ArrayList<>();
+
+    void add(Loan loan) {
+        if (!loan.isReturned()) {
+            active.put(loan.getId(), loan);
+        }
+        int n = history.size();
+        if (n == 0 || DATE_ORDER.compare(history.get(n - 1).getBorrowDate(), loan.getBorrowDate()) <= 0) {
+            history.add(loan);
+        } else {
+            history.add(upperBound(loan.getBorrowDate()), loan);
+        }
+    }
+
+    void remove(Loan loan) {
+        active.remove(loan.getId());
+        history.remove(loan);
+    }
+
+    void markReturned(Loan loan) {
+        active.remove(loan.getId());
+    }
+
+    boolean isEmpty() {
+        return history.isEmpty();
+    }
+
+    List<Loan> getActive() {
+        return new ArrayList<>(active.values());
+    }
+
+    List<Loan> getOverdue(LocalDate today) {
+        List<Loan> overdue = new ArrayList<>();
+        for (Loan l : active.values()) {
+            if (l.getDueDate().isBefore(today)) {
+                overdue.add(l);
+            }
+        }
+        return overdue;
+    }
+
+    List<Loan> getHistory() {
+        return Collections.unmodifiableList(history);
+    }
+
+    int countBorrowedBetween(LocalDate from, LocalDate toExclusive) {
+        return lowerBound(toExclusive) - lowerBound(from);
+    }
+
+    private int lowerBound(LocalDate date) {
+        int lo = 0;
+        int hi = history.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (DATE_ORDER.compare(history.get(mid).getBorrowDate(), date) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int upperBound(LocalDate date) {
+        int lo = 0;
+        int hi = history.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (DATE_ORDER.compare(history.get(mid).getBorrowDate(), date) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -5,41 +5,131 @@ import models.Reader;
 import models.Loan;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonFactory;
 
 public class Repository {
 
     private static Repository instance;
 
+    private static final int TOP_BOOKS_TRACKED = 25;
+    private static final int IO_THREADS = Integer.getInteger("digitallibrary.repository.ioThreads", 2);
+    private static final int IO_QUEUE_CAPACITY = Integer.getInteger("digitallibrary.repository.ioQueueCapacity", 32);
+    private static final boolean LAZY_LOAN_HISTORY = !"all".equalsIgnoreCase(
+            System.getProperty("digitallibrary.loans.startup", "active"));
+    private static final boolean SNAPSHOT_ENABLED = Boolean.parseBoolean(
+            System.getProperty("digitallibrary.snapshot.enabled", "true"));
+    private static final String SNAPSHOT_PATH = System.getProperty("digitallibrary.snapshot.path",
+            System.getProperty("user.home") + File.separator + ".digitallibrary" + File.separator + "snapshot.bin");
+    private static final long SNAPSHOT_INTERVAL_SECONDS = Long.getLong("digitallibrary.snapshot.intervalSeconds",
+            300L);
+
     private final ObservableList<Book> books = FXCollections.observableArrayList();
     private final ObservableList<Reader> readers = FXCollections.observableArrayList();
     private final ObservableList<Loan> loans = FXCollections.observableArrayList();
 
-    private final DatabaseManager dbManager;
-    private final ObjectMapper objectMapper;
+    private final Map<String, Book> booksByIsbn = new HashMap<>();
+    private final BookSearchIndex searchIndex = new BookSearchIndex();
+    private final Map<String, Reader> readersBySubscriber = new HashMap<>();
+    private final Map<String, Loan> loansById = new HashMap<>();
+    private final Map<String, ReaderLoans> loansByReader = new HashMap<>();
+    private final OverdueIndex overdueIndex = new OverdueIndex(LocalDate.now());
+    private final TopKCounter loanCountsByBook = new TopKCounter(TOP_BOOKS_TRACKED);
+    private final Map<String, Long> loanCountsByReader = new HashMap<>();
+    private long totalLoanCount;
+    private LocalDate historyCursorDate;
+    private String historyCursorId;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            daemonThreads("repository-scheduler"));
+    private final ExecutorService ioExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 0L,
+            TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(IO_QUEUE_CAPACITY), daemonThreads("repository-io"));
+    // Where in-memory changes are applied: the FX thread, or a single thread supplied by a headless tool.
+    private final Executor fxExecutor;
+
+    private final LibraryStore store;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private volatile long syncWatermark = -1;
+    // Set from the moment a poll hands changes to fxExecutor until they are applied.
+    private final AtomicBoolean pollApplyPending = new AtomicBoolean();
+    private final SnapshotStore snapshotStore;
+    private boolean snapshotDirty;
 
     private Repository() {
-        dbManager = DatabaseManager.getInstance();
-        objectMapper = new ObjectMapper();
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        this(LibraryStore.fromSystemProperties(), Platform::runLater, SNAPSHOT_ENABLED);
+    }
 
-        loadFromDatabase();
+    // Extra instances (tools, tests) never read or overwrite the application's local snapshot.
+    public Repository(LibraryStore store) {
+        this(store, Platform::runLater, false);
+    }
+
+    // The executor must run tasks one at a time; every read of this repository belongs on it too.
+    public Repository(LibraryStore store, Executor applyExecutor) {
+        this(store, applyExecutor, false);
+    }
+
+    private Repository(LibraryStore store, Executor applyExecutor, boolean useSnapshot) {
+        this.store = store;
+        fxExecutor = applyExecutor;
+        snapshotStore = useSnapshot ? new SnapshotStore(Paths.get(SNAPSHOT_PATH), store.getLocation()) : null;
+
+        // Follows every change of the list, whichever path made it (snapshot, refresh, patch, import, edit).
+        // Rebuilding is cheaper than replaying a change that touches most of the catalog (full reload, import).
+        books.addListener((ListChangeListener<Book>) change -> {
+            while (searchIndex.isBuilt() && change.next()) {
+                if (change.getRemovedSize() + change.getAddedSize() > books.size() / 2 + 1000) {
+                    searchIndex.rebuild(books);
+                    break;
+                } else {
+                    searchIndex.removeAll(change.getRemoved());
+                    searchIndex.addAll(change.getAddedSubList());
+                }
+            }
+        });
+        Snapshot cached = snapshotStore != null ? snapshotStore.read() : null;
+        if (cached != null) {
+            applySnapshot(cached);
+            reconcileAsync(cached.watermark);
+        } else {
+            loadFromDatabase();
+            snapshotDirty = true;
+        }
+        ListChangeListener<Object> markDirty = change -> snapshotDirty = true;
+        books.addListener(markDirty);
+        readers.addListener(markDirty);
+        loans.addListener(markDirty);
+
+        scheduleDayRollover();
+        scheduleSnapshots();
     }
 
     public static Repository getInstance() {
@@ -49,18 +139,325 @@ public class Repository {
         return instance;
     }
 
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static final class HistoryPage {
+        final LocalDate fromDate;
+        final String fromId;
+        final int pageSize;
+        final List<Loan> loans;
+
+        HistoryPage(LocalDate fromDate, String fromId, int pageSize, List<Loan> loans) {
+            this.fromDate = fromDate;
+            this.fromId = fromId;
+            this.pageSize = pageSize;
+            this.loans = loans;
+        }
+    }
+
     public void loadFromDatabase() {
-        books.clear();
-        readers.clear();
-        loans.clear();
+        LibraryEvents.Refresh event = LibraryEvents.refresh();
+        applyLater(fetchSnapshot(), event).run();
+    }
+
+    private Snapshot fetchSnapshot() {
+        long watermark = store.getChangeWatermark();
+        List<Book> allBooks = store.getAllBooks();
+        List<Reader> allReaders = store.getAllReaders();
+        if (!LAZY_LOAN_HISTORY) {
+            return new Snapshot(watermark, allBooks, allReaders, store.getAllLoans(), null, null, null,
+                    null);
+        }
+
+        // Returned loans from before this month stay in the database; counters come from aggregates.
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1);
+        Map<String, Long> perBook = null;
+        Map<String, Long> perReader = null;
+        try {
+            perBook = store.getLoanCountsByBook();
+            perReader = store.getLoanCountsByReaderNumber();
+        } catch (SQLException e) {
+            System.err.println("Erreur lors de la récupération des statistiques : " + e.getMessage());
+        }
+        return new Snapshot(watermark, allBooks, allReaders, store.getActiveOrRecentLoans(cutoff), cutoff,
+                "", perBook, perReader);
+    }
 
-        books.addAll(dbManager.getAllBooks());
-        readers.addAll(dbManager.getAllReaders());
-        loans.addAll(dbManager.getAllLoans());
+    private void applySnapshot(Snapshot snapshot) {
+        List<Book> allBooks = snapshot.books;
+        List<Reader> allReaders = snapshot.readers;
+        List<Loan> allLoans = snapshot.loans;
+
+        booksByIsbn.clear();
+        for (Book b : allBooks) {
+            booksByIsbn.put(b.getIsbn(), b);
+        }
+        readersBySubscriber.clear();
+        for (Reader r : allReaders) {
+            readersBySubscriber.put(r.getSubscriberNumber(), r);
+        }
+        loansById.clear();
+        loansByReader.clear();
+        overdueIndex.clear(LocalDate.now());
+        for (Loan l : allLoans) {
+            indexLoan(l);
+        }
+        if (snapshot.loansPerBook != null && snapshot.loansPerReader != null) {
+            seedLoanCounters(snapshot.loansPerBook, snapshot.loansPerReader);
+        } else {
+            rebuildLoanCounters(allLoans);
+        }
+        historyCursorDate = snapshot.historyCutoff;
+        historyCursorId = snapshot.historyCutoffId == null ? "" : snapshot.historyCutoffId;
+
+        books.setAll(allBooks);
+        readers.setAll(allReaders);
+        loans.setAll(allLoans);
+        syncWatermark = snapshot.watermark;
     }
 
     public void refresh() {
-        loadFromDatabase();
+        try {
+            fetchRefresh(LibraryEvents.refresh()).run();
+        } catch (SQLException e) {
+            System.err.println("Erreur lors du rafraîchissement : " + e.getMessage());
+        }
+    }
+
+    public CompletableFuture<Void> refreshAsync() {
+        LibraryEvents.Refresh event = LibraryEvents.refresh();
+        return submit(() -> fetchRefresh(event), apply -> {
+            apply.run();
+            return null;
+        });
+    }
+
+    // The cached snapshot is shown first; the database then only sends what changed since it was saved,
+    // unless the change log was reset or is missing, in which case everything is reloaded.
+    private void reconcileAsync(long cachedWatermark) {
+        LibraryEvents.Refresh event = LibraryEvents.refresh();
+        submit(() -> {
+            if (cachedWatermark < 0 || store.getChangeWatermark() < cachedWatermark) {
+                return applyLater(fetchSnapshot(), event);
+            }
+            return fetchRefresh(event);
+        }, apply -> {
+            apply.run();
+            return null;
+        }).whenComplete((v, error) -> {
+            if (error != null) {
+                System.err.println("Erreur lors de la synchronisation avec la base : " + error.getMessage());
+            }
+        });
+    }
+
+    private Runnable fetchRefresh(LibraryEvents.Refresh event) throws SQLException {
+        ChangeSet changes = store.fetchChangesSince(syncWatermark);
+        if (changes != null) {
+            return applyLater(changes, event);
+        }
+        return applyLater(fetchSnapshot(), event);
+    }
+
+    private Runnable applyLater(Snapshot snapshot, LibraryEvents.Refresh event) {
+        return () -> {
+            applySnapshot(snapshot);
+            event.finish(true, snapshot.books.size(), snapshot.readers.size(), snapshot.loans.size());
+        };
+    }
+
+    private Runnable applyLater(ChangeSet changes, LibraryEvents.Refresh event) {
+        return () -> {
+            applyChanges(changes);
+            event.finish(false, changes.books.size(), changes.readers.size(), changes.loans.size());
+        };
+    }
+
+    // Called by ChangeFeedPoller off the FX thread. Returns 1 if other clients wrote since the last
+    // poll, 0 if nothing new was logged and -1 if this database has no change log.
+    int pollChanges() {
+        if (!store.isChangeLogEnabled()) {
+            return -1;
+        }
+        if (pollApplyPending.get()) {
+            // syncWatermark only moves once the previous changes are applied: fetching now would ask for
+            // them again and make the store start its gap tracking over.
+            return 1;
+        }
+        long since = syncWatermark;
+        LibraryEvents.Refresh event = LibraryEvents.refresh();
+        ChangeSet changes;
+        try {
+            changes = store.fetchChangesSince(since);
+        } catch (SQLException e) {
+            System.err.println("Erreur lors de la lecture des modifications : " + e.getMessage());
+            return 0;
+        }
+        if (changes == null) {
+            if (since < 0) {
+                return 0;
+            }
+            applyPolled(applyLater(fetchSnapshot(), event));
+            return 1;
+        }
+        // Applied even when empty if the watermark moved, so the next poll starts from there.
+        if (!changes.isEmpty() || changes.watermark > since) {
+            applyPolled(applyLater(changes, event));
+        }
+        return changes.watermark > since ? 1 : 0;
+    }
+
+    private void applyPolled(Runnable apply) {
+        pollApplyPending.set(true);
+        fxExecutor.execute(() -> {
+            try {
+                apply.run();
+            } finally {
+                pollApplyPending.set(false);
+            }
+        });
+    }
+
+    private void applyChanges(ChangeSet changes) {
+        patch(books, booksByIsbn, changes.books, Repository::sameBook, (previous, fresh) -> {
+        });
+        patch(readers, readersBySubscriber, changes.readers, Repository::sameReader, (previous, fresh) -> {
+        });
+        patch(loans, loansById, changes.loans, Repository::sameLoan, this::reindexLoan);
+        syncWatermark = Math.max(syncWatermark, changes.watermark);
+    }
+
+    private <T> void patch(ObservableList<T> list, Map<String, T> byKey, Map<String, T> changed,
+            BiPredicate<T, T> same, BiConsumer<T, T> onChange) {
+        List<T> added = new ArrayList<>();
+        Set<T> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<T, T> replaced = new IdentityHashMap<>();
+        for (Map.Entry<String, T> e : changed.entrySet()) {
+            T previous = byKey.get(e.getKey());
+            T fresh = e.getValue();
+            if (previous == null ? fresh == null : fresh != null && same.test(previous, fresh)) {
+                continue;
+            }
+            onChange.accept(previous, fresh);
+            if (fresh == null) {
+                byKey.remove(e.getKey());
+                removed.add(previous);
+            } else if (previous == null) {
+                byKey.put(e.getKey(), fresh);
+                added.add(fresh);
+            } else {
+                byKey.put(e.getKey(), fresh);
+                replaced.put(previous, fresh);
+            }
+        }
+        replace(list, replaced);
+        if (!removed.isEmpty()) {
+            list.removeAll(removed);
+        }
+        if (!added.isEmpty()) {
+            list.addAll(added);
+        }
+    }
+
+    // One pass over the list for all the rows, stopping after the last one, instead of an indexOf per row.
+    private static <T> void replace(List<T> list, Map<T, T> replaced) {
+        for (int i = 0, n = list.size(); i < n && !replaced.isEmpty(); i++) {
+            T fresh = replaced.remove(list.get(i));
+            if (fresh != null) {
+                list.set(i, fresh);
+            }
+        }
+    }
+
+    private static <T> Map<T, T> replacement(T previous, T fresh) {
+        Map<T, T> replaced = new IdentityHashMap<>();
+        replaced.put(previous, fresh);
+        return replaced;
+    }
+
+    private void reindexLoan(Loan previous, Loan fresh) {
+        if (previous != null) {
+            unindexLoan(previous);
+        }
+        if (fresh != null) {
+            indexLoan(fresh);
+        }
+        boolean sameCounters = previous != null && fresh != null
+                && previous.getBookIsbn().equals(fresh.getBookIsbn())
+                && previous.getReaderSubscriberNumber().equals(fresh.getReaderSubscriberNumber());
+        if (!sameCounters) {
+            if (previous != null) {
+                uncountLoan(previous);
+            }
+            if (fresh != null) {
+                countLoan(fresh);
+            }
+        }
+    }
+
+    private static boolean sameBook(Book a, Book b) {
+        return Objects.equals(a.getTitle(), b.getTitle()) && Objects.equals(a.getAuthor(), b.getAuthor())
+                && a.getYear() == b.getYear() && Objects.equals(a.getPublisher(), b.getPublisher())
+                && a.getStatus() == b.getStatus();
+    }
+
+    private static boolean sameReader(Reader a, Reader b) {
+        return Objects.equals(a.getFirstName(), b.getFirstName()) && Objects.equals(a.getLastName(), b.getLastName())
+                && Objects.equals(a.getEmail(), b.getEmail()) && a.getMaxLoanDays() == b.getMaxLoanDays();
+    }
+
+    private static boolean sameLoan(Loan a, Loan b) {
+        return Objects.equals(a.getBookIsbn(), b.getBookIsbn())
+                && Objects.equals(a.getReaderSubscriberNumber(), b.getReaderSubscriberNumber())
+                && Objects.equals(a.getBorrowDate(), b.getBorrowDate())
+                && Objects.equals(a.getDueDate(), b.getDueDate()) && a.isReturned() == b.isReturned();
+    }
+
+    // The DB phase runs on ioExecutor and the in-memory phase on the FX thread; the returned
+    // future is always completed on the FX thread. Cancelling it interrupts the DB phase, but
+    // a DB phase that already finished is still applied so memory stays in line with the database.
+    private <T, R> CompletableFuture<R> submit(Callable<T> dbPhase, Function<? super T, ? extends R> applyPhase) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Callable<T> call = OperationContext.propagate(dbPhase);
+        Future<?> task;
+        try {
+            task = ioExecutor.submit(() -> {
+                T value;
+                try {
+                    value = call.call();
+                } catch (Throwable e) {
+                    fxExecutor.execute(() -> result.completeExceptionally(e));
+                    return;
+                }
+                fxExecutor.execute(() -> {
+                    try {
+                        result.complete(applyPhase.apply(value));
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> dbPhase) {
+        return submit(dbPhase, Function.identity());
     }
 
     public ObservableList<Book> getBooks() {
@@ -76,333 +473,570 @@ public class Repository {
     }
 
     public boolean addBook(Book book) {
-        if (dbManager.addBook(book)) {
+        return applyAddBook(book, store.addBook(book));
+    }
+
+    public CompletableFuture<Boolean> addBookAsync(Book book) {
+        return submit(() -> store.addBook(book), added -> applyAddBook(book, added));
+    }
+
+    private boolean applyAddBook(Book book, boolean added) {
+        if (added) {
             books.add(book);
-            return true;
+            booksByIsbn.put(book.getIsbn(), book);
         }
-        return false;
+        return added;
     }
 
     public boolean updateBook(Book book) {
-        if (dbManager.updateBook(book)) {
-            for (int i = 0; i < books.size(); i++) {
-                if (books.get(i).getIsbn().equals(book.getIsbn())) {
-                    books.set(i, book);
-                    break;
-                }
+        return applyUpdateBook(book, store.updateBook(book));
+    }
+
+    public CompletableFuture<Boolean> updateBookAsync(Book book) {
+        return submit(() -> store.updateBook(book), updated -> applyUpdateBook(book, updated));
+    }
+
+    private boolean applyUpdateBook(Book book, boolean updated) {
+        if (updated) {
+            Book previous = booksByIsbn.put(book.getIsbn(), book);
+            if (previous != null) {
+                replace(books, replacement(previous, book));
             }
-            return true;
         }
-        return false;
+        return updated;
     }
 
     public boolean removeBook(Book book) {
-        if (dbManager.deleteBook(book.getIsbn())) {
-            books.remove(book);
-            return true;
+        return applyRemoveBook(book, store.deleteBook(book.getIsbn()));
+    }
+
+    public CompletableFuture<Boolean> removeBookAsync(Book book) {
+        return submit(() -> store.deleteBook(book.getIsbn()), removed -> applyRemoveBook(book, removed));
+    }
+
+    private boolean applyRemoveBook(Book book, boolean removed) {
+        if (removed) {
+            Book stored = booksByIsbn.remove(book.getIsbn());
+            books.remove(stored != null ? stored : book);
         }
-        return false;
+        return removed;
     }
 
     public boolean addReader(Reader r) {
-        if (dbManager.addReader(r)) {
+        return applyAddReader(r, store.addReader(r));
+    }
+
+    public CompletableFuture<Boolean> addReaderAsync(Reader r) {
+        return submit(() -> store.addReader(r), added -> applyAddReader(r, added));
+    }
+
+    private boolean applyAddReader(Reader r, boolean added) {
+        if (added) {
             readers.add(r);
-            return true;
+            readersBySubscriber.put(r.getSubscriberNumber(), r);
         }
-        return false;
+        return added;
     }
 
     public boolean updateReader(Reader r) {
-        if (dbManager.updateReader(r)) {
-            for (int i = 0; i < readers.size(); i++) {
-                if (readers.get(i).getSubscriberNumber().equals(r.getSubscriberNumber())) {
-                    readers.set(i, r);
-                    break;
-                }
+        return applyUpdateReader(r, store.updateReader(r));
+    }
+
+    public CompletableFuture<Boolean> updateReaderAsync(Reader r) {
+        return submit(() -> store.updateReader(r), updated -> applyUpdateReader(r, updated));
+    }
+
+    private boolean applyUpdateReader(Reader r, boolean updated) {
+        if (updated) {
+            Reader previous = readersBySubscriber.put(r.getSubscriberNumber(), r);
+            if (previous != null) {
+                replace(readers, replacement(previous, r));
             }
-            return true;
         }
-        return false;
+        return updated;
     }
 
     public boolean removeReader(Reader r) {
-        if (dbManager.deleteReader(r.getSubscriberNumber())) {
-            readers.remove(r);
-            return true;
+        return applyRemoveReader(r, store.deleteReader(r.getSubscriberNumber()));
+    }
+
+    public CompletableFuture<Boolean> removeReaderAsync(Reader r) {
+        return submit(() -> store.deleteReader(r.getSubscriberNumber()), removed -> applyRemoveReader(r, removed));
+    }
+
+    private boolean applyRemoveReader(Reader r, boolean removed) {
+        if (removed) {
+            Reader stored = readersBySubscriber.remove(r.getSubscriberNumber());
+            readers.remove(stored != null ? stored : r);
         }
-        return false;
+        return removed;
+    }
+
+    public Loan borrowBook(String isbn, String subscriberNumber) throws SQLException, IOException {
+        LibraryEvents.Borrow event = LibraryEvents.borrow();
+        return applyBorrow(isbn, subscriberNumber, createLoan(isbn, subscriberNumber,
+                maxLoanDaysOf(subscriberNumber)), event);
+    }
+
+    public CompletableFuture<Loan> borrowBookAsync(String isbn, String subscriberNumber) {
+        LibraryEvents.Borrow event = LibraryEvents.borrow();
+        int maxLoanDays = maxLoanDaysOf(subscriberNumber);
+        return submit(() -> createLoan(isbn, subscriberNumber, maxLoanDays),
+                loan -> applyBorrow(isbn, subscriberNumber, loan, event));
+    }
+
+    private int maxLoanDaysOf(String subscriberNumber) {
+        Reader reader = readersBySubscriber.get(subscriberNumber);
+        return reader != null ? reader.getMaxLoanDays() : -1;
     }
 
-    public Loan borrowBook(String isbn, String subscriberNumber) {
-        Loan loan = dbManager.createLoan(isbn, subscriberNumber);
+    private Loan createLoan(String isbn, String subscriberNumber, int maxLoanDays) throws SQLException, IOException {
+        return maxLoanDays >= 0
+                ? store.createLoan(isbn, subscriberNumber, maxLoanDays)
+                : store.createLoan(isbn, subscriberNumber);
+    }
+
+    private Loan applyBorrow(String isbn, String subscriberNumber, Loan loan, LibraryEvents.Borrow event) {
         if (loan != null) {
             loans.add(loan);
+            indexLoan(loan);
+            countLoan(loan);
             findBookByIsbn(isbn).ifPresent(b -> b.setStatus(Book.Status.BORROWED));
         }
+        event.finish(isbn, subscriberNumber, loan != null);
         return loan;
     }
 
     public boolean returnBook(String loanId) {
-        Optional<Loan> loanOpt = loans.stream()
-                .filter(l -> l.getId().equals(loanId))
-                .findFirst();
+        return returnBooks(Collections.singletonList(loanId)).get(loanId) == ReturnOutcome.RETURNED;
+    }
 
-        if (loanOpt.isPresent() && dbManager.returnBook(loanId)) {
-            Loan loan = loanOpt.get();
+    public CompletableFuture<Boolean> returnBookAsync(String loanId) {
+        LibraryEvents.Return event = LibraryEvents.returns();
+        return submit(() -> store.returnBooks(Collections.singletonList(loanId)),
+                outcomes -> applyReturns(outcomes, event).get(loanId) == ReturnOutcome.RETURNED);
+    }
+
+    public Map<String, ReturnOutcome> returnBooks(Collection<String> loanIds) {
+        LibraryEvents.Return event = LibraryEvents.returns();
+        return applyReturns(store.returnBooks(loanIds), event);
+    }
+
+    public CompletableFuture<Map<String, ReturnOutcome>> returnBooksAsync(Collection<String> loanIds) {
+        LibraryEvents.Return event = LibraryEvents.returns();
+        List<String> ids = new ArrayList<>(loanIds);
+        return submit(() -> store.returnBooks(ids), outcomes -> applyReturns(outcomes, event));
+    }
+
+    private Map<String, ReturnOutcome> applyReturns(Map<String, ReturnOutcome> outcomes,
+            LibraryEvents.Return event) {
+        int returned = 0;
+        for (Map.Entry<String, ReturnOutcome> e : outcomes.entrySet()) {
+            if (e.getValue() == ReturnOutcome.RETURNED) {
+                returned++;
+            }
+            Loan loan = loansById.get(e.getKey());
+            if (loan == null || e.getValue() != ReturnOutcome.RETURNED) {
+                continue;
+            }
             loan.setReturned(true);
+            snapshotDirty = true;
+            ReaderLoans readerLoans = loansByReader.get(loan.getReaderSubscriberNumber());
+            if (readerLoans != null) {
+                readerLoans.markReturned(loan);
+            }
+            overdueIndex.remove(loan);
             findBookByIsbn(loan.getBookIsbn()).ifPresent(b -> b.setStatus(Book.Status.AVAILABLE));
-            return true;
         }
-        return false;
+        event.finish(outcomes.size(), returned);
+        return outcomes;
     }
 
     public void addLoan(Loan l) {
         loans.add(l);
+        indexLoan(l);
+        countLoan(l);
     }
 
     public void removeLoan(Loan l) {
-        loans.remove(l);
+        if (loans.remove(l)) {
+            unindexLoan(l);
+            uncountLoan(l);
+        }
     }
 
-    public void exportBooksToJson(File file) throws IOException {
-        List<Map<String, Object>> bookMaps = books.stream()
-                .map(this::bookToMap)
-                .collect(Collectors.toList());
-        objectMapper.writeValue(file, bookMaps);
+    private void indexLoan(Loan l) {
+        loansById.put(l.getId(), l);
+        loansByReader.computeIfAbsent(l.getReaderSubscriberNumber(), k -> new ReaderLoans()).add(l);
+        overdueIndex.add(l);
     }
 
-    public void exportReadersToJson(File file) throws IOException {
-        List<Map<String, Object>> readerMaps = readers.stream()
-                .map(this::readerToMap)
-                .collect(Collectors.toList());
-        objectMapper.writeValue(file, readerMaps);
-    }
-
-    private Map<String, Object> bookToMap(Book b) {
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("isbn", b.getIsbn());
-        m.put("titre", b.getTitle());
-        m.put("auteur", b.getAuthor());
-        m.put("annee", b.getYear());
-        m.put("editeur", b.getPublisher());
-        m.put("statut", b.getStatus() == Book.Status.BORROWED ? "emprunté" : "disponible");
-        return m;
-    }
-
-    private Map<String, Object> readerToMap(Reader r) {
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("numeroAbonne", r.getSubscriberNumber());
-        m.put("prenom", r.getFirstName());
-        m.put("nom", r.getLastName());
-        m.put("email", r.getEmail());
-        m.put("joursEmpruntMax", r.getMaxLoanDays());
-        return m;
-    }
-
-    public List<Book> importBooksFromXml(File xmlFile) throws Exception {
-        List<Book> imported = new ArrayList<>();
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(xmlFile);
-        Element root = doc.getDocumentElement();
-        NodeList livreNodes = root.getElementsByTagName("livre");
-
-        for (int i = 0; i < livreNodes.getLength(); i++) {
-            Node node = livreNodes.item(i);
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element e = (Element) node;
-                String titre = getTextContent(e, "titre");
-                String auteur = getTextContent(e, "auteur");
-                String anneeStr = getTextContent(e, "annee");
-                String isbn = getTextContent(e, "isbn");
-                String editeur = getTextContent(e, "editeur");
-                String statut = getTextContent(e, "statut");
-
-                int annee = 0;
-                try {
-                    annee = Integer.parseInt(anneeStr);
-                } catch (Exception ex) {
-                }
+    private void unindexLoan(Loan l) {
+        loansById.remove(l.getId());
+        ReaderLoans readerLoans = loansByReader.get(l.getReaderSubscriberNumber());
+        if (readerLoans != null) {
+            readerLoans.remove(l);
+            if (readerLoans.isEmpty()) {
+                loansByReader.remove(l.getReaderSubscriberNumber());
+            }
+        }
+        overdueIndex.remove(l);
+    }
 
-                Book.Status status = "emprunté".equalsIgnoreCase(statut) ? Book.Status.BORROWED : Book.Status.AVAILABLE;
+    private void countLoan(Loan l) {
+        loanCountsByBook.increment(l.getBookIsbn());
+        loanCountsByReader.merge(l.getReaderSubscriberNumber(), 1L, Long::sum);
+        totalLoanCount++;
+    }
 
-                Book b = new Book(isbn, titre, auteur, annee, editeur, status);
+    private void uncountLoan(Loan l) {
+        loanCountsByBook.decrement(l.getBookIsbn());
+        loanCountsByReader.computeIfPresent(l.getReaderSubscriberNumber(), (k, c) -> c > 1 ? c - 1 : null);
+        totalLoanCount--;
+    }
 
-                if (addBook(b)) {
-                    imported.add(b);
-                }
-            }
+    private void rebuildLoanCounters(List<Loan> allLoans) {
+        Map<String, Long> byBook = new HashMap<>();
+        loanCountsByReader.clear();
+        for (Loan l : allLoans) {
+            byBook.merge(l.getBookIsbn(), 1L, Long::sum);
+            loanCountsByReader.merge(l.getReaderSubscriberNumber(), 1L, Long::sum);
         }
-        return imported;
+        loanCountsByBook.rebuild(byBook);
+        totalLoanCount = allLoans.size();
     }
 
-    public void exportBooksToXml(File file) throws Exception {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-        Document doc = docBuilder.newDocument();
-
-        Element rootElement = doc.createElement("bibliotheque");
-        doc.appendChild(rootElement);
+    private void seedLoanCounters(Map<String, Long> perBook, Map<String, Long> perReader) {
+        loanCountsByBook.rebuild(perBook);
+        loanCountsByReader.clear();
+        loanCountsByReader.putAll(perReader);
+        totalLoanCount = 0;
+        for (long c : perBook.values()) {
+            totalLoanCount += c;
+        }
+    }
 
-        for (Book book : books) {
-            Element livre = doc.createElement("livre");
-            rootElement.appendChild(livre);
+    public boolean hasMoreLoanHistory() {
+        return historyCursorDate != null;
+    }
 
-            createElement(doc, livre, "isbn", book.getIsbn());
-            createElement(doc, livre, "titre", book.getTitle());
-            createElement(doc, livre, "auteur", book.getAuthor());
-            createElement(doc, livre, "annee", String.valueOf(book.getYear()));
-            createElement(doc, livre, "editeur", book.getPublisher());
-            createElement(doc, livre, "statut", book.getStatus() == Book.Status.BORROWED ? "emprunté" : "disponible");
+    public int loadMoreLoanHistory(int pageSize) {
+        try {
+            return applyHistoryPage(fetchHistoryPage(historyCursorDate, historyCursorId, pageSize));
+        } catch (SQLException e) {
+            System.err.println("Erreur lors du chargement de l'historique : " + e.getMessage());
+            return 0;
         }
+    }
 
-        javax.xml.transform.TransformerFactory transformerFactory = javax.xml.transform.TransformerFactory
-                .newInstance();
-        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(javax.xml.transform.OutputKeys.INDENT, "yes");
-        javax.xml.transform.dom.DOMSource source = new javax.xml.transform.dom.DOMSource(doc);
-        javax.xml.transform.stream.StreamResult result = new javax.xml.transform.stream.StreamResult(file);
-        transformer.transform(source, result);
+    public CompletableFuture<Integer> loadMoreLoanHistoryAsync(int pageSize) {
+        LocalDate fromDate = historyCursorDate;
+        String fromId = historyCursorId;
+        return submit(() -> fetchHistoryPage(fromDate, fromId, pageSize), this::applyHistoryPage);
     }
 
-    private void createElement(Document doc, Element parent, String tagName, String text) {
-        Element elem = doc.createElement(tagName);
-        elem.setTextContent(text);
-        parent.appendChild(elem);
+    private HistoryPage fetchHistoryPage(LocalDate fromDate, String fromId, int pageSize) throws SQLException {
+        List<Loan> page = fromDate == null
+                ? Collections.emptyList()
+                : store.getReturnedLoansBefore(fromDate, fromId, pageSize);
+        return new HistoryPage(fromDate, fromId, pageSize, page);
     }
 
-    public int importBooksFromJson(File jsonFile) throws IOException {
-        int count = 0;
-        List<Map<String, Object>> bookMaps = objectMapper.readValue(jsonFile,
-                new com.fasterxml.jackson.core.type.TypeReference<List<Map<String, Object>>>() {
-                });
+    private int applyHistoryPage(HistoryPage page) {
+        if (page.fromDate == null || !page.fromDate.equals(historyCursorDate) || !page.fromId.equals(historyCursorId)) {
+            return 0;
+        }
+        List<Loan> added = new ArrayList<>();
+        for (Loan l : page.loans) {
+            if (!loansById.containsKey(l.getId())) {
+                indexLoan(l);
+                added.add(l);
+            }
+        }
+        loans.addAll(added);
+
+        if (page.loans.size() < page.pageSize) {
+            historyCursorDate = null;
+            historyCursorId = null;
+        } else {
+            Loan last = page.loans.get(page.loans.size() - 1);
+            historyCursorDate = last.getBorrowDate();
+            historyCursorId = last.getId();
+        }
+        return added.size();
+    }
+
+    // Must run on the FX thread, like every other read of the in-memory state.
+    public void saveSnapshot() {
+        if (snapshotStore == null || !snapshotDirty) {
+            return;
+        }
+        try {
+            snapshotStore.write(encodeSnapshot());
+        } catch (IOException e) {
+            System.err.println("Erreur lors de l'enregistrement de l'instantané local : " + e.getMessage());
+        }
+    }
+
+    private byte[] encodeSnapshot() throws IOException {
+        snapshotDirty = false;
+        List<Loan> kept = new ArrayList<>(loans.size());
+        for (Loan l : loans) {
+            if (historyCursorDate == null || !l.isReturned() || !l.getBorrowDate().isBefore(historyCursorDate)) {
+                kept.add(l);
+            }
+        }
+        return snapshotStore.encode(new Snapshot(syncWatermark, new ArrayList<>(books), new ArrayList<>(readers),
+                kept, historyCursorDate, historyCursorId, LAZY_LOAN_HISTORY ? loanCountsByBook.counts() : null,
+                LAZY_LOAN_HISTORY ? loanCountsByReader : null));
+    }
 
-        for (Map<String, Object> map : bookMaps) {
-            String isbn = (String) map.get("isbn");
-            String title = (String) map.get("titre");
-            String author = (String) map.get("auteur");
-            int year = 0;
+    private void scheduleSnapshots() {
+        if (snapshotStore == null || SNAPSHOT_INTERVAL_SECONDS <= 0) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(() -> fxExecutor.execute(() -> {
+            if (!snapshotDirty) {
+                return;
+            }
+            byte[] data;
             try {
-                year = Integer.parseInt(map.get("annee").toString());
-            } catch (Exception e) {
+                data = encodeSnapshot();
+            } catch (IOException e) {
+                System.err.println("Erreur lors de l'enregistrement de l'instantané local : " + e.getMessage());
+                return;
             }
-            String publisher = (String) map.get("editeur");
-            String statusStr = (String) map.get("statut");
+            scheduler.execute(() -> {
+                try {
+                    snapshotStore.write(data);
+                } catch (IOException e) {
+                    System.err.println("Erreur lors de l'enregistrement de l'instantané local : " + e.getMessage());
+                }
+            });
+        }), SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void scheduleDayRollover() {
+        LocalDateTime nextMidnight = LocalDate.now().plusDays(1).atStartOfDay();
+        long delay = Duration.between(LocalDateTime.now(), nextMidnight).toMillis();
+        scheduler.scheduleAtFixedRate(() -> overdueIndex.advanceTo(LocalDate.now()),
+                Math.max(delay, 0), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
 
-            Book.Status status = "emprunté".equalsIgnoreCase(statusStr) ? Book.Status.BORROWED : Book.Status.AVAILABLE;
+    public void exportBooksToJson(File file) throws IOException {
+        exportBooksToJson(file, LibraryEvents.exporting());
+    }
 
-            Book book = new Book(isbn, title, author, year, publisher, status);
-            if (addBook(book)) {
-                count++;
-            }
+    public CompletableFuture<Void> exportBooksToJsonAsync(File file) {
+        LibraryEvents.Export event = LibraryEvents.exporting();
+        return submit(() -> {
+            exportBooksToJson(file, event);
+            return null;
+        });
+    }
+
+    private void exportBooksToJson(File file, LibraryEvents.Export event) throws IOException {
+        long[] rows = new long[1];
+        try (JsonCatalogWriter out = new JsonCatalogWriter(jsonFactory, file)) {
+            store.streamBooks(b -> {
+                out.writeBook(b);
+                rows[0]++;
+            });
+        } catch (SQLException e) {
+            throw new IOException("Erreur lors de la lecture des livres : " + e.getMessage(), e);
         }
-        return count;
+        event.finish("livres", file, rows[0]);
+    }
+
+    public void exportReadersToJson(File file) throws IOException {
+        exportReadersToJson(file, LibraryEvents.exporting());
     }
 
-    public List<Reader> importReadersFromXml(File xmlFile) throws Exception {
-        List<Reader> imported = new ArrayList<>();
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(xmlFile);
-        Element root = doc.getDocumentElement();
-        NodeList lecteurNodes = root.getElementsByTagName("lecteur");
+    public CompletableFuture<Void> exportReadersToJsonAsync(File file) {
+        LibraryEvents.Export event = LibraryEvents.exporting();
+        return submit(() -> {
+            exportReadersToJson(file, event);
+            return null;
+        });
+    }
 
-        for (int i = 0; i < lecteurNodes.getLength(); i++) {
-            Node node = lecteurNodes.item(i);
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element e = (Element) node;
-                String numeroAbonne = getTextContent(e, "numeroAbonne");
-                String nom = getTextContent(e, "nom");
-                String prenom = getTextContent(e, "prenom");
-                String email = getTextContent(e, "email");
-                String joursStr = getTextContent(e, "joursEmpruntMax");
+    private void exportReadersToJson(File file, LibraryEvents.Export event) throws IOException {
+        long[] rows = new long[1];
+        try (JsonCatalogWriter out = new JsonCatalogWriter(jsonFactory, file)) {
+            store.streamReaders(r -> {
+                out.writeReader(r);
+                rows[0]++;
+            });
+        } catch (SQLException e) {
+            throw new IOException("Erreur lors de la lecture des lecteurs : " + e.getMessage(), e);
+        }
+        event.finish("lecteurs", file, rows[0]);
+    }
 
-                int joursMax = 14;
-                try {
-                    joursMax = Integer.parseInt(joursStr);
-                } catch (Exception ex) {
-                }
+    public ImportReport<Book> importBooksFromXml(File xmlFile) throws Exception {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return applyImportedBooks(storeBooksFromXml(xmlFile), xmlFile, event);
+    }
 
-                Reader r = new Reader(numeroAbonne, prenom, nom, email, joursMax);
+    public CompletableFuture<ImportReport<Book>> importBooksFromXmlAsync(File xmlFile) {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return submit(() -> storeBooksFromXml(xmlFile), report -> applyImportedBooks(report, xmlFile, event));
+    }
 
-                if (addReader(r)) {
-                    imported.add(r);
-                }
-            }
+    private ImportReport<Book> storeBooksFromXml(File xmlFile) throws Exception {
+        try (XmlCatalogReader<Book> parsed = XmlCatalogReader.books(xmlFile)) {
+            return store.importBooks(parsed, DatabaseManager.DEFAULT_BATCH_SIZE);
         }
-        return imported;
     }
 
-    public void exportReadersToXml(File file) throws Exception {
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-        Document doc = docBuilder.newDocument();
+    public ImportReport<Book> importBooksFromJson(File jsonFile) throws IOException {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return applyImportedBooks(storeBooksFromJson(jsonFile), jsonFile, event);
+    }
 
-        Element rootElement = doc.createElement("bibliotheque");
-        doc.appendChild(rootElement);
+    public CompletableFuture<ImportReport<Book>> importBooksFromJsonAsync(File jsonFile) {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return submit(() -> storeBooksFromJson(jsonFile), report -> applyImportedBooks(report, jsonFile, event));
+    }
 
-        for (Reader reader : readers) {
-            Element lecteur = doc.createElement("lecteur");
-            rootElement.appendChild(lecteur);
+    private ImportReport<Book> storeBooksFromJson(File jsonFile) throws IOException {
+        try (JsonCatalogReader<Book> parsed = JsonCatalogReader.books(jsonFactory, jsonFile)) {
+            return store.importBooks(parsed, DatabaseManager.DEFAULT_BATCH_SIZE);
+        }
+    }
 
-            createElement(doc, lecteur, "numeroAbonne", reader.getSubscriberNumber());
-            createElement(doc, lecteur, "prenom", reader.getFirstName());
-            createElement(doc, lecteur, "nom", reader.getLastName());
-            createElement(doc, lecteur, "email", reader.getEmail());
-            createElement(doc, lecteur, "joursEmpruntMax", String.valueOf(reader.getMaxLoanDays()));
+    private ImportReport<Book> applyImportedBooks(ImportReport<Book> report, File file, LibraryEvents.Import event) {
+        for (Book b : report.getImported()) {
+            booksByIsbn.put(b.getIsbn(), b);
         }
+        books.addAll(report.getImported());
+        event.finish("livres", file, report);
+        return report;
+    }
 
-        javax.xml.transform.TransformerFactory transformerFactory = javax.xml.transform.TransformerFactory
-                .newInstance();
-        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(javax.xml.transform.OutputKeys.INDENT, "yes");
-        javax.xml.transform.dom.DOMSource source = new javax.xml.transform.dom.DOMSource(doc);
-        javax.xml.transform.stream.StreamResult result = new javax.xml.transform.stream.StreamResult(file);
-        transformer.transform(source, result);
+    public ImportReport<Reader> importReadersFromXml(File xmlFile) throws Exception {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return applyImportedReaders(storeReadersFromXml(xmlFile), xmlFile, event);
     }
 
-    public int importReadersFromJson(File jsonFile) throws IOException {
-        int count = 0;
-        List<Map<String, Object>> readerMaps = objectMapper.readValue(jsonFile,
-                new com.fasterxml.jackson.core.type.TypeReference<List<Map<String, Object>>>() {
-                });
+    public CompletableFuture<ImportReport<Reader>> importReadersFromXmlAsync(File xmlFile) {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return submit(() -> storeReadersFromXml(xmlFile), report -> applyImportedReaders(report, xmlFile, event));
+    }
 
-        for (Map<String, Object> map : readerMaps) {
-            String subscriberNumber = (String) map.get("numeroAbonne");
-            String firstName = (String) map.get("prenom");
-            String lastName = (String) map.get("nom");
-            String email = (String) map.get("email");
-            int maxLoanDays = 14;
-            try {
-                maxLoanDays = Integer.parseInt(map.get("joursEmpruntMax").toString());
-            } catch (Exception e) {
-            }
+    private ImportReport<Reader> storeReadersFromXml(File xmlFile) throws Exception {
+        try (XmlCatalogReader<Reader> parsed = XmlCatalogReader.readers(xmlFile)) {
+            return store.importReaders(parsed, DatabaseManager.DEFAULT_BATCH_SIZE);
+        }
+    }
 
-            Reader reader = new Reader(subscriberNumber, firstName, lastName, email, maxLoanDays);
-            if (addReader(reader)) {
-                count++;
-            }
+    public ImportReport<Reader> importReadersFromJson(File jsonFile) throws IOException {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return applyImportedReaders(storeReadersFromJson(jsonFile), jsonFile, event);
+    }
+
+    public CompletableFuture<ImportReport<Reader>> importReadersFromJsonAsync(File jsonFile) {
+        LibraryEvents.Import event = LibraryEvents.importing();
+        return submit(() -> storeReadersFromJson(jsonFile),
+                report -> applyImportedReaders(report, jsonFile, event));
+    }
+
+    private ImportReport<Reader> storeReadersFromJson(File jsonFile) throws IOException {
+        try (JsonCatalogReader<Reader> parsed = JsonCatalogReader.readers(jsonFactory, jsonFile)) {
+            return store.importReaders(parsed, DatabaseManager.DEFAULT_BATCH_SIZE);
         }
-        return count;
     }
 
-    private String getTextContent(Element parent, String tag) {
-        NodeList nodes = parent.getElementsByTagName(tag);
-        if (nodes.getLength() == 0)
+    private ImportReport<Reader> applyImportedReaders(ImportReport<Reader> report, File file,
+            LibraryEvents.Import event) {
+        for (Reader r : report.getImported()) {
+            readersBySubscriber.put(r.getSubscriberNumber(), r);
+        }
+        readers.addAll(report.getImported());
+        event.finish("lecteurs", file, report);
+        return report;
+    }
+
+    public void exportBooksToXml(File file) throws Exception {
+        exportBooksToXml(file, LibraryEvents.exporting());
+    }
+
+    public CompletableFuture<Void> exportBooksToXmlAsync(File file) {
+        LibraryEvents.Export event = LibraryEvents.exporting();
+        return submit(() -> {
+            exportBooksToXml(file, event);
             return null;
-        return nodes.item(0).getTextContent();
+        });
+    }
+
+    private void exportBooksToXml(File file, LibraryEvents.Export event) throws Exception {
+        long[] rows = new long[1];
+        try (XmlCatalogWriter out = new XmlCatalogWriter(file)) {
+            store.streamBooks(b -> {
+                out.writeBook(b);
+                rows[0]++;
+            });
+        }
+        event.finish("livres", file, rows[0]);
+    }
+
+    public void exportReadersToXml(File file) throws Exception {
+        exportReadersToXml(file, LibraryEvents.exporting());
+    }
+
+    public CompletableFuture<Void> exportReadersToXmlAsync(File file) {
+        LibraryEvents.Export event = LibraryEvents.exporting();
+        return submit(() -> {
+            exportReadersToXml(file, event);
+            return null;
+        });
+    }
+
+    private void exportReadersToXml(File file, LibraryEvents.Export event) throws Exception {
+        long[] rows = new long[1];
+        try (XmlCatalogWriter out = new XmlCatalogWriter(file)) {
+            store.streamReaders(r -> {
+                out.writeReader(r);
+                rows[0]++;
+            });
+        }
+        event.finish("lecteurs", file, rows[0]);
     }
 
     public Optional<Book> findBookByIsbn(String isbn) {
-        return books.stream()
-                .filter(b -> isbn != null && isbn.equals(b.getIsbn()))
-                .findFirst();
+        if (isbn == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(booksByIsbn.get(isbn));
     }
 
     public Optional<Reader> findReaderBySubscriber(String sub) {
-        return readers.stream()
-                .filter(r -> sub != null && sub.equals(r.getSubscriberNumber()))
-                .findFirst();
+        if (sub == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(readersBySubscriber.get(sub));
+    }
+
+    // Builds the search index ahead of the first search, which would otherwise pay for it.
+    public void prepareSearch() {
+        if (!searchIndex.isBuilt()) {
+            searchIndex.rebuild(books);
+        }
+    }
+
+    public List<Book> searchBooks(String query, int limit) {
+        List<Book> result = new ArrayList<>();
+        String needle = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (needle.isEmpty() || limit <= 0) {
+            return result;
+        }
+        Book exact = booksByIsbn.get(query.trim());
+        if (exact != null) {
+            result.add(exact);
+            return result;
+        }
+        prepareSearch();
+        return searchIndex.search(needle, limit);
     }
 
     public boolean canBorrowBook(String isbn) {
@@ -411,60 +1045,69 @@ public class Repository {
     }
 
     public List<Loan> getOverdueLoansForReader(String subscriberNumber) {
-        LocalDate today = LocalDate.now();
-        return loans.stream()
-                .filter(l -> !l.isReturned())
-                .filter(l -> subscriberNumber.equals(l.getReaderSubscriberNumber()))
-                .filter(l -> l.getDueDate().isBefore(today))
-                .collect(Collectors.toList());
+        ReaderLoans readerLoans = loansByReader.get(subscriberNumber);
+        if (readerLoans == null) {
+            return new ArrayList<>();
+        }
+        return readerLoans.getOverdue(LocalDate.now());
     }
 
     public List<Loan> getAllOverdueLoans() {
-        LocalDate today = LocalDate.now();
-        return loans.stream()
-                .filter(l -> !l.isReturned())
-                .filter(l -> l.getDueDate().isBefore(today))
-                .collect(Collectors.toList());
+        return overdueIndex.getOverdue(LocalDate.now());
+    }
+
+    public List<Loan> getAllOverdueLoans(int limit) {
+        return overdueIndex.getOverdue(LocalDate.now(), limit);
+    }
+
+    public int getOverdueLoanCount() {
+        return overdueIndex.getOverdueCount(LocalDate.now());
     }
 
     public List<Loan> getActiveLoansForReader(String subscriberNumber) {
-        return loans.stream()
-                .filter(l -> !l.isReturned())
-                .filter(l -> subscriberNumber.equals(l.getReaderSubscriberNumber()))
-                .collect(Collectors.toList());
+        ReaderLoans readerLoans = loansByReader.get(subscriberNumber);
+        if (readerLoans == null) {
+            return new ArrayList<>();
+        }
+        return readerLoans.getActive();
     }
 
-    public int getLoansCountThisMonth(String subscriberNumber) {
-        LocalDate now = LocalDate.now();
-        LocalDate startOfMonth = now.withDayOfMonth(1);
-        LocalDate startOfNextMonth = startOfMonth.plusMonths(1);
+    public List<Loan> getLoanHistoryForReader(String subscriberNumber) {
+        ReaderLoans readerLoans = loansByReader.get(subscriberNumber);
+        if (readerLoans == null) {
+            return Collections.emptyList();
+        }
+        return readerLoans.getHistory();
+    }
 
-        return (int) loans.stream()
-                .filter(l -> subscriberNumber.equals(l.getReaderSubscriberNumber()))
-                .filter(l -> {
-                    LocalDate d = l.getBorrowDate();
-                    return d != null && !d.isBefore(startOfMonth) && d.isBefore(startOfNextMonth);
-                })
-                .count();
+    public List<Loan> getLoanHistoryForReader(String subscriberNumber, int page, int pageSize) {
+        try {
+            return store.getLoanHistoryForReader(subscriberNumber, page * pageSize, pageSize);
+        } catch (SQLException e) {
+            System.err.println("Erreur lors du chargement de l'historique : " + e.getMessage());
+            return new ArrayList<>();
+        }
     }
 
-    public Map<String, Long> topBorrowedBooks(int limit) {
-        Map<String, Long> counts = loans.stream()
-                .collect(Collectors.groupingBy(Loan::getBookIsbn, Collectors.counting()));
+    public long getTotalLoanCount() {
+        return totalLoanCount;
+    }
+
+    public int getLoansCountThisMonth(String subscriberNumber) {
+        ReaderLoans readerLoans = loansByReader.get(subscriberNumber);
+        if (readerLoans == null) {
+            return 0;
+        }
+        LocalDate startOfMonth = LocalDate.now().withDayOfMonth(1);
+        return readerLoans.countBorrowedBetween(startOfMonth, startOfMonth.plusMonths(1));
+    }
 
-        return counts.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
-                .limit(limit)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (a, b) -> a,
-                        LinkedHashMap::new));
+    public Map<String, Long> topBorrowedBooks(int limit) {
+        return loanCountsByBook.top(limit);
     }
 
     public Map<String, Long> loansCountByReader() {
-        return loans.stream()
-                .collect(Collectors.groupingBy(Loan::getReaderSubscriberNumber, Collectors.counting()));
+        return Collections.unmodifiableMap(loanCountsByReader);
     }
 
     public String getBookTitle(String isbn) {
@@ -0,0 +1,8 @@
+package storage;
+
+public enum ReturnOutcome {
+    RETURNED,
+    ALREADY_RETURNED,
+    NOT_FOUND,
+    FAILED
+}
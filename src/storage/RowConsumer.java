@@ -0,0 +1,8 @@
+package storage;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface RowConsumer<T> {
+    void accept(T row) throws IOException;
+}
@@ -0,0 +1,501 @@
+package storage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Writes every SQL statement slower than the threshold to a rotating local file, with its bound parameters,
+// duration, row count and the controller action it served. A query is timed from its execution until its
+// result set is closed. Optionally, SELECTs that reach a new worst time are run again under EXPLAIN, on the
+// log's own thread, so that full scans of loans show up without a profiler.
+final class SlowQueryLog {
+
+    private static final long THRESHOLD_MILLIS = Long.getLong("digitallibrary.db.slowQuery.thresholdMillis", 500L);
+    static final boolean ENABLED = THRESHOLD_MILLIS >= 0;
+    private static final String PATH = System.getProperty("digitallibrary.db.slowQuery.path",
+            System.getProperty("user.home") + File.separator + ".digitallibrary" + File.separator
+                    + "slow-queries.log");
+    private static final long MAX_BYTES = Long.getLong("digitallibrary.db.slowQuery.maxBytes", 5L * 1024 * 1024);
+    private static final int FILES = Integer.getInteger("digitallibrary.db.slowQuery.files", 5);
+    private static final boolean EXPLAIN = Boolean.parseBoolean(
+            System.getProperty("digitallibrary.db.slowQuery.explain", "false"));
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final int MAX_VALUE_LENGTH = 200;
+    private static final int EXPLAINED_SQL_TRACKED = 256;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private final long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(THRESHOLD_MILLIS);
+    private final Path path = Paths.get(PATH);
+    private final ConnectionPool.ConnectionFactory explainConnections;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    // Worst time already explained for each SQL text; only touched by the writer thread.
+    private final Map<String, Long> explained = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > EXPLAINED_SQL_TRACKED;
+        }
+    };
+    private BufferedWriter out;
+    private long written;
+
+    private SlowQueryLog(ConnectionPool.ConnectionFactory explainConnections) {
+        this.explainConnections = explainConnections;
+        writer = new Thread(this::drain, "slow-query-log");
+        writer.setDaemon(true);
+    }
+
+    // Null when the log is disabled (threshold below zero).
+    static SlowQueryLog create(ConnectionPool.ConnectionFactory explainConnections) {
+        if (!ENABLED) {
+            return null;
+        }
+        SlowQueryLog log = new SlowQueryLog(EXPLAIN ? explainConnections : null);
+        log.writer.start();
+        System.out.println("Requêtes de plus de " + THRESHOLD_MILLIS + " ms journalisées dans " + log.path);
+        return log;
+    }
+
+    PreparedStatement wrap(PreparedStatement statement, String sql) {
+        if (Thread.currentThread() == writer) {
+            return statement;
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new Watched(statement, sql));
+    }
+
+    private void record(long elapsedNanos, String sql, List<Object> params, int batchSize, long rows,
+            SQLException error) {
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), elapsedNanos, sql, params, batchSize, rows,
+                error != null ? error.getMessage() : null, OperationContext.current(),
+                Thread.currentThread().getName());
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                text.append("(").append(lost).append(" requête(s) lente(s) non journalisée(s) : file pleine)")
+                        .append(System.lineSeparator());
+            }
+            entry.appendTo(text);
+            if (shouldExplain(entry)) {
+                explain(entry, text);
+            }
+            text.append(System.lineSeparator());
+            write(text.toString());
+        }
+    }
+
+    // A SELECT is explained the first time it is slow, then again only when it gets at least twice as slow.
+    private boolean shouldExplain(Entry entry) {
+        if (explainConnections == null || entry.error != null
+                || !entry.sql.trim().toUpperCase(Locale.ROOT).startsWith("SELECT")) {
+            return false;
+        }
+        Long worst = explained.get(entry.sql);
+        if (worst != null && entry.elapsedNanos < 2 * worst) {
+            return false;
+        }
+        explained.put(entry.sql, entry.elapsedNanos);
+        return true;
+    }
+
+    private void explain(Entry entry, StringBuilder text) {
+        for (Object value : entry.params) {
+            if (value instanceof Opaque) {
+                text.append("  plan : paramètre ").append(value).append(" non rejouable")
+                        .append(System.lineSeparator());
+                return;
+            }
+        }
+        try (Connection conn = explainConnections.create();
+                PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + entry.sql)) {
+            for (int i = 0; i < entry.params.size(); i++) {
+                Object value = entry.params.get(i);
+                if (value == null) {
+                    pstmt.setNull(i + 1, Types.NULL);
+                } else {
+                    pstmt.setObject(i + 1, value);
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    text.append("  plan :");
+                    for (int c = 1; c <= meta.getColumnCount(); c++) {
+                        text.append(c == 1 ? " " : ", ").append(meta.getColumnLabel(c)).append('=')
+                                .append(rs.getString(c));
+                    }
+                    text.append(System.lineSeparator());
+                }
+            }
+        } catch (SQLException e) {
+            text.append("  plan : EXPLAIN impossible : ").append(e.getMessage()).append(System.lineSeparator());
+        }
+    }
+
+    private void write(String text) {
+        try {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (out == null) {
+                Path parent = path.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                written = Files.exists(path) ? Files.size(path) : 0;
+                out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            if (written > 0 && written + bytes.length > MAX_BYTES) {
+                rotate();
+            }
+            out.write(text);
+            out.flush();
+            written += bytes.length;
+        } catch (IOException e) {
+            System.err.println("Erreur lors de l'écriture du journal des requêtes lentes : " + e.getMessage());
+            out = null;
+        }
+    }
+
+    // slow-queries.log becomes slow-queries.log.1, .1 becomes .2, and so on; the oldest file is dropped.
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        if (FILES > 1) {
+            for (int i = FILES - 1; i >= 1; i--) {
+                Path older = rotated(i);
+                if (Files.exists(older)) {
+                    Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(path, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(rotated(FILES));
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        written = 0;
+    }
+
+    private Path rotated(int index) {
+        return path.resolveSibling(path.getFileName() + "." + index);
+    }
+
+    // Values that are logged but cannot be bound again for EXPLAIN (streams, blobs...).
+    private static final class Opaque {
+        private final String type;
+
+        Opaque(Object value) {
+            this.type = value.getClass().getSimpleName();
+        }
+
+        @Override
+        public String toString() {
+            return "<" + type + ">";
+        }
+    }
+
+    private static Object capture(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof java.util.Date || value instanceof Temporal) {
+            return value;
+        }
+        return new Opaque(value);
+    }
+
+    private static final class Entry {
+        final long timestamp;
+        final long elapsedNanos;
+        final String sql;
+        final List<Object> params;
+        final int batchSize;
+        final long rows;
+        final String error;
+        final String action;
+        final String thread;
+
+        Entry(long timestamp, long elapsedNanos, String sql, List<Object> params, int batchSize, long rows,
+                String error, String action, String thread) {
+            this.timestamp = timestamp;
+            this.elapsedNanos = elapsedNanos;
+            this.sql = sql;
+            this.params = params;
+            this.batchSize = batchSize;
+            this.rows = rows;
+            this.error = error;
+            this.action = action;
+            this.thread = thread;
+        }
+
+        void appendTo(StringBuilder text) {
+            String nl = System.lineSeparator();
+            text.append(TIMESTAMP.format(Instant.ofEpochMilli(timestamp)))
+                    .append(String.format(Locale.ROOT, "  %.1f ms  ", elapsedNanos / 1e6))
+                    .append(rows).append(" ligne(s)  ").append(action);
+            if (!action.equals(thread)) {
+                text.append(" [").append(thread).append(']');
+            }
+            text.append(nl).append("  ").append(sql.replaceAll("\\s+", " ").trim()).append(nl);
+            if (!params.isEmpty()) {
+                text.append("  paramètres :");
+                for (int i = 0; i < params.size(); i++) {
+                    text.append(i == 0 ? " " : ", ").append('[').append(i + 1).append("] ")
+                            .append(format(params.get(i)));
+                }
+                text.append(nl);
+            }
+            if (batchSize > 0) {
+                text.append("  lot de ").append(batchSize).append(" exécution(s), paramètres de la première")
+                        .append(nl);
+            }
+            if (error != null) {
+                text.append("  erreur : ").append(error).append(nl);
+            }
+        }
+
+        private static String format(Object value) {
+            if (value == null) {
+                return "NULL";
+            }
+            String s = value.toString();
+            if (s.length() > MAX_VALUE_LENGTH) {
+                s = s.substring(0, MAX_VALUE_LENGTH) + "…";
+            }
+            return value instanceof String ? "'" + s.replace("'", "''") + "'" : s;
+        }
+    }
+
+    // Tracks the parameters bound to one prepared statement and times its executions.
+    private final class Watched implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final String sql;
+        private final List<Object> params = new ArrayList<>();
+        private List<Object> batchParams;
+        private int batchSize;
+        private ResultSetHandler openResult;
+
+        Watched(PreparedStatement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            int arity = args == null ? 0 : args.length;
+            if (name.startsWith("set") && arity >= 2 && args[0] instanceof Integer) {
+                bind((Integer) args[0], "setNull".equals(name) ? null : capture(args[1]));
+            } else if (arity == 0) {
+                switch (name) {
+                    case "executeQuery":
+                        return executeQuery(proxy);
+                    case "executeUpdate":
+                    case "executeLargeUpdate":
+                    case "execute":
+                    case "executeBatch":
+                    case "executeLargeBatch":
+                        return execute(method);
+                    case "clearParameters":
+                        params.clear();
+                        break;
+                    case "addBatch":
+                        if (batchSize++ == 0) {
+                            batchParams = new ArrayList<>(params);
+                        }
+                        break;
+                    case "clearBatch":
+                        batchSize = 0;
+                        batchParams = null;
+                        break;
+                    case "close":
+                        finishResult();
+                        break;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            return invokeTarget(method, args);
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void bind(int index, Object value) {
+            while (params.size() < index) {
+                params.add(null);
+            }
+            params.set(index - 1, value);
+        }
+
+        private ResultSet executeQuery(Object proxy) throws SQLException {
+            finishResult();
+            long start = System.nanoTime();
+            ResultSet rs;
+            try {
+                rs = statement.executeQuery();
+            } catch (SQLException e) {
+                record(System.nanoTime() - start, sql, new ArrayList<>(params), 0, -1, e);
+                throw e;
+            }
+            openResult = new ResultSetHandler(rs, start, new ArrayList<>(params), (PreparedStatement) proxy);
+            return (ResultSet) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, openResult);
+        }
+
+        private Object execute(Method method) throws Throwable {
+            finishResult();
+            boolean batch = method.getName().contains("Batch");
+            List<Object> logged = batch && batchParams != null ? batchParams : new ArrayList<>(params);
+            int size = batch ? batchSize : 0;
+            if (batch) {
+                batchSize = 0;
+                batchParams = null;
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeTarget(method, null);
+            } catch (SQLException e) {
+                record(System.nanoTime() - start, sql, logged, size, -1, e);
+                throw e;
+            }
+            record(System.nanoTime() - start, sql, logged, size, rowsOf(result), null);
+            return result;
+        }
+
+        private long rowsOf(Object result) throws SQLException {
+            if (result instanceof Number) {
+                return ((Number) result).longValue();
+            }
+            if (result instanceof int[]) {
+                long rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            if (result instanceof long[]) {
+                long rows = 0;
+                for (long count : (long[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            }
+            // execute(): an update count, or -1 for a result set that is not followed.
+            return Boolean.FALSE.equals(result) ? statement.getUpdateCount() : -1;
+        }
+
+        // Closing the statement closes its result set too.
+        private void finishResult() {
+            if (openResult != null) {
+                openResult.finish();
+                openResult = null;
+            }
+        }
+
+        private final class ResultSetHandler implements InvocationHandler {
+            private final ResultSet rs;
+            private final long start;
+            private final List<Object> boundParams;
+            private final PreparedStatement owner;
+            private long rows;
+            private boolean finished;
+
+            ResultSetHandler(ResultSet rs, long start, List<Object> boundParams, PreparedStatement owner) {
+                this.rs = rs;
+                this.start = start;
+                this.boundParams = boundParams;
+                this.owner = owner;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getStatement":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "close":
+                        finish();
+                        break;
+                    default:
+                        break;
+                }
+                Object result;
+                try {
+                    result = method.invoke(rs, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                    rows++;
+                }
+                return result;
+            }
+
+            void finish() {
+                if (!finished) {
+                    finished = true;
+                    record(System.nanoTime() - start, sql, boundParams, 0, rows, null);
+                }
+            }
+        }
+    }
+}
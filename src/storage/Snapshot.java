@@ -0,0 +1,35 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+final class Snapshot {
+
+    final long watermark;
+    final List<Book> books;
+    final List<Reader> readers;
+    final List<Loan> loans;
+    // Null when every loan is loaded; otherwise returned loans before (historyCutoff, historyCutoffId) in
+    // (borrow_date, id) order are paged in on demand.
+    final LocalDate historyCutoff;
+    final String historyCutoffId;
+    final Map<String, Long> loansPerBook;
+    final Map<String, Long> loansPerReader;
+
+    Snapshot(long watermark, List<Book> books, List<Reader> readers, List<Loan> loans, LocalDate historyCutoff,
+            String historyCutoffId, Map<String, Long> loansPerBook, Map<String, Long> loansPerReader) {
+        this.watermark = watermark;
+        this.books = books;
+        this.readers = readers;
+        this.loans = loans;
+        this.historyCutoff = historyCutoff;
+        this.historyCutoffId = historyCutoffId;
+        this.loansPerBook = loansPerBook;
+        this.loansPerReader = loansPerReader;
+    }
+}
@@ -0,0 +1,241 @@
+package storage;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Layout: magic, version, source, watermark, history cutoff date and id, books, readers, loans, optional loan
+// counters, then a CRC32 of everything before it. Strings are a length (-1 for null) and UTF-8 bytes.
+final class SnapshotStore {
+
+    private static final int MAGIC = 0x444C534E;
+    private static final short VERSION = 2;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final Path file;
+    private final String source;
+
+    SnapshotStore(Path file, String source) {
+        this.file = file;
+        this.source = source;
+    }
+
+    byte[] encode(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        writeString(out, source);
+        out.writeLong(snapshot.watermark);
+        out.writeLong(snapshot.historyCutoff == null ? NO_DATE : snapshot.historyCutoff.toEpochDay());
+        writeString(out, snapshot.historyCutoffId);
+
+        out.writeInt(snapshot.books.size());
+        for (Book b : snapshot.books) {
+            writeString(out, b.getIsbn());
+            writeString(out, b.getTitle());
+            writeString(out, b.getAuthor());
+            out.writeInt(b.getYear());
+            writeString(out, b.getPublisher());
+            out.writeByte(b.getStatus() == null ? -1 : b.getStatus().ordinal());
+        }
+        out.writeInt(snapshot.readers.size());
+        for (Reader r : snapshot.readers) {
+            writeString(out, r.getSubscriberNumber());
+            writeString(out, r.getFirstName());
+            writeString(out, r.getLastName());
+            writeString(out, r.getEmail());
+            out.writeInt(r.getMaxLoanDays());
+        }
+        out.writeInt(snapshot.loans.size());
+        for (Loan l : snapshot.loans) {
+            writeString(out, l.getId());
+            writeString(out, l.getBookIsbn());
+            writeString(out, l.getReaderSubscriberNumber());
+            out.writeLong(l.getBorrowDate() == null ? NO_DATE : l.getBorrowDate().toEpochDay());
+            out.writeLong(l.getDueDate() == null ? NO_DATE : l.getDueDate().toEpochDay());
+            out.writeBoolean(l.isReturned());
+        }
+
+        boolean counters = snapshot.loansPerBook != null && snapshot.loansPerReader != null;
+        out.writeBoolean(counters);
+        if (counters) {
+            writeCounts(out, snapshot.loansPerBook);
+            writeCounts(out, snapshot.loansPerReader);
+        }
+
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Written next to the target and renamed over it, so a crash never leaves a truncated snapshot.
+    void write(byte[] data) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Returns null when there is no usable snapshot: missing, corrupt, older format or other database.
+    // Read into the heap rather than mapped: on Windows a live mapping makes the rename in write() fail.
+    Snapshot read() {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("taille " + size + " trop grande");
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    break;
+                }
+            }
+            buf.flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Instantané local illisible : " + e.getMessage());
+            return null;
+        }
+
+        try {
+            if (buf.limit() < 8 || !checksumMatches(buf)) {
+                System.err.println("Instantané local corrompu, ignoré : " + file);
+                return null;
+            }
+            if (buf.getInt() != MAGIC || buf.getShort() != VERSION || !source.equals(readString(buf))) {
+                return null;
+            }
+            long watermark = buf.getLong();
+            LocalDate historyCutoff = readDate(buf);
+            String historyCutoffId = readString(buf);
+
+            int count = buf.getInt();
+            List<Book> books = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String isbn = readString(buf);
+                String title = readString(buf);
+                String author = readString(buf);
+                int year = buf.getInt();
+                String publisher = readString(buf);
+                byte status = buf.get();
+                books.add(new Book(isbn, title, author, year, publisher,
+                        status < 0 ? null : Book.Status.values()[status]));
+            }
+            count = buf.getInt();
+            List<Reader> readers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                readers.add(new Reader(readString(buf), readString(buf), readString(buf), readString(buf),
+                        buf.getInt()));
+            }
+            count = buf.getInt();
+            List<Loan> loans = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                loans.add(new Loan(readString(buf), readString(buf), readString(buf), readDate(buf), readDate(buf),
+                        buf.get() != 0));
+            }
+
+            Map<String, Long> perBook = null;
+            Map<String, Long> perReader = null;
+            if (buf.get() != 0) {
+                perBook = readCounts(buf);
+                perReader = readCounts(buf);
+            }
+            return new Snapshot(watermark, books, readers, loans, historyCutoff, historyCutoffId, perBook,
+                    perReader);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Instantané local corrompu, ignoré : " + file);
+            return null;
+        }
+    }
+
+    private static boolean checksumMatches(ByteBuffer buf) {
+        int end = buf.limit() - 8;
+        ByteBuffer payload = buf.duplicate();
+        payload.limit(end);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue() == buf.getLong(end);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDate readDate(ByteBuffer buf) {
+        long epochDay = buf.getLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeCounts(DataOutputStream out, Map<String, Long> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            writeString(out, e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    private static Map<String, Long> readCounts(ByteBuffer buf) {
+        int count = buf.getInt();
+        Map<String, Long> counts = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            counts.put(readString(buf), buf.getLong());
+        }
+        return counts;
+    }
+}
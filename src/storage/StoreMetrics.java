@@ -0,0 +1,340 @@
+package storage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Times every LibraryStore call and counts its errors and rows. Each operation is a JMX MXBean
+// (digitallibrary:type=StoreMetrics,operation=...) and a summary of the busiest ones is logged periodically.
+// Overloads are named after their arity, e.g. createLoan/2 and createLoan/3.
+public final class StoreMetrics implements InvocationHandler {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            System.getProperty("digitallibrary.metrics.enabled", "true"));
+    private static final long LOG_INTERVAL_SECONDS = Long.getLong("digitallibrary.metrics.logIntervalSeconds", 300L);
+    private static final String OBJECT_NAME = "digitallibrary:type=StoreMetrics,operation=";
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    // Set when the running operation swallowed an error (see reportError).
+    private static final ThreadLocal<boolean[]> FAILED = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    public interface OperationMXBean {
+        String getOperation();
+
+        long getCount();
+
+        long getErrors();
+
+        long getRows();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP90Millis();
+
+        double getP99Millis();
+
+        double getP999Millis();
+
+        double getMaxMillis();
+
+        void reset();
+    }
+
+    private final LibraryStore store;
+    private final Map<Method, Operation> operations = new HashMap<>();
+    private final ScheduledExecutorService logger;
+    private long lastLogNanos = System.nanoTime();
+
+    private StoreMetrics(LibraryStore store) {
+        this.store = store;
+        Map<String, Integer> overloads = new HashMap<>();
+        for (Method m : LibraryStore.class.getMethods()) {
+            if (!Modifier.isStatic(m.getModifiers())) {
+                overloads.merge(m.getName(), 1, Integer::sum);
+            }
+        }
+        for (Method m : LibraryStore.class.getMethods()) {
+            if (!Modifier.isStatic(m.getModifiers())) {
+                String name = overloads.get(m.getName()) > 1 ? m.getName() + "/" + m.getParameterCount()
+                        : m.getName();
+                operations.put(m, new Operation(name, m.getReturnType()));
+            }
+        }
+        logger = LOG_INTERVAL_SECONDS > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "store-metrics");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    public static LibraryStore wrap(LibraryStore store) {
+        if (!ENABLED) {
+            return store;
+        }
+        StoreMetrics metrics = new StoreMetrics(store);
+        metrics.register();
+        if (metrics.logger != null) {
+            metrics.logger.scheduleAtFixedRate(metrics::log, LOG_INTERVAL_SECONDS, LOG_INTERVAL_SECONDS,
+                    TimeUnit.SECONDS);
+        }
+        return (LibraryStore) Proxy.newProxyInstance(LibraryStore.class.getClassLoader(),
+                new Class<?>[] { LibraryStore.class }, metrics);
+    }
+
+    // The stores print and swallow their SQL and I/O errors; this also counts them against the running call.
+    static void reportError(String message) {
+        System.err.println(message);
+        FAILED.get()[0] = true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Operation op = operations.get(method);
+        if (op == null) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return method.invoke(store, args);
+            }
+        }
+
+        long[] streamed = null;
+        if (args != null && args.length == 1 && args[0] instanceof RowConsumer) {
+            RowConsumer<Object> consumer = (RowConsumer<Object>) args[0];
+            long[] counter = new long[1];
+            args = new Object[] { (RowConsumer<Object>) row -> {
+                counter[0]++;
+                consumer.accept(row);
+            } };
+            streamed = counter;
+        }
+
+        boolean[] failed = FAILED.get();
+        boolean outer = failed[0];
+        failed[0] = false;
+        long start = System.nanoTime();
+        try {
+            Object result = method.invoke(store, args);
+            op.rows.add(streamed != null ? streamed[0] : op.rowsOf(result));
+            return result;
+        } catch (InvocationTargetException e) {
+            failed[0] = true;
+            throw e.getCause();
+        } finally {
+            op.latencies.record(System.nanoTime() - start);
+            if (failed[0]) {
+                op.errors.increment();
+            }
+            failed[0] = outer;
+            if ("close".equals(method.getName())) {
+                shutdown();
+            }
+        }
+    }
+
+    private void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation op : operations.values()) {
+            try {
+                ObjectName name = new ObjectName(OBJECT_NAME + op.name);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(op, name);
+            } catch (JMException e) {
+                System.err.println("Erreur lors de l'enregistrement JMX des métriques : " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void shutdown() {
+        if (logger != null) {
+            logger.shutdownNow();
+            log();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation op : operations.values()) {
+            try {
+                ObjectName name = new ObjectName(OBJECT_NAME + op.name);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                System.err.println("Erreur lors de la désinscription JMX des métriques : " + e.getMessage());
+            }
+        }
+    }
+
+    // One line per operation called since the previous log, the most time-consuming first.
+    private synchronized void log() {
+        long now = System.nanoTime();
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(now - lastLogNanos));
+        lastLogNanos = now;
+        List<Object[]> lines = new ArrayList<>();
+        for (Operation op : operations.values()) {
+            Object[] line = op.interval();
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+        if (lines.isEmpty()) {
+            return;
+        }
+        lines.sort((a, b) -> Double.compare((Double) b[0], (Double) a[0]));
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("[%s] Stockage %s, %d dernières secondes :%n", LocalTime.now().format(TIME),
+                store.getLocation(), seconds));
+        for (Object[] line : lines) {
+            out.append(String.format("  %-28s %9d appels %6d erreurs %10d lignes  p50 %9.2f ms  p99 %9.2f ms"
+                    + "  max %9.2f ms%n", line[1], line[2], line[3], line[4], line[5], line[6], line[7]));
+        }
+        System.out.print(out);
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1e6;
+    }
+
+    private static final class Operation implements OperationMXBean {
+        final String name;
+        final Class<?> returnType;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        private LatencyHistogram.Snapshot logged;
+        private long loggedErrors;
+        private long loggedRows;
+
+        Operation(String name, Class<?> returnType) {
+            this.name = name;
+            this.returnType = returnType;
+        }
+
+        long rowsOf(Object result) {
+            if (result instanceof Collection) {
+                return ((Collection<?>) result).size();
+            }
+            if (result instanceof Map) {
+                return ((Map<?, ?>) result).size();
+            }
+            if (result instanceof Optional) {
+                return ((Optional<?>) result).isPresent() ? 1 : 0;
+            }
+            if (result instanceof ImportReport) {
+                return ((ImportReport<?>) result).getImportedCount();
+            }
+            if (result instanceof ChangeSet) {
+                return ((ChangeSet) result).size();
+            }
+            // importBooks(List) and importReaders(List) return the number of rows inserted.
+            if (returnType == int.class && name.startsWith("import")) {
+                return (Integer) result;
+            }
+            return 0;
+        }
+
+        // Total time, name, calls, errors, rows, p50, p99 and max since the last call; null if idle.
+        synchronized Object[] interval() {
+            LatencyHistogram.Snapshot now = latencies.snapshot();
+            LatencyHistogram.Snapshot delta = logged == null ? now : now.minus(logged);
+            long errorCount = errors.sum();
+            long rowCount = rows.sum();
+            Object[] line = null;
+            if (delta.getCount() > 0) {
+                line = new Object[] { delta.mean() * delta.getCount(), name, delta.getCount(),
+                        errorCount - loggedErrors, rowCount - loggedRows, millis(delta.percentile(50)),
+                        millis(delta.percentile(99)), millis(delta.max()) };
+            }
+            logged = now;
+            loggedErrors = errorCount;
+            loggedRows = rowCount;
+            return line;
+        }
+
+        @Override
+        public String getOperation() {
+            return name;
+        }
+
+        @Override
+        public long getCount() {
+            return latencies.snapshot().getCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return millis(latencies.snapshot().mean());
+        }
+
+        @Override
+        public double getP50Millis() {
+            return millis(latencies.snapshot().percentile(50));
+        }
+
+        @Override
+        public double getP90Millis() {
+            return millis(latencies.snapshot().percentile(90));
+        }
+
+        @Override
+        public double getP99Millis() {
+            return millis(latencies.snapshot().percentile(99));
+        }
+
+        @Override
+        public double getP999Millis() {
+            return millis(latencies.snapshot().percentile(99.9));
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return millis(latencies.snapshot().max());
+        }
+
+        @Override
+        public synchronized void reset() {
+            latencies.reset();
+            errors.reset();
+            rows.reset();
+            logged = null;
+            loggedErrors = 0;
+            loggedRows = 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package storage;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+class TopKCounter {
+
+    private static final Comparator<Entry> RANKING = Comparator.comparingLong((Entry e) -> e.count).reversed()
+            .thenComparing(e -> e.key);
+
+    private final int capacity;
+    private final Map<String, Long> counts = new HashMap<>();
+    private final Map<String, Entry> topEntries = new HashMap<>();
+    private final TreeSet<Entry> top = new TreeSet<>(RANKING);
+    private boolean stale;
+
+    TopKCounter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void increment(String key) {
+        long count = counts.merge(key, 1L, Long::sum);
+        if (stale) {
+            return;
+        }
+        Entry current = topEntries.remove(key);
+        if (current != null) {
+            top.remove(current);
+            insert(new Entry(key, count));
+        } else if (top.size() < capacity) {
+            insert(new Entry(key, count));
+        } else if (!top.isEmpty() && count > top.last().count) {
+            Entry evicted = top.pollLast();
+            topEntries.remove(evicted.key);
+            insert(new Entry(key, count));
+        }
+    }
+
+    void decrement(String key) {
+        Long count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count <= 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+        if (topEntries.containsKey(key)) {
+            stale = true;
+        }
+    }
+
+    void rebuild(Map<String, Long> freshCounts) {
+        counts.clear();
+        counts.putAll(freshCounts);
+        refillTop();
+    }
+
+    Map<String, Long> top(int limit) {
+        if (stale) {
+            refillTop();
+        }
+        if (limit > capacity) {
+            return toMap(selectTop(limit));
+        }
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Entry e : top) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.put(e.key, e.count);
+        }
+        return result;
+    }
+
+    Map<String, Long> counts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private void refillTop() {
+        top.clear();
+        topEntries.clear();
+        for (Entry e : selectTop(capacity)) {
+            insert(e);
+        }
+        stale = false;
+    }
+
+    private void insert(Entry e) {
+        top.add(e);
+        topEntries.put(e.key, e);
+    }
+
+    private TreeSet<Entry> selectTop(int limit) {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(RANKING.reversed());
+        for (Map.Entry<String, Long> c : counts.entrySet()) {
+            heap.add(new Entry(c.getKey(), c.getValue()));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        TreeSet<Entry> selected = new TreeSet<>(RANKING);
+        selected.addAll(heap);
+        return selected;
+    }
+
+    private static Map<String, Long> toMap(Iterable<Entry> entries) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Entry e : entries) {
+            result.put(e.key, e.count);
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        final String key;
+        final long count;
+
+        Entry(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
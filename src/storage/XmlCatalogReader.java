@@ -0,0 +1,119 @@
+package storage;
+
+import models.Book;
+import models.Reader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+class XmlCatalogReader<T> implements Iterator<T>, Closeable {
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private final InputStream in;
+    private final XMLStreamReader xml;
+    private final String recordTag;
+    private final Function<Map<String, String>, T> factory;
+    private final Map<String, String> fields = new HashMap<>();
+    private T next;
+
+    private XmlCatalogReader(File file, String recordTag, Function<Map<String, String>, T> factory)
+            throws IOException {
+        this.in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        this.recordTag = recordTag;
+        this.factory = factory;
+        try {
+            this.xml = FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            in.close();
+            throw new IOException("XML invalide : " + e.getMessage(), e);
+        }
+    }
+
+    static XmlCatalogReader<Book> books(File file) throws IOException {
+        return new XmlCatalogReader<>(file, CatalogFormat.BOOK, CatalogFormat::toBook);
+    }
+
+    static XmlCatalogReader<Reader> readers(File file) throws IOException {
+        return new XmlCatalogReader<>(file, CatalogFormat.READER, CatalogFormat::toReader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readRecord();
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = next;
+        next = null;
+        return record;
+    }
+
+    private T readRecord() {
+        try {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && recordTag.equals(xml.getLocalName())) {
+                    return factory.apply(readFields());
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("XML invalide (ligne " + e.getLocation().getLineNumber() + ") : "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, String> readFields() throws XMLStreamException {
+        fields.clear();
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                String text = xml.getElementText();
+                fields.putIfAbsent(name, text);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package storage;
+
+import models.Book;
+import models.Reader;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+class XmlCatalogWriter implements Closeable {
+
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" + NEWLINE;
+
+    private final OutputStream out;
+    private final XMLStreamWriter xml;
+    private boolean rootOpened;
+
+    XmlCatalogWriter(File file) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        try {
+            out.write(DECLARATION.getBytes(StandardCharsets.UTF_8));
+            xml = FACTORY.createXMLStreamWriter(out, "UTF-8");
+        } catch (XMLStreamException | IOException e) {
+            out.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    void writeBook(Book b) throws IOException {
+        try {
+            startRecord(CatalogFormat.BOOK);
+            field("isbn", b.getIsbn());
+            field("titre", b.getTitle());
+            field("auteur", b.getAuthor());
+            field("annee", String.valueOf(b.getYear()));
+            field("editeur", b.getPublisher());
+            field("statut", CatalogFormat.statusLabel(b.getStatus()));
+            endRecord();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    void writeReader(Reader r) throws IOException {
+        try {
+            startRecord(CatalogFormat.READER);
+            field("numeroAbonne", r.getSubscriberNumber());
+            field("prenom", r.getFirstName());
+            field("nom", r.getLastName());
+            field("email", r.getEmail());
+            field("joursEmpruntMax", String.valueOf(r.getMaxLoanDays()));
+            endRecord();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void startRecord(String tag) throws XMLStreamException {
+        if (!rootOpened) {
+            rootOpened = true;
+            xml.writeStartElement(CatalogFormat.ROOT);
+        }
+        xml.writeCharacters(NEWLINE + "    ");
+        xml.writeStartElement(tag);
+    }
+
+    private void field(String tag, String text) throws XMLStreamException {
+        xml.writeCharacters(NEWLINE + "        ");
+        if (text == null || text.isEmpty()) {
+            xml.writeEmptyElement(tag);
+        } else {
+            xml.writeStartElement(tag);
+            xml.writeCharacters(text);
+            xml.writeEndElement();
+        }
+    }
+
+    private void endRecord() throws XMLStreamException {
+        xml.writeCharacters(NEWLINE + "    ");
+        xml.writeEndElement();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rootOpened) {
+                xml.writeCharacters(NEWLINE);
+                xml.writeEndElement();
+            } else {
+                xml.writeEmptyElement(CatalogFormat.ROOT);
+            }
+            xml.writeCharacters(NEWLINE);
+            xml.flush();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            out.close();
+        }
+    }
+}
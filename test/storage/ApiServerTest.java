@@ -0,0 +1,191 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ApiServerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MemoryLibraryStore store = new MemoryLibraryStore();
+    // Thrown by the store's writes when set, as a database in trouble would.
+    private volatile SQLException failure;
+    private ExecutorService applyThread;
+    private ApiServer server;
+    private String base;
+    private int status;
+
+    @Before
+    public void start() throws Exception {
+        store.addReader(new Reader("R1", "Émile", "Zola", "ez@example.org", 14));
+        for (int i = 1; i <= 3; i++) {
+            store.addBook(new Book("B" + i, "Titre " + i, "Auteur", 2001, "Éditeur", Book.Status.AVAILABLE));
+        }
+        List<Loan> overdue = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            String isbn = "O" + i;
+            store.addBook(new Book(isbn, "Retard " + i, "Auteur", 2001, "Éditeur", Book.Status.BORROWED));
+            LocalDate due = LocalDate.now().minusDays(i);
+            overdue.add(new Loan("late-" + i, isbn, "R1", due.minusDays(14), due, false));
+        }
+        store.importLoans(overdue.iterator(), 100);
+
+        applyThread = Executors.newSingleThreadExecutor();
+        server = new ApiServer(new Repository(failingWrites(store), applyThread), applyThread);
+        server.start("127.0.0.1", 0);
+        base = "http://127.0.0.1:" + server.getPort() + "/api/";
+    }
+
+    @SuppressWarnings("unchecked")
+    private LibraryStore failingWrites(LibraryStore target) {
+        return (LibraryStore) Proxy.newProxyInstance(LibraryStore.class.getClassLoader(),
+                new Class<?>[] { LibraryStore.class }, (proxy, method, args) -> {
+                    SQLException e = failure;
+                    if (e != null && "createLoan".equals(method.getName())) {
+                        throw e;
+                    }
+                    if (e != null && "returnBooks".equals(method.getName())) {
+                        Map<String, ReturnOutcome> outcomes = new LinkedHashMap<>();
+                        for (String id : (Collection<String>) args[0]) {
+                            outcomes.put(id, ReturnOutcome.FAILED);
+                        }
+                        return outcomes;
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+        applyThread.shutdownNow();
+    }
+
+    private JsonNode call(String method, String path, String body) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(base + path).openConnection();
+        c.setRequestMethod(method);
+        if (body != null) {
+            c.setDoOutput(true);
+            try (OutputStream out = c.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        status = c.getResponseCode();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? c.getInputStream() : c.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0;) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return mapper.readTree(bytes.toByteArray());
+    }
+
+    private JsonNode borrow(String isbn, String subscriberNumber) throws IOException {
+        return call("POST", "emprunts", "{\"isbn\": \"" + isbn + "\", \"numeroAbonne\": \"" + subscriberNumber + "\"}");
+    }
+
+    @Test
+    public void borrowStatuses() throws Exception {
+        JsonNode loan = borrow("B1", "R1");
+        assertEquals(201, status);
+        assertEquals("Titre 1", loan.get("titre").asText());
+
+        borrow("B1", "R1");
+        assertEquals(409, status);
+        borrow("inconnu", "R1");
+        assertEquals(404, status);
+        borrow("B2", "inconnu");
+        assertEquals(404, status);
+        call("POST", "emprunts", "{\"isbn\": \"B2\"}");
+        assertEquals(400, status);
+        call("GET", "emprunts", null);
+        assertEquals(405, status);
+    }
+
+    @Test
+    public void storeFailureOnBorrowIsNotARefusal() throws Exception {
+        // Rolled back for sure: the kiosk may try again.
+        failure = new SQLTransientConnectionException("Aucune connexion disponible après 5000 ms");
+        JsonNode error = borrow("B2", "R1");
+        assertEquals(503, status);
+        assertTrue(error.get("erreur").asText().contains("Aucune connexion disponible"));
+
+        // Anything else: the book must be checked first.
+        failure = new SQLException("Communications link failure");
+        error = borrow("B2", "R1");
+        assertEquals(500, status);
+        assertTrue(error.get("erreur").asText().startsWith("Issue de l'opération inconnue"));
+
+        failure = null;
+        borrow("B2", "R1");
+        assertEquals(201, status);
+    }
+
+    @Test
+    public void returnStatuses() throws Exception {
+        String id = borrow("B3", "R1").get("id").asText();
+
+        JsonNode returned = call("POST", "emprunts/" + id + "/retour", null);
+        assertEquals(200, status);
+        assertTrue(returned.get("rendu").asBoolean());
+        call("POST", "emprunts/" + id + "/retour", null);
+        assertEquals(409, status);
+        call("POST", "emprunts/inconnu/retour", null);
+        assertEquals(404, status);
+
+        failure = new SQLException("Communications link failure");
+        call("POST", "emprunts/late-1/retour", null);
+        assertEquals(500, status);
+    }
+
+    @Test
+    public void overdueLoansArePagedMostOverdueFirst() throws Exception {
+        JsonNode page = call("GET", "retards?limite=2", null);
+        assertEquals(200, status);
+        assertEquals(5, page.get("total").asInt());
+        assertEquals(2, page.get("emprunts").size());
+        assertEquals("late-5", page.get("emprunts").get(0).get("id").asText());
+        assertEquals("late-4", page.get("emprunts").get(1).get("id").asText());
+        assertEquals(5, page.get("emprunts").get(0).get("joursDeRetard").asInt());
+
+        page = call("GET", "retards?lecteur=R1&limite=3", null);
+        assertEquals(5, page.get("total").asInt());
+        assertEquals("late-5", page.get("emprunts").get(0).get("id").asText());
+        assertEquals(3, page.get("emprunts").size());
+    }
+}
@@ -0,0 +1,51 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import models.Book;
+
+import org.junit.Test;
+
+public class BookSearchIndexTest {
+
+    private static Book book(String isbn, String title, String author) {
+        return new Book(isbn, title, author, 1862, "Lacroix", Book.Status.AVAILABLE);
+    }
+
+    @Test
+    public void everyQueryWordMustStartAWordOfTitleOrAuthor() {
+        BookSearchIndex index = new BookSearchIndex();
+        Book miserables = book("1", "Les Misérables", "Victor Hugo");
+        Book notreDame = book("2", "Notre-Dame de Paris", "Victor Hugo");
+        Book germinal = book("3", "Germinal", "Émile Zola");
+        index.addAll(Arrays.asList(miserables, notreDame, germinal));
+
+        assertEquals(2, index.search("VICTOR", 10).size());
+        assertEquals(Arrays.asList(miserables), index.search("vic misé", 10));
+        assertEquals(Arrays.asList(notreDame), index.search("dame hug", 10));
+        assertEquals(Arrays.asList(germinal), index.search("émile", 10));
+        assertTrue(index.search("ugo", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+        assertEquals(1, index.search("hugo", 1).size());
+    }
+
+    @Test
+    public void bookEditedInPlaceIsReindexed() {
+        BookSearchIndex index = new BookSearchIndex();
+        Book b = book("1", "Les Misérables", "Victor Hugo");
+        index.add(b);
+        b.setTitle("Les Contemplations");
+        // What the repository does for a replace change: remove then add the same instance.
+        index.remove(b);
+        index.add(b);
+        assertTrue(index.search("misérables", 10).isEmpty());
+        assertSame(b, index.search("contemplations", 10).get(0));
+
+        index.remove(b);
+        assertTrue(index.search("hugo", 10).isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import models.Book;
+import models.Reader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+public class CatalogWriterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final JsonFactory factory = new JsonFactory();
+
+    private static List<Book> books() {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("111", "L'Œuvre <inédit> & \"Cie\"", "Zola", 1886, "Charpentier",
+                Book.Status.BORROWED));
+        books.add(new Book("222", "Nana", null, 0, null, Book.Status.AVAILABLE));
+        for (int i = 0; i < 1000; i++) {
+            books.add(new Book("B" + i, "Titre " + i, "Auteur " + i, 1900 + i % 100, "Éditeur",
+                    Book.Status.AVAILABLE));
+        }
+        return books;
+    }
+
+    private static void assertSameBook(Book expected, Book actual) {
+        assertEquals(expected.getIsbn(), actual.getIsbn());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getStatus(), actual.getStatus());
+    }
+
+    @Test
+    public void jsonBooksReadBackAsWritten() throws Exception {
+        File file = folder.newFile();
+        List<Book> books = books();
+        try (JsonCatalogWriter out = new JsonCatalogWriter(factory, file)) {
+            for (Book b : books) {
+                out.writeBook(b);
+            }
+        }
+        try (JsonCatalogReader<Book> in = JsonCatalogReader.books(factory, file)) {
+            for (Book expected : books) {
+                Book actual = in.next();
+                assertSameBook(expected, actual);
+                assertEquals(expected.getAuthor(), actual.getAuthor());
+                assertEquals(expected.getPublisher(), actual.getPublisher());
+            }
+            assertFalse(in.hasNext());
+        }
+    }
+
+    @Test
+    public void xmlBooksReadBackAsWritten() throws Exception {
+        File file = folder.newFile();
+        List<Book> books = books();
+        try (XmlCatalogWriter out = new XmlCatalogWriter(file)) {
+            for (Book b : books) {
+                out.writeBook(b);
+            }
+        }
+        try (XmlCatalogReader<Book> in = XmlCatalogReader.books(file)) {
+            for (Book expected : books) {
+                Book actual = in.next();
+                assertSameBook(expected, actual);
+                // XML has no null: a missing value comes back empty.
+                assertEquals(expected.getAuthor() == null ? "" : expected.getAuthor(), actual.getAuthor());
+            }
+            assertFalse(in.hasNext());
+        }
+    }
+
+    @Test
+    public void readersReadBackInBothFormats() throws Exception {
+        Reader reader = new Reader("R1", "Émile", "Zola", "ez@example.org", 21);
+        File json = folder.newFile();
+        try (JsonCatalogWriter out = new JsonCatalogWriter(factory, json)) {
+            out.writeReader(reader);
+        }
+        File xml = folder.newFile();
+        try (XmlCatalogWriter out = new XmlCatalogWriter(xml)) {
+            out.writeReader(reader);
+        }
+        try (JsonCatalogReader<Reader> in = JsonCatalogReader.readers(factory, json)) {
+            Reader back = in.next();
+            assertEquals("Émile", back.getFirstName());
+            assertEquals(21, back.getMaxLoanDays());
+        }
+        try (XmlCatalogReader<Reader> in = XmlCatalogReader.readers(xml)) {
+            Reader back = in.next();
+            assertEquals("ez@example.org", back.getEmail());
+            assertEquals(21, back.getMaxLoanDays());
+        }
+    }
+
+    @Test
+    public void emptyExportsAreValidFiles() throws Exception {
+        File json = folder.newFile();
+        new JsonCatalogWriter(factory, json).close();
+        File xml = folder.newFile();
+        new XmlCatalogWriter(xml).close();
+        try (JsonCatalogReader<Book> in = JsonCatalogReader.books(factory, json)) {
+            assertFalse(in.hasNext());
+        }
+        try (XmlCatalogReader<Book> in = XmlCatalogReader.books(xml)) {
+            assertFalse(in.hasNext());
+        }
+    }
+}
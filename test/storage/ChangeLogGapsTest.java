@@ -0,0 +1,48 @@
+package storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChangeLogGapsTest {
+
+    @Test
+    public void skippedSeqsBecomeRangesUntilSeen() {
+        ChangeLogGaps gaps = new ChangeLogGaps();
+        gaps.reset(10);
+        gaps.advance(11, 0);
+        gaps.advance(15, 0);
+        gaps.advance(16, 0);
+        assertEquals(16, gaps.watermark());
+        List<long[]> ranges = gaps.ranges();
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[] { 12, 14 }, ranges.get(0));
+
+        gaps.seen(13);
+        ranges = gaps.ranges();
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new long[] { 12, 12 }, ranges.get(0));
+        assertArrayEquals(new long[] { 14, 14 }, ranges.get(1));
+
+        gaps.seen(12);
+        gaps.seen(14);
+        assertTrue(gaps.isEmpty());
+    }
+
+    @Test
+    public void rangesExpireByDiscoveryTime() {
+        ChangeLogGaps gaps = new ChangeLogGaps();
+        gaps.reset(0);
+        gaps.advance(5, 1000);
+        gaps.advance(9, 2000);
+        gaps.seen(2);
+        gaps.expire(1500);
+        List<long[]> ranges = gaps.ranges();
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[] { 6, 8 }, ranges.get(0));
+    }
+}
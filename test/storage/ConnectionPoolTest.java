@@ -0,0 +1,166 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLTimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+    private final FakeJdbc jdbc = new FakeJdbc();
+    private ConnectionPool pool;
+
+    @After
+    public void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void borrowTimesOutWhenAllConnectionsAreLeased() throws Exception {
+        pool = new ConnectionPool(jdbc, 1, 0, 100, 60000, 0);
+        Connection leased = pool.getConnection();
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            fail("SQLTimeoutException attendue");
+        } catch (SQLTimeoutException e) {
+            assertTrue((System.nanoTime() - start) / 1000000 >= 90);
+        }
+        assertEquals(1, pool.getTimeoutCount());
+
+        leased.close();
+        pool.getConnection().close();
+        assertEquals(1, jdbc.createdCount());
+    }
+
+    @Test
+    public void deadIdleConnectionIsDiscardedOnBorrow() throws Exception {
+        pool = new ConnectionPool(jdbc, 2, 0, 1000, 60000, 0);
+        pool.getConnection().close();
+        FakeJdbc.FakeConnection first = jdbc.created.get(0);
+        first.valid = false;
+        // Connections released less than 500 ms ago are handed out without validation.
+        Thread.sleep(600);
+
+        pool.getConnection().close();
+        assertTrue(first.closed);
+        assertEquals(2, jdbc.createdCount());
+        assertEquals(1, pool.getTotalConnections());
+    }
+
+    @Test
+    public void idleEvictionKeepsMinIdle() throws Exception {
+        pool = new ConnectionPool(jdbc, 3, 1, 1000, 100, 0);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Connection c = pool.getConnection();
+        a.close();
+        b.close();
+        c.close();
+        assertEquals(3, pool.getIdleConnections());
+
+        // The evictor runs every second at most.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getIdleConnections() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(1, pool.getTotalConnections());
+        int closed = 0;
+        for (FakeJdbc.FakeConnection conn : jdbc.created) {
+            closed += conn.closed ? 1 : 0;
+        }
+        assertEquals(2, closed);
+    }
+
+    @Test
+    public void releaseRollsBackAndRestoresAutoCommit() throws Exception {
+        pool = new ConnectionPool(jdbc, 1, 0, 1000, 60000, 0);
+        Connection conn = pool.getConnection();
+        conn.setAutoCommit(false);
+        conn.close();
+
+        FakeJdbc.FakeConnection physical = jdbc.created.get(0);
+        assertEquals(1, physical.rollbacks);
+        assertTrue(physical.autoCommit);
+        assertFalse(physical.closed);
+        assertTrue(conn.isClosed());
+
+        // A connection left in autocommit is not rolled back.
+        pool.getConnection().close();
+        assertEquals(1, physical.rollbacks);
+        assertEquals(1, jdbc.createdCount());
+    }
+
+    @Test
+    public void cachedStatementIsReusedAfterClose() throws Exception {
+        pool = new ConnectionPool(jdbc, 1, 0, 1000, 60000, 4);
+        try (Connection conn = pool.getConnection()) {
+            conn.prepareStatement("SELECT 1").close();
+            conn.prepareStatement("SELECT 1").close();
+        }
+        try (Connection conn = pool.getConnection()) {
+            conn.prepareStatement("SELECT 1").close();
+        }
+        FakeJdbc.FakeConnection physical = jdbc.created.get(0);
+        assertEquals(1, physical.statements.size());
+        FakeJdbc.FakeStatement statement = physical.statements.get(0);
+        assertFalse(statement.closed);
+        assertEquals(3, statement.clears);
+    }
+
+    @Test
+    public void cachedStatementLimitsAreResetOnClose() throws Exception {
+        pool = new ConnectionPool(jdbc, 1, 0, 1000, 60000, 4);
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement statement = conn.prepareStatement("SELECT 1");
+            statement.setMaxRows(10);
+            statement.setFetchSize(500);
+            statement.setQueryTimeout(30);
+            statement.close();
+
+            // The next user of the same SQL must not inherit them.
+            statement = conn.prepareStatement("SELECT 1");
+            assertEquals(0, statement.getMaxRows());
+            assertEquals(0, statement.getFetchSize());
+            assertEquals(0, statement.getQueryTimeout());
+            statement.close();
+        }
+        assertEquals(1, jdbc.created.get(0).statements.size());
+    }
+
+    @Test
+    public void statementInUseIsNotSharedNorClosedByEviction() throws Exception {
+        pool = new ConnectionPool(jdbc, 1, 0, 1000, 60000, 1);
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement held = conn.prepareStatement("SELECT 1");
+            // Same SQL while the cached statement is in use: a separate, uncached statement.
+            PreparedStatement second = conn.prepareStatement("SELECT 1");
+            assertNotSame(held, second);
+            second.close();
+
+            FakeJdbc.FakeConnection physical = jdbc.created.get(0);
+            assertEquals(2, physical.statements.size());
+            FakeJdbc.FakeStatement cached = physical.statements.get(0);
+            assertTrue(physical.statements.get(1).closed);
+
+            // A cache of one: preparing another SQL evicts the held statement, which stays open until closed.
+            conn.prepareStatement("SELECT 2").close();
+            assertFalse(cached.closed);
+            held.close();
+            assertTrue(cached.closed);
+            assertSame(conn, held.getConnection());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import models.Book;
+import models.Loan;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatabaseManagerTest {
+
+    private final FakeJdbc jdbc = new FakeJdbc();
+    private ConnectionPool pool;
+    private DatabaseManager db;
+
+    @Before
+    public void open() {
+        pool = new ConnectionPool(jdbc, 2, 0, 1000, 60000, 0);
+        db = new DatabaseManager(pool);
+    }
+
+    @After
+    public void closePool() {
+        pool.close();
+    }
+
+    private int rollbacks() {
+        int rollbacks = 0;
+        for (FakeJdbc.FakeConnection conn : jdbc.created) {
+            rollbacks += conn.rollbacks;
+        }
+        return rollbacks;
+    }
+
+    // Answers the FOR UPDATE lookup from a table of loans: id -> { isbn, returned }.
+    private static FakeJdbc.Answer loans(Map<String, Object[]> table) {
+        return (sql, params) -> {
+            if (!sql.startsWith("SELECT id, book_isbn, returned FROM loans")) {
+                return null;
+            }
+            List<Object[]> rows = new ArrayList<>();
+            for (Object id : params) {
+                Object[] loan = table.get(id);
+                if (loan != null) {
+                    rows.add(FakeJdbc.row(id, loan[0], loan[1]));
+                }
+            }
+            return rows;
+        };
+    }
+
+    @Test
+    public void createLoanChecksOutTheBookAndInsertsTheLoan() throws Exception {
+        jdbc.answer = (sql, params) -> sql.startsWith("UPDATE books") ? 1 : null;
+
+        Loan loan = db.createLoan("111", "R1", 14);
+        assertNotNull(loan);
+        assertEquals(loan.getBorrowDate().plusDays(14), loan.getDueDate());
+        assertEquals("111", jdbc.statements("UPDATE books").get(0).executed.get(0).get(0));
+        // The status condition is part of the UPDATE: no SELECT before it.
+        assertTrue(jdbc.statements("UPDATE books").get(0).sql.contains("status = 'AVAILABLE'"));
+        assertTrue(jdbc.statements("SELECT").isEmpty());
+        assertEquals(loan.getId(), jdbc.statements("INSERT INTO loans").get(0).executed.get(0).get(0));
+        assertEquals(1, jdbc.commits());
+    }
+
+    @Test
+    public void createLoanOfABookAlreadyOutIsRefused() throws Exception {
+        // Zero rows updated: the book is not AVAILABLE (or unknown).
+        jdbc.answer = (sql, params) -> sql.startsWith("UPDATE books") ? 0 : null;
+
+        assertNull(db.createLoan("111", "R1", 14));
+        assertTrue(jdbc.statements("INSERT INTO loans").get(0).executed.isEmpty());
+        assertEquals(0, jdbc.commits());
+        assertTrue(rollbacks() >= 1);
+    }
+
+    @Test
+    public void createLoanFailureIsThrownNotRefused() throws Exception {
+        jdbc.answer = (sql, params) -> {
+            if (sql.startsWith("INSERT INTO loans")) {
+                throw new SQLTransientException("Lock wait timeout exceeded");
+            }
+            return sql.startsWith("UPDATE books") ? 1 : null;
+        };
+
+        try {
+            db.createLoan("111", "R1", 14);
+            fail("SQLException attendue");
+        } catch (SQLException e) {
+            assertEquals("Lock wait timeout exceeded", e.getMessage());
+        }
+        assertEquals(0, jdbc.commits());
+        assertTrue(rollbacks() >= 1);
+    }
+
+    @Test
+    public void returnBooksLocksByChunksAndReportsEachLoan() throws Exception {
+        Map<String, Object[]> table = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            ids.add("L" + i);
+            if (i % 3 == 0) {
+                table.put("L" + i, new Object[] { "isbn-" + i, i % 2 == 0 });
+            }
+        }
+        jdbc.answer = loans(table);
+
+        Map<String, ReturnOutcome> outcomes = db.returnBooks(ids);
+        assertEquals(1200, outcomes.size());
+        assertEquals(ReturnOutcome.RETURNED, outcomes.get("L3"));
+        assertEquals(ReturnOutcome.ALREADY_RETURNED, outcomes.get("L0"));
+        assertEquals(ReturnOutcome.NOT_FOUND, outcomes.get("L1"));
+
+        // 1200 ids in IN lists of at most 500, then one batch per table for the 200 open loans.
+        List<FakeJdbc.FakeStatement> locks = jdbc.statements("SELECT id, book_isbn, returned FROM loans");
+        assertEquals(3, locks.size());
+        assertEquals(500, locks.get(0).executed.get(0).size());
+        assertEquals(200, locks.get(2).executed.get(0).size());
+        assertTrue(locks.get(0).sql.endsWith("FOR UPDATE"));
+        assertEquals(200, jdbc.statements("UPDATE loans").get(0).executed.size());
+        assertEquals("isbn-3", jdbc.statements("UPDATE books").get(0).executed.get(0).get(0));
+        assertEquals(1, jdbc.commits());
+    }
+
+    @Test
+    public void returnBooksFailureMarksEveryPendingLoanFailed() throws Exception {
+        Map<String, Object[]> table = new HashMap<>();
+        table.put("open", new Object[] { "111", false });
+        table.put("done", new Object[] { "222", true });
+        FakeJdbc.Answer lookup = loans(table);
+        jdbc.answer = (sql, params) -> {
+            if (sql.startsWith("UPDATE books")) {
+                throw new SQLException("Connexion perdue");
+            }
+            return lookup.answer(sql, params);
+        };
+
+        List<String> ids = new ArrayList<>();
+        ids.add("open");
+        ids.add("done");
+        ids.add("missing");
+        Map<String, ReturnOutcome> outcomes = db.returnBooks(ids);
+        assertEquals(ReturnOutcome.FAILED, outcomes.get("open"));
+        assertEquals(ReturnOutcome.ALREADY_RETURNED, outcomes.get("done"));
+        // Nothing is known for sure about a loan the rolled-back transaction did not see.
+        assertEquals(ReturnOutcome.FAILED, outcomes.get("missing"));
+        assertEquals(0, jdbc.commits());
+    }
+
+    @Test
+    public void importRetriesAFailedBatchRowByRow() throws Exception {
+        jdbc.answer = (sql, params) -> {
+            if (sql.startsWith("INSERT INTO books") && "dup".equals(params.get(0))) {
+                throw new SQLIntegrityConstraintViolationException("Duplicate entry 'dup'");
+            }
+            return null;
+        };
+        List<Book> books = new ArrayList<>();
+        for (String isbn : Arrays.asList("1", "2", "dup", "4", "5")) {
+            books.add(new Book(isbn, "Titre " + isbn, "Auteur", 2001, "Éditeur", Book.Status.AVAILABLE));
+        }
+
+        ImportReport<Book> report = db.importBooks(books.iterator(), 2);
+        assertEquals(4, report.getImportedCount());
+        assertEquals(1, report.getFailureCount());
+        ImportReport.RowFailure failure = report.getFailures().get(0);
+        assertEquals(3, failure.getRow());
+        assertEquals("dup", failure.getKey());
+        assertEquals("Duplicate entry 'dup'", failure.getMessage());
+        // One commit per batch of two, the failed batch included once its good row went in alone.
+        assertEquals(3, jdbc.commits());
+    }
+
+    @Test
+    public void importStopsAtAnUnreadableRowAndKeepsWhatCameBefore() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            books.add(new Book("B" + i, "Titre", "Auteur", 2001, "Éditeur", Book.Status.AVAILABLE));
+        }
+        Iterator<Book> source = books.iterator();
+        Iterator<Book> broken = new Iterator<Book>() {
+            @Override
+            public boolean hasNext() {
+                if (!source.hasNext()) {
+                    throw new IllegalStateException("XML invalide (ligne 12)");
+                }
+                return true;
+            }
+
+            @Override
+            public Book next() {
+                return source.next();
+            }
+        };
+
+        ImportReport<Book> report = db.importBooks(broken, 2);
+        assertEquals(3, report.getImportedCount());
+        assertEquals(1, report.getFailureCount());
+        assertEquals(4, report.getFailures().get(0).getRow());
+        assertTrue(report.getFailures().get(0).getMessage().startsWith("Import interrompu"));
+    }
+}
@@ -0,0 +1,234 @@
+package storage;
+
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+// In-memory stand-ins for a JDBC driver: enough of Connection and PreparedStatement for the pool to lease,
+// validate, reset and cache them, with counters the tests can check. Statements run against `answer`.
+final class FakeJdbc implements ConnectionPool.ConnectionFactory {
+
+    interface Answer {
+        // Rows (List<Object[]>) for a query, an update count (Integer) for an update, or null for none.
+        Object answer(String sql, List<Object> params) throws SQLException;
+    }
+
+    final List<FakeConnection> created = new ArrayList<>();
+    volatile Answer answer = (sql, params) -> null;
+
+    @Override
+    public synchronized Connection create() {
+        FakeConnection conn = new FakeConnection(this);
+        created.add(conn);
+        return conn.proxy;
+    }
+
+    synchronized int createdCount() {
+        return created.size();
+    }
+
+    // Every statement prepared so far whose SQL starts with the prefix.
+    synchronized List<FakeStatement> statements(String sqlPrefix) {
+        List<FakeStatement> found = new ArrayList<>();
+        for (FakeConnection conn : created) {
+            for (FakeStatement s : conn.statements) {
+                if (s.sql.startsWith(sqlPrefix)) {
+                    found.add(s);
+                }
+            }
+        }
+        return found;
+    }
+
+    synchronized int commits() {
+        int commits = 0;
+        for (FakeConnection conn : created) {
+            commits += conn.commits;
+        }
+        return commits;
+    }
+
+    static final class FakeConnection {
+        final Connection proxy;
+        final List<FakeStatement> statements = new ArrayList<>();
+        volatile boolean valid = true;
+        boolean closed;
+        boolean autoCommit = true;
+        int commits;
+        int rollbacks;
+
+        FakeConnection(FakeJdbc jdbc) {
+            proxy = (Connection) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "isValid":
+                                return valid && !closed;
+                            case "isClosed":
+                                return closed;
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "getAutoCommit":
+                                return autoCommit;
+                            case "setAutoCommit":
+                                autoCommit = (Boolean) args[0];
+                                return null;
+                            case "commit":
+                                commits++;
+                                return null;
+                            case "rollback":
+                                rollbacks++;
+                                return null;
+                            case "getMetaData":
+                                return metaData();
+                            case "prepareStatement":
+                                FakeStatement statement = new FakeStatement(jdbc, (String) args[0]);
+                                statements.add(statement);
+                                return statement.proxy;
+                            case "equals":
+                                return p == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(p);
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        // No tables: the store runs without change_log nor loans_archive.
+        private static DatabaseMetaData metaData() {
+            return (DatabaseMetaData) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                    new Class<?>[] { DatabaseMetaData.class },
+                    (p, method, args) -> "getTables".equals(method.getName())
+                            ? resultSet(Collections.<Object[]>emptyList()) : null);
+        }
+    }
+
+    static final class FakeStatement {
+        final String sql;
+        final PreparedStatement proxy;
+        // Parameters of each statement run, batched rows included, in order.
+        final List<List<Object>> executed = new ArrayList<>();
+        boolean closed;
+        int clears;
+        int maxRows;
+        int fetchSize;
+        int queryTimeout;
+        private final TreeMap<Integer, Object> params = new TreeMap<>();
+        private final List<List<Object>> batch = new ArrayList<>();
+
+        FakeStatement(FakeJdbc jdbc, String sql) {
+            this.sql = sql;
+            proxy = (PreparedStatement) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "isClosed":
+                                return closed;
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "clearParameters":
+                                clears++;
+                                params.clear();
+                                return null;
+                            case "clearBatch":
+                                batch.clear();
+                                return null;
+                            case "getMaxRows":
+                                return maxRows;
+                            case "setMaxRows":
+                                maxRows = (Integer) args[0];
+                                return null;
+                            case "getFetchSize":
+                                return fetchSize;
+                            case "setFetchSize":
+                                fetchSize = (Integer) args[0];
+                                return null;
+                            case "getQueryTimeout":
+                                return queryTimeout;
+                            case "setQueryTimeout":
+                                queryTimeout = (Integer) args[0];
+                                return null;
+                            case "addBatch":
+                                batch.add(new ArrayList<>(params.values()));
+                                return null;
+                            case "executeUpdate": {
+                                Object result = run(jdbc, new ArrayList<>(params.values()));
+                                return result == null ? 0 : result;
+                            }
+                            case "executeQuery": {
+                                Object result = run(jdbc, new ArrayList<>(params.values()));
+                                return resultSet(result == null ? Collections.<Object[]>emptyList() : rows(result));
+                            }
+                            case "executeBatch": {
+                                int[] counts = new int[batch.size()];
+                                try {
+                                    for (int i = 0; i < counts.length; i++) {
+                                        Object result = run(jdbc, batch.get(i));
+                                        counts[i] = result == null ? 1 : (Integer) result;
+                                    }
+                                } catch (SQLException e) {
+                                    // As drivers do: the whole batch fails with the first row's error.
+                                    throw new BatchUpdateException(e.getMessage(), new int[0], e);
+                                } finally {
+                                    batch.clear();
+                                }
+                                return counts;
+                            }
+                            case "equals":
+                                return p == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(p);
+                            default:
+                                if (method.getName().startsWith("set") && args != null && args.length == 2
+                                        && args[0] instanceof Integer) {
+                                    params.put((Integer) args[0], args[1]);
+                                }
+                                return null;
+                        }
+                    });
+        }
+
+        private Object run(FakeJdbc jdbc, List<Object> values) throws SQLException {
+            executed.add(values);
+            return jdbc.answer.answer(sql, values);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<Object[]> rows(Object result) {
+            return (List<Object[]>) result;
+        }
+    }
+
+    static ResultSet resultSet(List<Object[]> rows) {
+        int[] cursor = { -1 };
+        return (ResultSet) Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (p, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++cursor[0] < rows.size();
+                        case "getString":
+                            return (String) rows.get(cursor[0])[(Integer) args[0] - 1];
+                        case "getBoolean":
+                            return Boolean.TRUE.equals(rows.get(cursor[0])[(Integer) args[0] - 1]);
+                        case "getObject":
+                            return rows.get(cursor[0])[(Integer) args[0] - 1];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    static Object[] row(Object... values) {
+        return Arrays.copyOf(values, values.length);
+    }
+}
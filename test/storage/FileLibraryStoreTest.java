@@ -0,0 +1,197 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileLibraryStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private FileLibraryStore store;
+
+    @After
+    public void closeStore() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private FileLibraryStore reopen() throws Exception {
+        if (store != null) {
+            store.close();
+        }
+        store = FileLibraryStore.open(folder.getRoot().toPath());
+        return store;
+    }
+
+    private Path logFile() {
+        return folder.getRoot().toPath().resolve("library.log");
+    }
+
+    private static Book book(String isbn, String title) {
+        return new Book(isbn, title, "Auteur", 2001, "Éditeur", Book.Status.AVAILABLE);
+    }
+
+    private static Reader reader(String number) {
+        return new Reader(number, "Prénom", "Nom", number + "@example.org", 14);
+    }
+
+    @Test
+    public void borrowAndReturnSurviveReopen() throws Exception {
+        reopen();
+        assertTrue(store.addBook(book("111", "Germinal")));
+        assertFalse(store.addBook(book("111", "Doublon")));
+        assertTrue(store.addReader(reader("R1")));
+
+        Loan loan = store.createLoan("111", "R1");
+        assertNotNull(loan);
+        assertNull(store.createLoan("111", "R1"));
+        assertEquals(Book.Status.BORROWED, store.findBookByIsbn("111").get().getStatus());
+
+        reopen();
+        assertEquals(Book.Status.BORROWED, store.findBookByIsbn("111").get().getStatus());
+        assertEquals(1, store.getActiveLoansForReader("R1").size());
+        assertEquals(ReturnOutcome.RETURNED, store.returnBooks(Collections.singleton(loan.getId()))
+                .get(loan.getId()));
+        assertFalse(store.returnBook(loan.getId()));
+
+        reopen();
+        assertEquals(Book.Status.AVAILABLE, store.findBookByIsbn("111").get().getStatus());
+        assertTrue(store.getAllLoans().get(0).isReturned());
+        assertTrue(store.getActiveLoansForReader("R1").isEmpty());
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws Exception {
+        reopen();
+        store.addBook(book("111", "Germinal"));
+        store.addBook(book("222", "Nana"));
+        store.close();
+        store = null;
+        long valid = Files.size(logFile());
+
+        // An interrupted write: a record header announcing more bytes than were written.
+        try (FileChannel ch = FileChannel.open(logFile(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer partial = ByteBuffer.allocate(10);
+            partial.putInt(500).putInt(42).putShort((short) 7).flip();
+            ch.write(partial);
+        }
+        reopen();
+        assertEquals(valid, Files.size(logFile()));
+        assertEquals(2, store.getAllBooks().size());
+
+        assertTrue(store.addBook(book("333", "L'Assommoir")));
+        reopen();
+        assertEquals(3, store.getAllBooks().size());
+    }
+
+    @Test
+    public void corruptRecordStopsTheScan() throws Exception {
+        reopen();
+        store.addBook(book("111", "Germinal"));
+        store.close();
+        store = null;
+        long first = Files.size(logFile());
+        reopen();
+        store.addBook(book("222", "Nana"));
+        store.close();
+        store = null;
+
+        // Flip the last byte of the second record's body: its CRC no longer matches.
+        try (FileChannel ch = FileChannel.open(logFile(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            long pos = ch.size() - 5;
+            ch.read(b, pos);
+            b.put(0, (byte) (b.get(0) ^ 0xFF));
+            b.rewind();
+            ch.write(b, pos);
+        }
+        reopen();
+        assertEquals(first, Files.size(logFile()));
+        assertEquals(1, store.getAllBooks().size());
+        assertTrue(store.findBookByIsbn("111").isPresent());
+    }
+
+    @Test
+    public void compactionKeepsOnlyLiveEntries() throws Exception {
+        reopen();
+        store.addReader(reader("R1"));
+        for (int i = 0; i < 50; i++) {
+            store.addBook(book("B" + i, "Titre " + i));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                store.updateBook(book("B" + i, "Titre " + i + " v" + round));
+            }
+        }
+        store.deleteBook("B0");
+        Loan loan = store.createLoan("B1", "R1");
+        long before = Files.size(logFile());
+
+        store.compact();
+        long after = Files.size(logFile());
+        assertTrue(after < before / 3);
+        assertEquals("Titre 2 v4", store.findBookByIsbn("B2").get().getTitle());
+        assertFalse(store.findBookByIsbn("B0").isPresent());
+
+        // Writes after compaction land in the new file and everything reads back after a reopen.
+        store.updateBook(book("B3", "Après compactage"));
+        reopen();
+        assertEquals(49, store.getAllBooks().size());
+        assertEquals("Après compactage", store.findBookByIsbn("B3").get().getTitle());
+        assertEquals("Titre 49 v4", store.findBookByIsbn("B49").get().getTitle());
+        assertEquals(Book.Status.BORROWED, store.findBookByIsbn("B1").get().getStatus());
+        assertEquals(loan.getId(), store.getAllLoans().get(0).getId());
+        assertTrue(store.findReaderBySubscriberNumber("R1").isPresent());
+    }
+
+    @Test
+    public void deletesCascadeToLoans() throws Exception {
+        reopen();
+        store.addBook(book("111", "Germinal"));
+        store.addBook(book("222", "Nana"));
+        store.addReader(reader("R1"));
+        store.addReader(reader("R2"));
+        Loan first = store.createLoan("111", "R1");
+        Loan second = store.createLoan("222", "R2");
+        assertNotNull(first);
+        assertNotNull(second);
+
+        assertTrue(store.deleteBook("111"));
+        assertEquals(1, store.getAllLoans().size());
+        assertTrue(store.deleteReader("R2"));
+        assertTrue(store.getAllLoans().isEmpty());
+        assertFalse(store.returnBook(second.getId()));
+
+        reopen();
+        assertTrue(store.getAllLoans().isEmpty());
+        assertFalse(store.findReaderBySubscriberNumber("R2").isPresent());
+        store.compact();
+        reopen();
+        assertTrue(store.getAllLoans().isEmpty());
+        assertEquals(1, store.getAllBooks().size());
+        assertEquals(1, store.getAllReaders().size());
+        // The cascade left the book of the deleted reader's loan borrowed, as the SQL schema does.
+        assertEquals(Book.Status.BORROWED, store.findBookByIsbn("222").get().getStatus());
+    }
+}
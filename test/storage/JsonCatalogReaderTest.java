@@ -0,0 +1,92 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import models.Book;
+import models.Reader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+public class JsonCatalogReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final JsonFactory factory = new JsonFactory();
+
+    private File json(String content) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void readsBooksAndSkipsWhatItDoesNotKnow() throws Exception {
+        File file = json("[{\"isbn\": \"111\", \"titre\": \"Germinal\", \"auteur\": \"Zola\", \"annee\": 1885,"
+                + " \"editeur\": null, \"statut\": \"emprunté\", \"notes\": {\"a\": [1, 2]}, \"tags\": [\"x\"]},"
+                + " {\"titre\": \"Nana\", \"annee\": \"1880\"}]");
+        try (JsonCatalogReader<Book> books = JsonCatalogReader.books(factory, file)) {
+            Book first = books.next();
+            assertEquals("111", first.getIsbn());
+            assertEquals(1885, first.getYear());
+            assertNull(first.getPublisher());
+            assertEquals(Book.Status.BORROWED, first.getStatus());
+
+            Book second = books.next();
+            assertNull(second.getIsbn());
+            assertEquals(1880, second.getYear());
+            assertEquals(Book.Status.AVAILABLE, second.getStatus());
+            assertFalse(books.hasNext());
+        }
+    }
+
+    @Test
+    public void readsReaders() throws Exception {
+        File file = json("[{\"numeroAbonne\": \"R1\", \"prenom\": \"Émile\", \"joursEmpruntMax\": 21},"
+                + " {\"numeroAbonne\": \"R2\", \"joursEmpruntMax\": \"?\"}]");
+        try (JsonCatalogReader<Reader> readers = JsonCatalogReader.readers(factory, file)) {
+            Reader first = readers.next();
+            assertEquals("Émile", first.getFirstName());
+            assertEquals(21, first.getMaxLoanDays());
+            assertEquals(14, readers.next().getMaxLoanDays());
+            assertFalse(readers.hasNext());
+        }
+    }
+
+    @Test
+    public void topLevelMustBeAnArray() throws Exception {
+        try (JsonCatalogReader<Book> books = JsonCatalogReader.books(factory, json("{\"isbn\": \"111\"}"))) {
+            books.hasNext();
+            fail("UncheckedIOException attendue");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("un tableau JSON est attendu"));
+        }
+    }
+
+    @Test
+    public void truncatedFileFailsAfterTheLastCompleteRecord() throws Exception {
+        File file = json("[{\"isbn\": \"111\"},\n{\"isbn\": \"222\", \"titre\": \"Na");
+        try (JsonCatalogReader<Book> books = JsonCatalogReader.books(factory, file)) {
+            assertEquals("111", books.next().getIsbn());
+            try {
+                books.hasNext();
+                fail("UncheckedIOException attendue");
+            } catch (UncheckedIOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("JSON invalide"));
+            }
+        }
+    }
+}
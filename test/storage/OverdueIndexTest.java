@@ -0,0 +1,78 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import models.Loan;
+
+import org.junit.Test;
+
+public class OverdueIndexTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 10);
+
+    private static Loan loan(String id, LocalDate due, boolean returned) {
+        return new Loan(id, "isbn-" + id, "R1", due.minusDays(14), due, returned);
+    }
+
+    @Test
+    public void countsOnlyActiveLoansDueBeforeToday() {
+        OverdueIndex index = new OverdueIndex(TODAY);
+        index.add(loan("late", TODAY.minusDays(1), false));
+        index.add(loan("due-today", TODAY, false));
+        index.add(loan("returned", TODAY.minusDays(5), true));
+        // Adding the same loan twice does not count it twice.
+        index.add(loan("late", TODAY.minusDays(1), false));
+
+        assertEquals(1, index.getOverdueCount(TODAY));
+        assertEquals("late", index.getOverdue(TODAY).get(0).getId());
+    }
+
+    @Test
+    public void advancingTheDateAddsLoansThatFellDue() {
+        OverdueIndex index = new OverdueIndex(TODAY);
+        index.add(loan("a", TODAY, false));
+        index.add(loan("b", TODAY.plusDays(1), false));
+        index.add(loan("c", TODAY.plusDays(3), false));
+
+        assertEquals(0, index.getOverdueCount(TODAY));
+        assertEquals(2, index.getOverdueCount(TODAY.plusDays(2)));
+        // Going back in time is ignored.
+        assertEquals(2, index.getOverdueCount(TODAY));
+        assertEquals(3, index.getOverdue(TODAY.plusDays(4)).size());
+    }
+
+    @Test
+    public void limitedListKeepsTheMostOverdue() {
+        OverdueIndex index = new OverdueIndex(TODAY);
+        index.add(loan("recent", TODAY.minusDays(1), false));
+        index.add(loan("oldest", TODAY.minusDays(9), false));
+        index.add(loan("older", TODAY.minusDays(4), false));
+
+        assertEquals(2, index.getOverdue(TODAY, 2).size());
+        assertEquals("oldest", index.getOverdue(TODAY, 2).get(0).getId());
+        assertEquals("older", index.getOverdue(TODAY, 2).get(1).getId());
+        assertEquals(3, index.getOverdue(TODAY, 10).size());
+    }
+
+    @Test
+    public void removeUpdatesTheCount() {
+        OverdueIndex index = new OverdueIndex(TODAY);
+        Loan late = loan("late", TODAY.minusDays(2), false);
+        Loan upcoming = loan("upcoming", TODAY.plusDays(2), false);
+        index.add(late);
+        index.add(upcoming);
+
+        index.remove(late);
+        index.remove(late);
+        assertEquals(0, index.getOverdueCount(TODAY));
+        index.remove(upcoming);
+        assertTrue(index.getOverdue(TODAY.plusDays(10)).isEmpty());
+
+        index.add(late);
+        index.clear(TODAY);
+        assertEquals(0, index.getOverdueCount(TODAY));
+    }
+}
@@ -0,0 +1,74 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import models.Loan;
+
+import org.junit.Test;
+
+public class ReaderLoansTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 10);
+
+    private static Loan loan(String id, LocalDate borrowed, boolean returned) {
+        return new Loan(id, "isbn-" + id, "R1", borrowed, borrowed.plusDays(14), returned);
+    }
+
+    @Test
+    public void historyStaysSortedByBorrowDate() {
+        ReaderLoans loans = new ReaderLoans();
+        loans.add(loan("b", TODAY.minusDays(5), false));
+        loans.add(loan("a", TODAY.minusDays(20), true));
+        loans.add(loan("c", TODAY, false));
+        // Same day as "b": kept after it, in arrival order.
+        loans.add(loan("b2", TODAY.minusDays(5), false));
+
+        List<Loan> history = loans.getHistory();
+        assertEquals(4, history.size());
+        assertEquals("a", history.get(0).getId());
+        assertEquals("b", history.get(1).getId());
+        assertEquals("b2", history.get(2).getId());
+        assertEquals("c", history.get(3).getId());
+    }
+
+    @Test
+    public void countsLoansBorrowedInARange() {
+        ReaderLoans loans = new ReaderLoans();
+        for (int i = 0; i < 10; i++) {
+            loans.add(loan("l" + i, TODAY.minusDays(i), true));
+        }
+        assertEquals(10, loans.countBorrowedBetween(TODAY.minusDays(30), TODAY.plusDays(1)));
+        // From included, end excluded.
+        assertEquals(3, loans.countBorrowedBetween(TODAY.minusDays(3), TODAY));
+        assertEquals(0, loans.countBorrowedBetween(TODAY.plusDays(1), TODAY.plusDays(5)));
+    }
+
+    @Test
+    public void activeAndOverdueFollowReturns() {
+        ReaderLoans loans = new ReaderLoans();
+        Loan late = loan("late", TODAY.minusDays(20), false);
+        Loan current = loan("current", TODAY.minusDays(2), false);
+        loans.add(late);
+        loans.add(current);
+        loans.add(loan("old", TODAY.minusDays(60), true));
+
+        assertEquals(2, loans.getActive().size());
+        assertEquals(1, loans.getOverdue(TODAY).size());
+        assertEquals("late", loans.getOverdue(TODAY).get(0).getId());
+
+        loans.markReturned(late);
+        assertTrue(loans.getOverdue(TODAY).isEmpty());
+        assertEquals(1, loans.getActive().size());
+        // A returned loan stays in the history.
+        assertEquals(3, loans.getHistory().size());
+
+        loans.remove(current);
+        loans.remove(late);
+        assertTrue(loans.getActive().isEmpty());
+        assertEquals(1, loans.getHistory().size());
+    }
+}
@@ -0,0 +1,82 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import models.Book;
+import models.Loan;
+import models.Reader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Snapshot sample() {
+        Map<String, Long> perBook = new HashMap<>();
+        perBook.put("111", 4L);
+        Map<String, Long> perReader = new HashMap<>();
+        perReader.put("R1", 4L);
+        return new Snapshot(42,
+                Collections.singletonList(new Book("111", "Germinal", "Zola", 1885, "Gil Blas", Book.Status.BORROWED)),
+                Collections.singletonList(new Reader("R1", "Émile", "Lantier", null, 21)),
+                Collections.singletonList(new Loan("L1", "111", "R1", LocalDate.of(2024, 3, 1),
+                        LocalDate.of(2024, 3, 22), false)),
+                LocalDate.of(2024, 3, 1), "L0", perBook, perReader);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("snapshot.bin");
+        SnapshotStore store = new SnapshotStore(file, "jdbc:mysql://a/db");
+        store.write(store.encode(sample()));
+        // Written twice: the second rename replaces a file that was read in between.
+        assertNotNull(store.read());
+        store.write(store.encode(sample()));
+
+        Snapshot read = store.read();
+        assertEquals(42, read.watermark);
+        assertEquals(LocalDate.of(2024, 3, 1), read.historyCutoff);
+        assertEquals("L0", read.historyCutoffId);
+        assertEquals("Germinal", read.books.get(0).getTitle());
+        assertEquals(Book.Status.BORROWED, read.books.get(0).getStatus());
+        assertNull(read.readers.get(0).getEmail());
+        assertEquals("Émile", read.readers.get(0).getFirstName());
+        assertEquals(LocalDate.of(2024, 3, 22), read.loans.get(0).getDueDate());
+        assertEquals(Long.valueOf(4), read.loansPerBook.get("111"));
+    }
+
+    @Test
+    public void corruptedFileIsRejected() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("snapshot.bin");
+        SnapshotStore store = new SnapshotStore(file, "jdbc:mysql://a/db");
+        byte[] data = store.encode(sample());
+        data[data.length / 2] ^= 0x01;
+        Files.write(file, data);
+        assertNull(store.read());
+
+        Files.write(file, new byte[] { 1, 2, 3 });
+        assertNull(store.read());
+    }
+
+    @Test
+    public void snapshotOfAnotherSourceOrMissingFileIsIgnored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("snapshot.bin");
+        SnapshotStore other = new SnapshotStore(file, "jdbc:mysql://b/db");
+        assertNull(other.read());
+        other.write(other.encode(sample()));
+        assertNull(new SnapshotStore(file, "jdbc:mysql://a/db").read());
+    }
+}
@@ -0,0 +1,62 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TopKCounterTest {
+
+    private static void increment(TopKCounter counter, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            counter.increment(key);
+        }
+    }
+
+    @Test
+    public void ranksByCountThenKey() {
+        TopKCounter counter = new TopKCounter(3);
+        increment(counter, "b", 2);
+        increment(counter, "a", 2);
+        increment(counter, "c", 5);
+        increment(counter, "d", 1);
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<>(counter.top(3).keySet()));
+        assertEquals(Long.valueOf(5), counter.top(1).get("c"));
+
+        // A key outside the top enters it once it beats the last one.
+        increment(counter, "d", 2);
+        assertEquals(Arrays.asList("c", "d", "a"), new ArrayList<>(counter.top(3).keySet()));
+    }
+
+    @Test
+    public void decrementOfATopKeyRecomputesTheTop() {
+        TopKCounter counter = new TopKCounter(2);
+        increment(counter, "a", 3);
+        increment(counter, "b", 2);
+        increment(counter, "c", 2);
+        counter.decrement("a");
+        counter.decrement("a");
+        assertEquals(Arrays.asList("b", "c"), new ArrayList<>(counter.top(2).keySet()));
+
+        counter.decrement("a");
+        assertEquals(2, counter.counts().size());
+        counter.decrement("missing");
+        assertEquals(2, counter.counts().size());
+    }
+
+    @Test
+    public void limitAboveCapacityIsComputedFromAllCounts() {
+        TopKCounter counter = new TopKCounter(1);
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("x", 1L);
+        counts.put("y", 3L);
+        counts.put("z", 2L);
+        counter.rebuild(counts);
+        assertEquals(Arrays.asList("y"), new ArrayList<>(counter.top(1).keySet()));
+        assertEquals(Arrays.asList("y", "z", "x"), new ArrayList<>(counter.top(10).keySet()));
+    }
+}
@@ -0,0 +1,98 @@
+package storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import models.Book;
+import models.Reader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class XmlCatalogReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File xml(String body) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<bibliotheque>\n" + body
+                + "</bibliotheque>\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void readsBooksOneRecordAtATime() throws Exception {
+        File file = xml("<livre><isbn>111</isbn><titre>L'Œuvre &amp; Cie</titre><auteur>Zola</auteur>"
+                + "<annee>1886</annee><editeur/><statut>emprunté</statut></livre>\n"
+                + "<livre><isbn>222</isbn><titre>Nana</titre><annee>inconnue</annee><inconnu>x</inconnu></livre>\n");
+        try (XmlCatalogReader<Book> books = XmlCatalogReader.books(file)) {
+            Book first = books.next();
+            assertEquals("111", first.getIsbn());
+            assertEquals("L'Œuvre & Cie", first.getTitle());
+            assertEquals(1886, first.getYear());
+            assertEquals("", first.getPublisher());
+            assertEquals(Book.Status.BORROWED, first.getStatus());
+
+            // Missing or unreadable fields fall back to defaults; unknown ones are ignored.
+            Book second = books.next();
+            assertEquals("Nana", second.getTitle());
+            assertNull(second.getAuthor());
+            assertEquals(0, second.getYear());
+            assertEquals(Book.Status.AVAILABLE, second.getStatus());
+            assertFalse(books.hasNext());
+        }
+    }
+
+    @Test
+    public void readsReadersWithTheirDefaultLoanLength() throws Exception {
+        File file = xml("<lecteur><numeroAbonne>R1</numeroAbonne><prenom>Émile</prenom><nom>Zola</nom>"
+                + "<email>ez@example.org</email><joursEmpruntMax>21</joursEmpruntMax></lecteur>\n"
+                + "<lecteur><numeroAbonne>R2</numeroAbonne></lecteur>\n");
+        try (XmlCatalogReader<Reader> readers = XmlCatalogReader.readers(file)) {
+            Reader first = readers.next();
+            assertEquals("Émile", first.getFirstName());
+            assertEquals(21, first.getMaxLoanDays());
+            assertEquals(14, readers.next().getMaxLoanDays());
+            assertFalse(readers.hasNext());
+        }
+    }
+
+    @Test
+    public void malformedXmlFailsAtTheRecordThatBreaks() throws Exception {
+        File file = xml("<livre><isbn>111</isbn></livre>\n<livre><isbn>222</isbn></livr>\n");
+        try (XmlCatalogReader<Book> books = XmlCatalogReader.books(file)) {
+            assertEquals("111", books.next().getIsbn());
+            try {
+                books.hasNext();
+                fail("IllegalStateException attendue");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("XML invalide (ligne 4)"));
+            }
+        }
+    }
+
+    @Test
+    public void doctypeIsNotFollowed() throws Exception {
+        File secret = folder.newFile();
+        Files.write(secret.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+        File file = folder.newFile();
+        Files.write(file.toPath(), ("<?xml version=\"1.0\"?>\n<!DOCTYPE bibliotheque [<!ENTITY s SYSTEM \""
+                + secret.toURI() + "\">]>\n<bibliotheque><livre><isbn>111</isbn><titre>&s;</titre></livre>"
+                + "</bibliotheque>").getBytes(StandardCharsets.UTF_8));
+        try (XmlCatalogReader<Book> books = XmlCatalogReader.books(file)) {
+            Book book = books.next();
+            assertFalse("secret".equals(book.getTitle()));
+        } catch (IllegalStateException e) {
+            // Rejecting the entity outright is fine too.
+        }
+    }
+}